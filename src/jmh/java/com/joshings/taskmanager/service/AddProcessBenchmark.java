@@ -0,0 +1,78 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Add a process to a task manager which is running at capacity, in each add mode.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AddProcessBenchmark {
+
+    /**
+     * The number of running processes, which is also the capacity.
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int processCount;
+
+    private TaskManagerService taskManagerService;
+
+    /**
+     * Fill the task manager up to its capacity.
+     * Prio adds use up the lower priority processes, so the task manager is rebuilt for every iteration.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        taskManagerService = TaskManagerState.atCapacity(processCount);
+    }
+
+    /**
+     * Default mode: the process is rejected.
+     *
+     * @return the exception
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Object addDefault() {
+        try {
+            return taskManagerService.addProcess(Priority.High, TaskManagerService.AddMode.Default);
+        } catch (InstantiationException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Fifo mode: the oldest process is evicted.
+     *
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Process addFifo() throws InstantiationException {
+        return taskManagerService.addProcess(Priority.Low, TaskManagerService.AddMode.Fifo);
+    }
+
+    /**
+     * Prio mode: the oldest process with the lowest priority is evicted.
+     * A third of the processes are high priority, so a batch of 250 adds always finds a victim at every table size.
+     * The score is the time of the whole batch.
+     *
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10, batchSize = 250)
+    @Measurement(iterations = 20, batchSize = 250)
+    public Process addPrio() throws InstantiationException {
+        return taskManagerService.addProcess(Priority.High, TaskManagerService.AddMode.Prio);
+    }
+}
@@ -0,0 +1,77 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of concurrent Fifo adds at capacity, as the number of caller threads and partitions grows.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AdmissionThroughputBenchmark {
+
+    /**
+     * The number of running processes, which is also the capacity.
+     */
+    @Param({"1000", "100000"})
+    public int processCount;
+
+    /**
+     * The number of partitions the capacity is split into.  Callers are spread over the partitions by thread.
+     */
+    @Param({"1", "4"})
+    public int partitionCount;
+
+    private TaskManagerService taskManagerService;
+
+    /**
+     * Fill the task manager up to its capacity.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        taskManagerService = TaskManagerState.atCapacity(processCount, partitionCount);
+    }
+
+    /**
+     * Add from one thread.
+     *
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    @Benchmark
+    @Threads(1)
+    public Process addFifo1Thread() throws InstantiationException {
+        return taskManagerService.addProcess(Priority.Medium, TaskManagerService.AddMode.Fifo);
+    }
+
+    /**
+     * Add from four threads.
+     *
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    @Benchmark
+    @Threads(4)
+    public Process addFifo4Threads() throws InstantiationException {
+        return taskManagerService.addProcess(Priority.Medium, TaskManagerService.AddMode.Fifo);
+    }
+
+    /**
+     * Add from sixteen threads.
+     *
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    @Benchmark
+    @Threads(16)
+    public Process addFifo16Threads() throws InstantiationException {
+        return taskManagerService.addProcess(Priority.Medium, TaskManagerService.AddMode.Fifo);
+    }
+}
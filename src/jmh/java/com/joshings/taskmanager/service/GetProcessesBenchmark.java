@@ -0,0 +1,51 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Process;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * List the running processes in each sort mode.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetProcessesBenchmark {
+
+    /**
+     * The number of running processes.
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int processCount;
+
+    /**
+     * The sort mode.
+     */
+    @Param({"StartTime", "Pid", "Prio"})
+    public TaskManagerService.SortMode sortMode;
+
+    private TaskManagerService taskManagerService;
+
+    /**
+     * Fill the task manager.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        taskManagerService = TaskManagerState.atCapacity(processCount);
+    }
+
+    /**
+     * Get the processes.
+     *
+     * @return the processes
+     */
+    @Benchmark
+    public List<Process> getProcesses() {
+        return taskManagerService.getProcesses(sortMode);
+    }
+}
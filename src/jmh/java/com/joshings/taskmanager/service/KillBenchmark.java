@@ -0,0 +1,51 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kill a group of processes, or all of them.
+ * Every invocation empties the task manager, so every iteration is a single invocation on a freshly filled one.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KillBenchmark {
+
+    /**
+     * The number of running processes.
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int processCount;
+
+    private TaskManagerService taskManagerService;
+
+    /**
+     * Fill the task manager.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        taskManagerService = TaskManagerState.atCapacity(processCount);
+    }
+
+    /**
+     * Kill a third of the processes.
+     */
+    @Benchmark
+    public void killGroup() {
+        taskManagerService.killGroup(Priority.Medium);
+    }
+
+    /**
+     * Kill all the processes.
+     */
+    @Benchmark
+    public void killAll() {
+        taskManagerService.killAll();
+    }
+}
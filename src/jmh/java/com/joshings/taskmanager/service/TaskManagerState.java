@@ -0,0 +1,68 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build task managers which are filled up to their capacity, for the benchmarks.
+ * The process table is kept in memory only, so the benchmarks measure admission, listing and kills without the
+ * persistence backend.
+ */
+final class TaskManagerState {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private TaskManagerState() {
+    }
+
+    /**
+     * Create a task manager running the given number of processes, which is also its capacity.
+     * The priorities of the processes cycle through low, medium and high.
+     *
+     * @param processCount the process count
+     * @return the task manager service
+     */
+    static TaskManagerService atCapacity(int processCount) {
+        return atCapacity(processCount, 1);
+    }
+
+    /**
+     * Create a task manager split into partitions of equal capacity, running the given number of processes in total.
+     *
+     * @param processCount   the process count
+     * @param partitionCount the partition count
+     * @return the task manager service
+     */
+    static TaskManagerService atCapacity(int processCount, int partitionCount) {
+        TaskManagerConfig.TaskManagerConfigBuilder config = TaskManagerConfig.builder().maxProcesses(processCount);
+        if (partitionCount > 1) {
+            for (int i = 0; i < partitionCount; i++) {
+                config.partition(new TaskManagerConfig.PartitionConfig(
+                        processCount / partitionCount,
+                        TaskManagerService.AddMode.Default
+                ));
+            }
+        }
+        TaskManagerService taskManagerService = new TaskManagerService(config.build());
+
+        List<Priority> priorities = Priority.aliases();
+        for (int partition = 0; partition < taskManagerService.getPartitionCount(); partition++) {
+            int partitionProcessCount = processCount / taskManagerService.getPartitionCount();
+            List<Priority> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < partitionProcessCount; i++) {
+                batch.add(priorities.get(i % priorities.size()));
+                if (batch.size() == BATCH_SIZE || i == partitionProcessCount - 1) {
+                    taskManagerService.addProcesses(
+                            String.valueOf(partition),
+                            batch,
+                            TaskManagerService.AddMode.Default
+                    );
+                    batch.clear();
+                }
+            }
+        }
+        return taskManagerService;
+    }
+}
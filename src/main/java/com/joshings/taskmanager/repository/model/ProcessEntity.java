@@ -2,6 +2,7 @@ package com.joshings.taskmanager.repository.model;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
 import java.sql.Timestamp;
@@ -9,11 +10,10 @@ import java.sql.Timestamp;
 @Entity
 @Table(name = ProcessEntity.PROCESS)
 @NoArgsConstructor
-public class ProcessEntity {
+public class ProcessEntity implements Persistable<Long> {
 
     public static final String PROCESS = "process";
     @Id
-    @GeneratedValue(strategy= GenerationType.AUTO)
     @Getter
     private Long id;
 
@@ -23,9 +23,50 @@ public class ProcessEntity {
     @Getter
     private Timestamp startTime;
 
-    public ProcessEntity(Long priority, Timestamp startTime) {
+    /**
+     * The task manager partition the process runs in.
+     */
+    @Getter
+    private Integer partitionId;
+
+    /**
+     * The share of the weighted budget the process uses.
+     */
+    @Getter
+    private Long weight;
+
+    /**
+     * The process IDs are assigned by the process table, so a new entity is inserted straight away instead of being
+     * merged.
+     */
+    @Transient
+    private boolean isNew = true;
+
+    public ProcessEntity(Long id, Long priority, Timestamp startTime) {
+        this(id, priority, startTime, 0);
+    }
+
+    public ProcessEntity(Long id, Long priority, Timestamp startTime, Integer partitionId) {
+        this(id, priority, startTime, partitionId, 1L);
+    }
+
+    public ProcessEntity(Long id, Long priority, Timestamp startTime, Integer partitionId, Long weight) {
+        this.id = id;
         this.priority = priority;
         this.startTime = startTime;
+        this.partitionId = partitionId;
+        this.weight = weight;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
     }
 
 }
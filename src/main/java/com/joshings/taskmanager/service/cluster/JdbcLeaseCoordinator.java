@@ -0,0 +1,107 @@
+package com.joshings.taskmanager.service.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The lease coordinator of a cluster whose leases are kept in a database shared by all the instances, e.g. an H2
+ * database in server or auto-server mode.
+ * <p>
+ * Every lease change runs in one transaction which first locks the cluster capacity row, so the changes are
+ * serialized.  The leases which have not been renewed in time are deleted, which gives the slots of dead instances back
+ * to the cluster.  A holder whose lease was deleted is only granted the slots still free when it renews.
+ */
+@Slf4j
+public class JdbcLeaseCoordinator implements LeaseCoordinator {
+
+    private static final String CREATE_CAPACITY_SQL = "create table if not exists cluster_capacity (" +
+            "id int primary key, max_processes bigint not null)";
+    private static final String CREATE_LEASE_SQL = "create table if not exists cluster_lease (" +
+            "holder varchar(255) primary key, slots bigint not null, used bigint not null, " +
+            "expires_at timestamp not null)";
+    private static final String INSERT_CAPACITY_SQL = "insert into cluster_capacity (id, max_processes) " +
+            "select 1, ? from dual where not exists (select 1 from cluster_capacity where id = 1)";
+    private static final String LOCK_CAPACITY_SQL = "select max_processes from cluster_capacity where id = 1 for update";
+    private static final String RECLAIM_SQL = "delete from cluster_lease where expires_at < current_timestamp";
+    private static final String HELD_SLOTS_SQL = "select coalesce(sum(slots), 0) from cluster_lease where holder = ?";
+    private static final String OTHER_SLOTS_SQL = "select coalesce(sum(slots), 0) from cluster_lease where holder <> ?";
+    private static final String MERGE_LEASE_SQL = "merge into cluster_lease (holder, slots, used, expires_at) " +
+            "key (holder) values (?, ?, ?, dateadd('MILLISECOND', ?, current_timestamp))";
+    private static final String RELEASE_SQL = "delete from cluster_lease where holder = ?";
+    private static final String LEASES_SQL = "select holder, slots, used, expires_at from cluster_lease order by holder";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration leaseDuration;
+
+    /**
+     * Instantiates a new Jdbc lease coordinator and creates its tables if needed.
+     * The maximum allowed number of processes of the cluster is set by the first instance.
+     *
+     * @param dataSource    the data source of the shared database
+     * @param maxProcesses  the maximum allowed number of processes of the cluster
+     * @param leaseDuration the time a lease is valid for unless it is renewed
+     */
+    public JdbcLeaseCoordinator(DataSource dataSource, long maxProcesses, Duration leaseDuration) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.leaseDuration = leaseDuration;
+
+        jdbcTemplate.execute(CREATE_CAPACITY_SQL);
+        jdbcTemplate.execute(CREATE_LEASE_SQL);
+        try {
+            jdbcTemplate.update(INSERT_CAPACITY_SQL, maxProcesses);
+        } catch (DuplicateKeyException e) {
+            // Another instance has just set the capacity.
+        }
+        Long clusterMaxProcesses = jdbcTemplate.queryForObject(LOCK_CAPACITY_SQL, Long.class);
+        if (clusterMaxProcesses == null || clusterMaxProcesses != maxProcesses) {
+            log.warn("The cluster allows {} processes, not the configured {}", clusterMaxProcesses, maxProcesses);
+        }
+    }
+
+    @Override
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    @Override
+    public long renew(String holder, long heldSlots, long wantedSlots, long usedSlots) {
+        Long slots = transactionTemplate.execute(status -> {
+            long maxProcesses = jdbcTemplate.queryForObject(LOCK_CAPACITY_SQL, Long.class);
+            jdbcTemplate.update(RECLAIM_SQL);
+            long leasedSlots = jdbcTemplate.queryForObject(HELD_SLOTS_SQL, Long.class, holder);
+            long otherSlots = jdbcTemplate.queryForObject(OTHER_SLOTS_SQL, Long.class, holder);
+            // A reclaimed lease has no row left, and its slots may have been granted to the other holders since.
+            long granted = Math.max(
+                    Math.min(heldSlots, leasedSlots),
+                    Math.max(0, Math.min(wantedSlots, maxProcesses - otherSlots))
+            );
+            jdbcTemplate.update(MERGE_LEASE_SQL, holder, granted, usedSlots, leaseDuration.toMillis());
+            return granted;
+        });
+        return slots == null ? heldSlots : slots;
+    }
+
+    @Override
+    public void release(String holder) {
+        jdbcTemplate.update(RELEASE_SQL, holder);
+    }
+
+    @Override
+    public List<Lease> getLeases() {
+        return jdbcTemplate.query(LEASES_SQL, (resultSet, row) -> new Lease(
+                resultSet.getString(1),
+                resultSet.getLong(2),
+                resultSet.getLong(3),
+                resultSet.getTimestamp(4)
+        ));
+    }
+}
@@ -0,0 +1,33 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.service.cluster.JdbcLeaseCoordinator;
+import com.joshings.taskmanager.service.cluster.LeaseCoordinator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Connect to the lease coordinator of the cluster, in the cluster capacity mode.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "com.joshings.taskmanager.cluster", name = "enabled", havingValue = "true")
+public class ClusterConfiguration {
+
+    /**
+     * The lease coordinator.  The cluster database is separate from the process store database.
+     *
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @return the lease coordinator
+     */
+    @Bean
+    public LeaseCoordinator leaseCoordinator(TaskManagerConfigurationProperties taskManagerConfigurationProperties) {
+        TaskManagerConfigurationProperties.ClusterProperties cluster = taskManagerConfigurationProperties.getCluster();
+        long maxWeight = taskManagerConfigurationProperties.getMaxWeight();
+        return new JdbcLeaseCoordinator(
+                new DriverManagerDataSource(cluster.getUrl(), cluster.getUsername(), cluster.getPassword()),
+                maxWeight > 0 ? maxWeight : taskManagerConfigurationProperties.getMaxProcesses(),
+                cluster.getLeaseDuration()
+        );
+    }
+}
@@ -0,0 +1,27 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.events.ProcessView;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Subscribe the consumers of the process lifecycle events.
+ */
+@Configuration
+public class EventsConfiguration {
+
+    /**
+     * The live view of the running processes.  It is closed before the task manager service, which it depends on.
+     *
+     * @param taskManagerService                 the task manager service
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @return the process view
+     */
+    @Bean(destroyMethod = "close")
+    public ProcessView processView(TaskManagerService taskManagerService,
+                                   TaskManagerConfigurationProperties taskManagerConfigurationProperties
+    ) {
+        return new ProcessView(taskManagerService, taskManagerConfigurationProperties.getEvents().getViewBackpressure());
+    }
+}
@@ -0,0 +1,38 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.history.ProcessHistory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Record the ended processes in the process history.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "com.joshings.taskmanager.history", name = "enabled", havingValue = "true")
+public class HistoryConfiguration {
+
+    /**
+     * The process history.  It is closed before the task manager service, which it depends on.
+     *
+     * @param taskManagerService                 the task manager service
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @return the process history
+     */
+    @Bean(destroyMethod = "close")
+    public ProcessHistory processHistory(TaskManagerService taskManagerService,
+                                         TaskManagerConfigurationProperties taskManagerConfigurationProperties
+    ) {
+        TaskManagerConfigurationProperties.HistoryProperties history = taskManagerConfigurationProperties.getHistory();
+        return new ProcessHistory(
+                taskManagerService,
+                Path.of(history.getDirectory()),
+                history.getPartitionDuration(),
+                history.getRetention(),
+                history.getBackpressure()
+        );
+    }
+}
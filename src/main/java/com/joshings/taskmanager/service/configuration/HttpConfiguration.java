@@ -0,0 +1,40 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.service.AsyncTaskManagerService;
+import com.joshings.taskmanager.service.http.TaskManagerHttpServer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Serve the HTTP API of the task manager.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "com.joshings.taskmanager.http", name = "enabled", havingValue = "true")
+public class HttpConfiguration {
+
+    /**
+     * The HTTP server.  It is closed before the asynchronous task manager service, which it depends on.
+     *
+     * @param asyncTaskManagerService            the asynchronous task manager service
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @return the HTTP server
+     * @throws IOException if the server cannot listen on its port
+     */
+    @Bean(destroyMethod = "close")
+    public TaskManagerHttpServer taskManagerHttpServer(
+            AsyncTaskManagerService asyncTaskManagerService,
+            TaskManagerConfigurationProperties taskManagerConfigurationProperties
+    ) throws IOException {
+        TaskManagerConfigurationProperties.HttpProperties http = taskManagerConfigurationProperties.getHttp();
+        return new TaskManagerHttpServer(
+                asyncTaskManagerService,
+                new InetSocketAddress(http.getPort()),
+                http.getBacklog(),
+                http.getBodyReaders()
+        );
+    }
+}
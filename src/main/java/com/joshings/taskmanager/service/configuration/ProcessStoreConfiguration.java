@@ -0,0 +1,79 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.repository.ProcessRepository;
+import com.joshings.taskmanager.service.converter.ProcessEntityConverter;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import com.joshings.taskmanager.service.store.JournalProcessStore;
+import com.joshings.taskmanager.service.store.JpaProcessStore;
+import com.joshings.taskmanager.service.store.MeteredProcessStore;
+import com.joshings.taskmanager.service.store.NoOpProcessStore;
+import com.joshings.taskmanager.service.store.ProcessStore;
+import com.joshings.taskmanager.service.store.ProcessStoreFactory;
+import com.joshings.taskmanager.service.store.WriteBehindProcessStore;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+
+/**
+ * Select the persistence backend of the process tables.
+ */
+@Configuration
+public class ProcessStoreConfiguration {
+
+    /**
+     * The factory of the process store of every partition.  The stores are closed by the task manager service when the
+     * application shuts down, which flushes the pending changes.  The journal of a partition is suffixed with the
+     * partition number when there are several partitions.
+     *
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @param processRepository                  the process repository
+     * @param processEntityConverter             the process entity converter
+     * @param jdbcTemplate                       the jdbc template
+     * @param taskManagerMetrics                 the task manager metrics
+     * @return the process store factory
+     */
+    @Bean
+    public ProcessStoreFactory processStoreFactory(TaskManagerConfigurationProperties taskManagerConfigurationProperties,
+                                                   ProcessRepository processRepository,
+                                                   ProcessEntityConverter processEntityConverter,
+                                                   JdbcTemplate jdbcTemplate,
+                                                   TaskManagerMetrics taskManagerMetrics
+    ) {
+        return (partition, partitionCount) -> {
+            ProcessStore processStore;
+            switch (taskManagerConfigurationProperties.getStoreMode()) {
+                case Jpa:
+                    processStore = new JpaProcessStore(
+                            processRepository,
+                            processEntityConverter,
+                            jdbcTemplate,
+                            partition
+                    );
+                    break;
+                case Memory:
+                    processStore = new NoOpProcessStore();
+                    break;
+                case Journal:
+                    TaskManagerConfigurationProperties.JournalProperties journal =
+                            taskManagerConfigurationProperties.getJournal();
+                    processStore = new JournalProcessStore(
+                            Path.of(partitionCount == 1 ? journal.getPath() : journal.getPath() + "." + partition),
+                            journal.getInitialSize(),
+                            journal.getCompactionInterval()
+                    );
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unrecognized store mode");
+            }
+
+            // Meter the backend itself, so that write-behind latencies are those of the actual writes.
+            processStore = new MeteredProcessStore(processStore, taskManagerMetrics);
+
+            return taskManagerConfigurationProperties.isWriteBehind() ?
+                    new WriteBehindProcessStore(processStore) :
+                    processStore;
+        };
+    }
+}
@@ -1,17 +1,369 @@
 package com.joshings.taskmanager.service.configuration;
 
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.validator.constraints.Range;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
 @Component
 @ConfigurationProperties(prefix="com.joshings.taskmanager")
 public class TaskManagerConfigurationProperties {
 
+    /**
+     * The available persistence backends of the process table.
+     */
+    public enum StoreMode {
+        /**
+         * Mirror the process table into the database through JPA.
+         */
+        Jpa,
+        /**
+         * Keep the process table in memory only.
+         */
+        Memory,
+        /**
+         * Append the changes of the process table to a memory-mapped journal file.
+         */
+        Journal
+    }
+
+    /**
+     * The settings of the journal store.
+     */
+    public static class JournalProperties {
+
+        /**
+         * The journal file.
+         */
+        @Getter
+        @Setter
+        private String path = "task-manager.journal";
+
+        /**
+         * The initial size of the journal file in bytes, it is doubled whenever it is full.
+         */
+        @Getter
+        @Setter
+        private long initialSize = 16 * 1024 * 1024;
+
+        /**
+         * The interval between two checks whether the journal should be compacted.
+         */
+        @Getter
+        @Setter
+        private Duration compactionInterval = Duration.ofMinutes(1);
+    }
+
+    /**
+     * The settings of a task manager partition.
+     */
+    public static class PartitionProperties {
+
+        /**
+         * The maximum number of processes running in the partition.
+         */
+        @Range(min=1)
+        @Getter
+        @Setter
+        private long maxProcesses;
+
+        /**
+         * The maximum weight of the processes running in the partition, or 0 to allow maxProcesses processes of the
+         * default weight.
+         */
+        @Range(min=0)
+        @Getter
+        @Setter
+        private long maxWeight;
+
+        /**
+         * The add mode of the processes added to the partition without an explicit add mode.
+         */
+        @Getter
+        @Setter
+        private TaskManagerService.AddMode addMode = TaskManagerService.AddMode.Default;
+    }
+
+    /**
+     * The settings of the cluster capacity mode.
+     */
+    public static class ClusterProperties {
+
+        /**
+         * Lease the capacity from the cluster, so that all the instances together run at most maxProcesses processes.
+         */
+        @Getter
+        @Setter
+        private boolean enabled;
+
+        /**
+         * The JDBC URL of the database shared by the instances of the cluster.
+         */
+        @Getter
+        @Setter
+        private String url = "jdbc:h2:file:./task-manager-cluster;AUTO_SERVER=TRUE;DB_CLOSE_DELAY=-1";
+
+        @Getter
+        @Setter
+        private String username = "sa";
+
+        @Getter
+        @Setter
+        private String password = "";
+
+        /**
+         * The id of this instance, unique in the cluster.
+         */
+        @Getter
+        @Setter
+        private String instanceId = UUID.randomUUID().toString();
+
+        /**
+         * The number of slots leased at once.
+         */
+        @Getter
+        @Setter
+        private long leaseBlock = 10;
+
+        /**
+         * The time a lease is valid for unless it is renewed.  The slots of a dead instance are reclaimed after it.
+         */
+        @Getter
+        @Setter
+        private Duration leaseDuration = Duration.ofSeconds(10);
+
+        /**
+         * The interval between two lease renewals.
+         */
+        @Getter
+        @Setter
+        private Duration renewInterval = Duration.ofSeconds(2);
+    }
+
+    /**
+     * The settings of the asynchronous task manager service.
+     */
+    public static class AsyncProperties {
+
+        /**
+         * The number of threads running the asynchronous requests.
+         */
+        @Getter
+        @Setter
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The maximum number of pending requests, beyond which requests are rejected.
+         */
+        @Getter
+        @Setter
+        private int queueCapacity = 10_000;
+
+        /**
+         * The maximum number of concurrent adds coalesced into one batch.
+         */
+        @Getter
+        @Setter
+        private int maxBatchSize = 1000;
+    }
+
+    /**
+     * The settings of the HTTP API.
+     */
+    public static class HttpProperties {
+
+        /**
+         * Serve the HTTP API.
+         */
+        @Getter
+        @Setter
+        private boolean enabled;
+
+        /**
+         * The port the HTTP API listens on.
+         */
+        @Getter
+        @Setter
+        private int port = 8080;
+
+        /**
+         * The maximum number of connections waiting to be accepted, or 0 for the system default.
+         */
+        @Getter
+        @Setter
+        private int backlog;
+
+        /**
+         * The number of threads reading the request bodies, so that slow uploads do not hold up the other requests.
+         */
+        @Getter
+        @Setter
+        private int bodyReaders = 4;
+    }
+
+    /**
+     * The range of the process priorities, both ends included.  The priorities low, medium and high are 1, 2 and 3.
+     */
+    public static class PrioritiesProperties {
+
+        /**
+         * The lowest priority.
+         */
+        @Getter
+        @Setter
+        private long lowest = 1;
+
+        /**
+         * The highest priority, at most 65535 above the lowest one.
+         */
+        @Getter
+        @Setter
+        private long highest = 3;
+    }
+
+    /**
+     * The settings of the process lifecycle events.
+     */
+    public static class EventsProperties {
+
+        /**
+         * The number of events the ring buffer holds, a power of 2.
+         */
+        @Getter
+        @Setter
+        private int ringSize = 65_536;
+
+        /**
+         * What happens when the process view falls a whole ring behind: Block holds back the task manager until the
+         * view catches up, Drop rebuilds the view from a process listing.
+         */
+        @Getter
+        @Setter
+        private ProcessEventRing.Backpressure viewBackpressure = ProcessEventRing.Backpressure.Block;
+    }
+
+    /**
+     * The settings of the process history.
+     */
+    public static class HistoryProperties {
+
+        /**
+         * Record the ended processes in the history.
+         */
+        @Getter
+        @Setter
+        private boolean enabled;
+
+        /**
+         * The directory of the history partition files.
+         */
+        @Getter
+        @Setter
+        private String directory = "task-manager-history";
+
+        /**
+         * The time span of a partition, the unit of the retention and of the counts.
+         */
+        @Getter
+        @Setter
+        private Duration partitionDuration = Duration.ofHours(1);
+
+        /**
+         * The time the ended processes are kept, after which their partitions are dropped.
+         */
+        @Getter
+        @Setter
+        private Duration retention = Duration.ofDays(7);
+
+        /**
+         * What happens when the history falls a whole ring behind: Block holds back the task manager until the
+         * history catches up, Drop loses the ends of the overwritten events.
+         */
+        @Getter
+        @Setter
+        private ProcessEventRing.Backpressure backpressure = ProcessEventRing.Backpressure.Block;
+    }
+
     @Range(min=1)
     @Getter
     @Setter
     private long maxProcesses;
+
+    /**
+     * The weighted budget of the running processes, e.g. CPU or memory units, or 0 to allow maxProcesses processes of
+     * the default weight.  Every process uses as much of it as its weight.
+     */
+    @Range(min=0)
+    @Getter
+    @Setter
+    private long maxWeight;
+
+    /**
+     * The partitions the processes are split into, each with its own capacity, add mode and store.
+     * When empty, there is one partition whose capacity is maxProcesses.
+     */
+    @Getter
+    @Setter
+    private List<PartitionProperties> partitions = new ArrayList<>();
+
+    @Getter
+    @Setter
+    private StoreMode storeMode = StoreMode.Jpa;
+
+    /**
+     * Write the changes to the persistence backend asynchronously instead of through.
+     */
+    @Getter
+    @Setter
+    private boolean writeBehind;
+
+    /**
+     * The precision of the process time-to-live: processes expire on the first tick after their time-to-live.
+     */
+    @Getter
+    @Setter
+    private Duration expiryTick = Duration.ofMillis(100);
+
+    /**
+     * The maximum time a process added in the Queue add mode waits for a free slot before it is rejected.
+     */
+    @Getter
+    @Setter
+    private Duration queueTimeout = Duration.ofSeconds(10);
+
+    /**
+     * The time the command of a killed process is given to terminate after SIGTERM, before it is sent SIGKILL.
+     */
+    @Getter
+    @Setter
+    private Duration killGracePeriod = Duration.ofSeconds(5);
+
+    @Getter
+    private final PrioritiesProperties priorities = new PrioritiesProperties();
+
+    @Getter
+    private final JournalProperties journal = new JournalProperties();
+
+    @Getter
+    private final ClusterProperties cluster = new ClusterProperties();
+
+    @Getter
+    private final AsyncProperties async = new AsyncProperties();
+
+    @Getter
+    private final HttpProperties http = new HttpProperties();
+
+    @Getter
+    private final EventsProperties events = new EventsProperties();
+
+    @Getter
+    private final HistoryProperties history = new HistoryProperties();
 }
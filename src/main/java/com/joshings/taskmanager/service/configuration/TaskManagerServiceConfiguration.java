@@ -0,0 +1,91 @@
+package com.joshings.taskmanager.service.configuration;
+
+import com.joshings.taskmanager.service.AsyncTaskManagerService;
+import com.joshings.taskmanager.service.TaskManagerConfig;
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.cluster.LeaseCoordinator;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.store.ProcessStoreFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Optional;
+
+/**
+ * Build the task manager core from the application properties.
+ */
+@Configuration
+public class TaskManagerServiceConfiguration {
+
+    /**
+     * The task manager metrics.
+     *
+     * @return the task manager metrics
+     */
+    @Bean
+    public TaskManagerMetrics taskManagerMetrics() {
+        return new TaskManagerMetrics();
+    }
+
+    /**
+     * The task manager service.  It is closed when the application shuts down, which flushes the process stores.
+     *
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @param processStoreFactory                the process store factory
+     * @param taskManagerMetrics                 the task manager metrics
+     * @param leaseCoordinator                   the lease coordinator of the cluster, in the cluster capacity mode
+     * @return the task manager service
+     */
+    @Bean(destroyMethod = "close")
+    public TaskManagerService taskManagerService(TaskManagerConfigurationProperties taskManagerConfigurationProperties,
+                                                 ProcessStoreFactory processStoreFactory,
+                                                 TaskManagerMetrics taskManagerMetrics,
+                                                 Optional<LeaseCoordinator> leaseCoordinator
+    ) {
+        TaskManagerConfigurationProperties.ClusterProperties cluster = taskManagerConfigurationProperties.getCluster();
+        TaskManagerConfigurationProperties.PrioritiesProperties priorities =
+                taskManagerConfigurationProperties.getPriorities();
+        TaskManagerConfig.TaskManagerConfigBuilder config = TaskManagerConfig.builder()
+                .maxProcesses(taskManagerConfigurationProperties.getMaxProcesses())
+                .maxWeight(taskManagerConfigurationProperties.getMaxWeight())
+                .priorityRange(new PriorityRange(priorities.getLowest(), priorities.getHighest()))
+                .processStoreFactory(processStoreFactory)
+                .metrics(taskManagerMetrics)
+                .expiryTick(taskManagerConfigurationProperties.getExpiryTick())
+                .queueTimeout(taskManagerConfigurationProperties.getQueueTimeout())
+                .killGracePeriod(taskManagerConfigurationProperties.getKillGracePeriod())
+                .eventRingSize(taskManagerConfigurationProperties.getEvents().getRingSize())
+                .leaseCoordinator(leaseCoordinator.orElse(null))
+                .instanceId(cluster.getInstanceId())
+                .leaseBlock(cluster.getLeaseBlock())
+                .renewInterval(cluster.getRenewInterval());
+        for (TaskManagerConfigurationProperties.PartitionProperties partition :
+                taskManagerConfigurationProperties.getPartitions()) {
+            config.partition(new TaskManagerConfig.PartitionConfig(
+                    partition.getMaxProcesses(), partition.getMaxWeight(), partition.getAddMode()));
+        }
+        return new TaskManagerService(config.build());
+    }
+
+    /**
+     * The asynchronous task manager service.  It is closed before the task manager service, which it depends on.
+     *
+     * @param taskManagerService                 the task manager service
+     * @param taskManagerConfigurationProperties the task manager configuration properties
+     * @return the asynchronous task manager service
+     */
+    @Bean(destroyMethod = "close")
+    public AsyncTaskManagerService asyncTaskManagerService(
+            TaskManagerService taskManagerService,
+            TaskManagerConfigurationProperties taskManagerConfigurationProperties
+    ) {
+        TaskManagerConfigurationProperties.AsyncProperties async = taskManagerConfigurationProperties.getAsync();
+        return new AsyncTaskManagerService(
+                taskManagerService,
+                async.getThreads(),
+                async.getQueueCapacity(),
+                async.getMaxBatchSize()
+        );
+    }
+}
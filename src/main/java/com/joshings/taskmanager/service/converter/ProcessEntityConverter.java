@@ -6,7 +6,7 @@ import com.joshings.taskmanager.service.model.Process;
 import org.springframework.stereotype.Component;
 
 /**
- * Convert DAO entity to BO entity
+ * Convert DAO entity to BO entity and back
  */
 @Component
 public class ProcessEntityConverter {
@@ -21,7 +21,35 @@ public class ProcessEntityConverter {
         return new Process(
                 processEntity.getId(),
                 Priority.fromLong(processEntity.getPriority()),
-                processEntity.getStartTime()
+                processEntity.getStartTime(),
+                processEntity.getWeight() == null ? Process.DEFAULT_WEIGHT : processEntity.getWeight()
+        );
+    }
+
+    /**
+     * Convert process to process entity.
+     *
+     * @param process the process
+     * @return the process entity
+     */
+    public ProcessEntity convert(Process process) {
+        return this.convert(process, 0);
+    }
+
+    /**
+     * Convert process running in the given partition to process entity.
+     *
+     * @param process     the process
+     * @param partitionId the partition id
+     * @return the process entity
+     */
+    public ProcessEntity convert(Process process, int partitionId) {
+        return new ProcessEntity(
+                process.getProcessId(),
+                process.getPriority().getPriorityValue(),
+                process.getStartTime(),
+                partitionId,
+                process.getWeight()
         );
     }
 }
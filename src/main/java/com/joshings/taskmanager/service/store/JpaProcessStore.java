@@ -0,0 +1,205 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.repository.ProcessRepository;
+import com.joshings.taskmanager.repository.model.ProcessEntity;
+import com.joshings.taskmanager.service.converter.ProcessEntityConverter;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A write-through process store backed by the JPA {@link ProcessRepository}.
+ * Loading bypasses JPA: the rows are projected straight into processes, without entity hydration.
+ * The processes of every task manager partition are stored in the same table, tagged with their partition id.
+ */
+public class JpaProcessStore implements ProcessStore {
+
+    static final String LOAD_ALL_SQL = "select id, priority, start_time, weight from " + ProcessEntity.PROCESS +
+            " where partition_id = ? order by partition_id, id";
+    private static final int LOAD_ALL_FETCH_SIZE = 1000;
+    static final String DELETE_SQL = "delete from " + ProcessEntity.PROCESS + " where partition_id = ?";
+    private static final String INSERT_SQL = "insert into " + ProcessEntity.PROCESS +
+            " (id, priority, start_time, partition_id, weight) values (?, ?, ?, ?, ?)";
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * Skip process ID blocks with one statement: the sequence is incremented once per row.
+     */
+    private static final String SKIP_PROCESS_ID_BLOCKS_SQL =
+            "select max(next value for process_id_seq) from system_range(1, ?)";
+
+    private final ProcessRepository processRepository;
+    private final ProcessEntityConverter processEntityConverter;
+    private final JdbcTemplate jdbcTemplate;
+    private final int partitionId;
+
+    /**
+     * Instantiates a new Jpa process store of an unpartitioned task manager.
+     *
+     * @param processRepository      the process repository
+     * @param processEntityConverter the process entity converter
+     * @param jdbcTemplate           the jdbc template
+     */
+    public JpaProcessStore(ProcessRepository processRepository,
+                           ProcessEntityConverter processEntityConverter,
+                           JdbcTemplate jdbcTemplate
+    ) {
+        this(processRepository, processEntityConverter, jdbcTemplate, 0);
+    }
+
+    /**
+     * Instantiates a new Jpa process store of a task manager partition.
+     *
+     * @param processRepository      the process repository
+     * @param processEntityConverter the process entity converter
+     * @param jdbcTemplate           the jdbc template
+     * @param partitionId            the partition id
+     */
+    public JpaProcessStore(ProcessRepository processRepository,
+                           ProcessEntityConverter processEntityConverter,
+                           JdbcTemplate jdbcTemplate,
+                           int partitionId
+    ) {
+        this.partitionId = partitionId;
+        this.processRepository = processRepository;
+        this.processEntityConverter = processEntityConverter;
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(LOAD_ALL_FETCH_SIZE);
+    }
+
+    /**
+     * Read the processes through a forward-only cursor, so the table is never materialized as a list of entities.
+     *
+     * @param consumer the consumer of the processes, in start order
+     */
+    @Override
+    public void loadAll(Consumer<Process> consumer) {
+        jdbcTemplate.query(LOAD_ALL_SQL, resultSet -> {
+            consumer.accept(new Process(
+                    resultSet.getLong(1),
+                    Priority.fromValue(resultSet.getLong(2)),
+                    resultSet.getTimestamp(3),
+                    resultSet.getLong(4)
+            ));
+        }, partitionId);
+    }
+
+    @Override
+    public long reserveProcessIdBlock() {
+        return processRepository.nextProcessIdBlock();
+    }
+
+    /**
+     * The sequence is shared by the partitions, so it is moved forward by drawing the skipped blocks instead of being
+     * restarted, which could hand out again a block drawn meanwhile by another partition.
+     *
+     * @param processIdBlock the first process id of the lowest block which may be reserved next
+     */
+    @Override
+    public void skipProcessIdBlocks(long processIdBlock) {
+        long skippedBlocks = Math.floorDiv(
+                processIdBlock - processRepository.nextProcessIdBlock() - 1,
+                PROCESS_ID_BLOCK_SIZE
+        );
+        if (skippedBlocks > 0) {
+            jdbcTemplate.queryForObject(SKIP_PROCESS_ID_BLOCKS_SQL, Long.class, skippedBlocks);
+        }
+    }
+
+    @Override
+    public void save(Process process) {
+        processRepository.save(processEntityConverter.convert(process, partitionId));
+    }
+
+    @Override
+    public void saveAll(Collection<Process> processes) {
+        processRepository.saveAll(processes.stream()
+                .map(process -> processEntityConverter.convert(process, partitionId))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> processIds) {
+        processRepository.deleteAllByIdInBatch(processIds);
+    }
+
+    /**
+     * Delete the matching processes with one set-based statement, whatever their number.
+     * The priority, process id range and start time predicates are all served by the partition indexes.
+     *
+     * @param filter the filter
+     */
+    @Override
+    public void deleteWhere(ProcessFilter filter) {
+        List<Object> arguments = new ArrayList<>();
+        arguments.add(partitionId);
+        String sql = deleteWhereSql(filter, arguments);
+
+        if (arguments.size() == 1) {
+            this.deleteAll();
+        } else {
+            jdbcTemplate.update(sql, arguments.toArray());
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        jdbcTemplate.update(DELETE_SQL, partitionId);
+    }
+
+    /**
+     * Insert the processes with JDBC batches instead of saving them one by one through JPA, which would look every
+     * process up before inserting it.
+     *
+     * @param processes the processes
+     */
+    @Override
+    public void replaceAll(Collection<Process> processes) {
+        this.deleteAll();
+        jdbcTemplate.batchUpdate(INSERT_SQL, processes, INSERT_BATCH_SIZE, (statement, process) -> {
+            statement.setLong(1, process.getProcessId());
+            statement.setLong(2, process.getPriority().getPriorityValue());
+            statement.setTimestamp(3, process.getStartTime());
+            statement.setInt(4, partitionId);
+            statement.setLong(5, process.getWeight());
+        });
+    }
+
+    /**
+     * Build the statement deleting the processes of a partition which match the filter.
+     *
+     * @param filter    the filter
+     * @param arguments the partition id, followed by the arguments of the filter once built
+     * @return the delete statement
+     */
+    static String deleteWhereSql(ProcessFilter filter, List<Object> arguments) {
+        StringJoiner where = new StringJoiner(" and ", DELETE_SQL + " and ", "");
+        Set<Priority> priorities = filter.getPriorities();
+        if (!priorities.isEmpty()) {
+            where.add("priority in (" + String.join(", ", Collections.nCopies(priorities.size(), "?")) + ")");
+            priorities.forEach(priority -> arguments.add(priority.getPriorityValue()));
+        }
+        if (filter.getMinProcessId() != null) {
+            where.add("id >= ?");
+            arguments.add(filter.getMinProcessId());
+        }
+        if (filter.getMaxProcessId() != null) {
+            where.add("id <= ?");
+            arguments.add(filter.getMaxProcessId());
+        }
+        if (filter.getStartedBefore() != null) {
+            where.add("start_time < ?");
+            arguments.add(filter.getStartedBefore());
+        }
+        if (filter.getStartedAfter() != null) {
+            where.add("start_time > ?");
+            arguments.add(filter.getStartedAfter());
+        }
+        return where.toString();
+    }
+}
@@ -1,15 +1,37 @@
 package com.joshings.taskmanager.shell;
 
+import com.joshings.taskmanager.service.cluster.Lease;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.events.ProcessView;
+import com.joshings.taskmanager.service.history.HistoryCount;
+import com.joshings.taskmanager.service.history.ProcessHistory;
+import com.joshings.taskmanager.service.history.ProcessHistoryRecord;
+import com.joshings.taskmanager.service.load.LoadOperation;
+import com.joshings.taskmanager.service.load.LoadTest;
+import com.joshings.taskmanager.service.model.AddResult;
 import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.PriorityRange;
 import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessCursor;
+import com.joshings.taskmanager.service.model.ProcessFilter;
 import com.joshings.taskmanager.service.TaskManagerService;
+import org.jline.terminal.Terminal;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Task Manager Commands.
@@ -21,33 +43,67 @@ public class TaskManagerCommands {
      * The constant DFLT.  This is used to indicate that the user wants the default behavior.
      */
     public static final String DFLT = "dflt";
+    /**
+     * The constant SNAPSHOT.  This is the default snapshot file.
+     */
+    public static final String SNAPSHOT = "task-manager.snapshot";
     /**
      * The Task manager service.
      */
     @Autowired
     TaskManagerService taskManagerService;
 
+    /**
+     * The live view of the running processes, kept up to date from the process events.
+     */
+    @Autowired
+    ProcessView processView;
+
+    /**
+     * The history of the ended processes, when it is enabled.
+     */
+    @Autowired(required = false)
+    ProcessHistory processHistory;
+
+    /**
+     * The terminal, which long outputs are written to incrementally.
+     */
+    @Autowired
+    @Lazy
+    Terminal terminal;
+
     /**
      * Add a new process.
      *
-     * @param prio    the prio
-     * @param addMode the add mode
+     * @param prio      the prio
+     * @param weight    the weight
+     * @param addMode   the add mode
+     * @param ttl       the time-to-live
+     * @param partition the partition key
+     * @param command   the command the process runs
      * @return a simple message
      */
     @ShellMethod("Add a process.")
     public String addProcess(
-            @ShellOption String prio,
-            @ShellOption(defaultValue = DFLT, help = "(dflt|fifo|prio)") String addMode
+            @ShellOption(help = "Priority: low, medium, high or a number") String prio,
+            @ShellOption(defaultValue = "1", help = "Share of the weighted budget the process uses") long weight,
+            @ShellOption(defaultValue = DFLT, help = "(dflt|fifo|prio|queue)") String addMode,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Kill the process after this time-to-live, e.g. 30s")
+                    String ttl,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Partition number or key, e.g. a tenant")
+                    String partition,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Command to run, with space separated arguments, " +
+                    "e.g. 'sleep 60'") String command
     ) {
         Process process;
         try {
             Priority priority = Priority.fromString(prio);
-            process = addMode.equals(DFLT) ?
-                    taskManagerService.addProcess(priority) :
-                    taskManagerService.addProcess(
-                            priority,
-                            TaskManagerService.AddMode.fromString(addMode)
-                    );
+            TaskManagerService.AddMode mode = toAddMode(addMode);
+            Duration timeToLive = ttl == null ? null : DurationStyle.detectAndParse(ttl);
+            List<String> arguments = command == null ? null : Arrays.asList(command.trim().split("\\s+"));
+            process = partition == null ?
+                    taskManagerService.addProcess(priority, weight, mode, timeToLive, arguments) :
+                    taskManagerService.addProcess(partition, priority, weight, mode, timeToLive, arguments);
         } catch (Exception e) {
             return e.getMessage();
         }
@@ -55,6 +111,38 @@ public class TaskManagerCommands {
         return "Created process with ID " + process.getProcessId();
     }
 
+    /**
+     * Add a batch of new processes.
+     *
+     * @param prios     the comma separated prios
+     * @param addMode   the add mode
+     * @param partition the partition key
+     * @return one message per process
+     */
+    @ShellMethod("Add a batch of processes.")
+    public String addProcesses(
+            @ShellOption(help = "Comma separated priorities, e.g. low,high,medium or 1,3,2") String prios,
+            @ShellOption(defaultValue = DFLT, help = "(dflt|fifo|prio|queue)") String addMode,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Partition number or key, e.g. a tenant")
+                    String partition
+    ) {
+        List<AddResult> results;
+        try {
+            List<Priority> priorities = Arrays.stream(prios.split(","))
+                    .map(String::trim)
+                    .map(Priority::fromString)
+                    .collect(Collectors.toList());
+            TaskManagerService.AddMode mode = toAddMode(addMode);
+            results = partition == null ?
+                    taskManagerService.addProcesses(priorities, mode) :
+                    taskManagerService.addProcesses(partition, priorities, mode);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+
+        return results.stream().map(AddResult::toString).collect(Collectors.joining("\n"));
+    }
+
     /**
      * Kill a single process.
      *
@@ -82,7 +170,7 @@ public class TaskManagerCommands {
      */
     @ShellMethod("Kill processes with the given priority.")
     public String killGroup(
-            @ShellOption String prio
+            @ShellOption(help = "Priority: low, medium, high or a number") String prio
     ) {
         Priority priority;
         try {
@@ -107,25 +195,280 @@ public class TaskManagerCommands {
         return "Killed all processes";
     }
 
+    /**
+     * Kill all the processes matching the given criteria at once.
+     *
+     * @param prios     the comma separated priorities
+     * @param minPid    the lowest process id
+     * @param maxPid    the highest process id
+     * @param olderThan only kill processes started before this time
+     * @param newerThan only kill processes started after this time
+     * @return a simple message
+     */
+    @ShellMethod("Kill the processes matching all the given criteria.")
+    public String killWhere(
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Comma separated priorities, e.g. low,medium")
+                    String prios,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Lowest process ID, inclusive") Long minPid,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Highest process ID, inclusive") Long maxPid,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Started before, e.g. \"2021-09-01 12:00:00\"")
+                    String olderThan,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Started after, e.g. \"2021-09-01 12:00:00\"")
+                    String newerThan
+    ) {
+        int killed;
+        try {
+            ProcessFilter.ProcessFilterBuilder filter = ProcessFilter.builder()
+                    .minProcessId(minPid)
+                    .maxProcessId(maxPid)
+                    .startedBefore(olderThan == null ? null : Timestamp.valueOf(olderThan))
+                    .startedAfter(newerThan == null ? null : Timestamp.valueOf(newerThan));
+            if (prios != null) {
+                Arrays.stream(prios.split(","))
+                        .map(String::trim)
+                        .map(Priority::fromString)
+                        .forEach(filter::priority);
+            }
+            killed = taskManagerService.killWhere(filter.build());
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+
+        return "Killed " + killed + " processes";
+    }
+
+    /**
+     * Save the running processes to a snapshot file.
+     *
+     * @param path the snapshot file
+     * @return a simple message
+     */
+    @ShellMethod("Save the running processes to a snapshot file.")
+    public String snapshotSave(
+            @ShellOption(defaultValue = SNAPSHOT, help = "Snapshot file") String path
+    ) {
+        int saved;
+        try {
+            saved = taskManagerService.saveSnapshot(Path.of(path));
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+
+        return "Saved " + saved + " processes to " + path;
+    }
+
+    /**
+     * Replace the running processes with the processes of a snapshot file.
+     *
+     * @param path the snapshot file
+     * @return a simple message
+     */
+    @ShellMethod("Replace the running processes with those of a snapshot file.")
+    public String snapshotLoad(
+            @ShellOption(defaultValue = SNAPSHOT, help = "Snapshot file") String path
+    ) {
+        int loaded;
+        try {
+            loaded = taskManagerService.loadSnapshot(Path.of(path));
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+
+        return "Loaded " + loaded + " processes from " + path;
+    }
+
+    /**
+     * Print the admission, eviction, kill and process store metrics.
+     *
+     * @return the metrics
+     */
+    @ShellMethod("Show the task manager metrics.")
+    public String metrics() {
+        return taskManagerService.getMetrics().report();
+    }
+
+    /**
+     * Print the capacity leases of the cluster.
+     *
+     * @return the leases
+     */
+    @ShellMethod("Show the capacity leases of the cluster.")
+    public String leases() {
+        try {
+            return taskManagerService.getLeases().stream().map(Lease::toString).collect(Collectors.joining("\n"));
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Print the process counts of the live process view and the lag of the event subscribers.
+     *
+     * @return the process view
+     */
+    @ShellMethod("Show the live process view and the event subscribers.")
+    public String processView() {
+        StringBuilder view = new StringBuilder();
+        view.append(String.format("Processes %d", processView.size()));
+        PriorityRange priorityRange = taskManagerService.getPriorityRange();
+        for (int i = 0; i < priorityRange.size(); i++) {
+            Priority priority = priorityRange.get(i);
+            long count = processView.count(priority);
+            if (count > 0) {
+                view.append(String.format(" - %s %d", priority.getPriorityName(), count));
+            }
+        }
+        view.append(String.format("%nEvents published %d", taskManagerService.getEvents().getSequence()));
+        for (ProcessEventRing.Subscription subscription : taskManagerService.getEvents().getSubscriptions()) {
+            view.append(String.format("%nSubscriber %s - %s - lag %d - lost %d",
+                    subscription.getName(),
+                    subscription.getBackpressure(),
+                    subscription.getLag(),
+                    subscription.getLostEvents()));
+        }
+        return view.toString();
+    }
+
+    /**
+     * Print the processes which ended recently, oldest first, from the process history.
+     *
+     * @param since how far back to look
+     * @param limit the maximum number of processes
+     * @return the ended processes
+     */
+    @ShellMethod("Show the processes which ended recently.")
+    public String history(
+            @ShellOption(defaultValue = "1h", help = "How far back to look, e.g. 30m") String since,
+            @ShellOption(defaultValue = "100", help = "Maximum number of processes") int limit
+    ) {
+        if (processHistory == null) {
+            return "The process history is disabled";
+        }
+        try {
+            Instant now = Instant.now();
+            return processHistory.getRecords(now.minus(DurationStyle.detectAndParse(since)), now, limit).stream()
+                    .map(ProcessHistoryRecord::toString)
+                    .collect(Collectors.joining("\n"));
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Print the number of processes which ended recently per history partition, priority and end reason, e.g. the
+     * evictions per priority per hour.
+     *
+     * @param since how far back to look
+     * @return the counts
+     */
+    @ShellMethod("Count the processes which ended recently per partition, priority and end reason.")
+    public String historyCounts(
+            @ShellOption(defaultValue = "24h", help = "How far back to look, e.g. 7d") String since
+    ) {
+        if (processHistory == null) {
+            return "The process history is disabled";
+        }
+        try {
+            Instant now = Instant.now();
+            return processHistory.countEnds(now.minus(DurationStyle.detectAndParse(since)), now).stream()
+                    .map(HistoryCount::toString)
+                    .collect(Collectors.joining("\n"));
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Run a load test against the task manager and print the throughput and latency report.
+     * The processes added by the load test are not killed afterwards.
+     *
+     * @param mix      the comma separated operations and their weights
+     * @param threads  the number of threads
+     * @param rate     the target number of operations per second, 0 for a closed loop
+     * @param duration the duration of the test
+     * @return the report
+     */
+    @ShellMethod("Run a load test against the task manager.")
+    public String loadTest(
+            @ShellOption(defaultValue = "add-fifo:40,add-prio:20,kill:30,kill-group:1,list:1",
+                    help = "Operations and weights: add[-mode][-prio], kill, kill-group[-prio], list")
+                    String mix,
+            @ShellOption(defaultValue = "4", help = "Number of threads") int threads,
+            @ShellOption(defaultValue = "0", help = "Target operations per second, 0 for a closed loop") double rate,
+            @ShellOption(defaultValue = "10s", help = "Duration, e.g. 30s") String duration
+    ) {
+        try {
+            return new LoadTest(
+                    taskManagerService,
+                    LoadOperation.parseMix(mix),
+                    threads,
+                    rate,
+                    DurationStyle.detectAndParse(duration)
+            ).run().report();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted";
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
     /**
      * Gets processes.
+     * The processes are written to the terminal as they are fetched, instead of being joined into one message.
+     * The processes running a command show its CPU time and resident set size.
      *
      * @param sortMode the sort mode
-     * @return the processes
+     * @param limit    the maximum number of processes, 0 for all
+     * @param after    the cursor of the process to start after
+     * @return an error message, if any
      */
     @ShellMethod("Get processes.")
     public String getProcesses(
-            @ShellOption(defaultValue = DFLT, help = "(start_time|pid|prio)") String sortMode
+            @ShellOption(defaultValue = DFLT, help = "(start_time|pid|prio)") String sortMode,
+            @ShellOption(defaultValue = "0", help = "Maximum number of processes, 0 for all") int limit,
+            @ShellOption(defaultValue = ShellOption.NULL, help = "Start after this cursor: pid, or prio:pid when " +
+                    "sorting by priority") String after
     ) {
-        List<Process> processList;
         try {
-            processList = sortMode.equals(DFLT) ?
-                    taskManagerService.getProcesses() :
-                    taskManagerService.getProcesses(TaskManagerService.SortMode.fromString(sortMode));
+            TaskManagerService.SortMode mode = sortMode.equals(DFLT) ?
+                    TaskManagerService.SortMode.StartTime :
+                    TaskManagerService.SortMode.fromString(sortMode);
+            ProcessCursor cursor = after == null ? null : ProcessCursor.fromString(mode, after);
+            PrintWriter writer = terminal.writer();
+
+            if (limit > 0) {
+                List<Process> page = taskManagerService.getProcesses(mode, cursor, limit);
+                page.forEach(process -> writer.println(this.describe(process)));
+                if (page.size() == limit) {
+                    writer.println("Next page: --after " + ProcessCursor.after(mode, page.get(page.size() - 1)));
+                }
+            } else {
+                try (Stream<Process> processes = taskManagerService.streamProcesses(mode, cursor)) {
+                    processes.forEach(process -> writer.println(this.describe(process)));
+                }
+            }
+            writer.flush();
         } catch (Exception e) {
             return e.getMessage();
         }
 
-        return processList.stream().map(Process::toString).collect(Collectors.joining("\n"));
+        return null;
+    }
+
+    /**
+     * The process, followed by the resources used by its command if it runs one.
+     */
+    private String describe(Process process) {
+        return taskManagerService.getUsage(process.getProcessId())
+                .map(usage -> process + " - " + usage)
+                .orElseGet(process::toString);
+    }
+
+    /**
+     * The add mode of an option, null for the add mode of the partition.
+     */
+    private static TaskManagerService.AddMode toAddMode(String addMode) {
+        return addMode.equals(DFLT) ? null : TaskManagerService.AddMode.fromString(addMode);
     }
-}
\ No newline at end of file
+}
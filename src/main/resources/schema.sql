@@ -1,7 +1,22 @@
 DROP TABLE IF EXISTS process;
+DROP SEQUENCE IF EXISTS process_id_seq;
 
 CREATE TABLE process (
-  id INT AUTO_INCREMENT  PRIMARY KEY,
+  id BIGINT PRIMARY KEY,
   priority INT NOT NULL,
-  start_time TIMESTAMP NOT NULL
-);
\ No newline at end of file
+  start_time TIMESTAMP NOT NULL,
+  partition_id INT DEFAULT 0 NOT NULL,
+  weight BIGINT DEFAULT 1 NOT NULL
+);
+
+-- Loading and deleting the processes of a partition, and deleting them by process id range.
+CREATE INDEX process_partition_idx ON process (partition_id, id);
+
+-- Deleting the processes of a partition by priority.
+CREATE INDEX process_partition_priority_idx ON process (partition_id, priority, id);
+
+-- Deleting the processes of a partition by start time.
+CREATE INDEX process_partition_start_time_idx ON process (partition_id, start_time, id);
+
+-- Process IDs are allocated in blocks, the increment must match ProcessStore.PROCESS_ID_BLOCK_SIZE.
+CREATE SEQUENCE process_id_seq START WITH 1 INCREMENT BY 100;
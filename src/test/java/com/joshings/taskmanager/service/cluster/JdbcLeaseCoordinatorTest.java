@@ -0,0 +1,206 @@
+package com.joshings.taskmanager.service.cluster;
+
+import com.joshings.taskmanager.service.TaskManagerConfig;
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Share one H2 database between the lease coordinators of two instances, A and B, let the lease of A expire while B
+ * grows, and check that the leases of the cluster never add up to more than its maximum allowed number of processes
+ * once A renews.  Then let several coordinators compete for the capacity of a database on disk, each on connections
+ * of its own, and check that the leases never add up to more than the maximum either.
+ */
+class JdbcLeaseCoordinatorTest {
+
+    private static final long MAX_PROCESSES = 10;
+    private static final Duration LEASE_DURATION = Duration.ofMillis(300);
+    private static final Duration RENEW_INTERVAL = Duration.ofMillis(50);
+    private static final int COMPETING_INSTANCES = 4;
+    private static final int RENEWALS = 100;
+
+    private String url;
+
+    @BeforeEach
+    void createDatabase() {
+        url = "jdbc:h2:mem:lease_test_" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    }
+
+    @Test
+    void renewsAReclaimedLeaseWithTheFreeSlotsOnly() throws InterruptedException {
+        JdbcLeaseCoordinator a = this.coordinator();
+        JdbcLeaseCoordinator b = this.coordinator();
+        assertEquals(6, a.renew("a", 0, 6, 0));
+        assertEquals(4, b.renew("b", 0, 6, 0));
+        assertEquals(4, b.renew("b", 4, 2, 4), "A valid lease must not shrink below the slots held");
+
+        Thread.sleep(LEASE_DURATION.multipliedBy(2).toMillis());
+        assertEquals(MAX_PROCESSES, b.renew("b", 4, MAX_PROCESSES, 4));
+        assertEquals(0, a.renew("a", 6, 6, 6));
+        assertTrue(sumOfSlots(a.getLeases()) <= MAX_PROCESSES, a.getLeases().toString());
+
+        b.release("b");
+        assertEquals(6, a.renew("a", 0, 6, 6));
+    }
+
+    @Test
+    void shrinksTheCapacityOfAnInstanceWhoseLeaseWasReclaimed() throws Exception {
+        DisconnectableLeaseCoordinator coordinatorA = new DisconnectableLeaseCoordinator(this.coordinator());
+        LeaseCoordinator coordinatorB = this.coordinator();
+        try (TaskManagerService instanceA = this.instance("a", coordinatorA);
+             TaskManagerService instanceB = this.instance("b", coordinatorB)
+        ) {
+            fill(instanceA, 6);
+
+            coordinatorA.disconnected = true;
+            Thread.sleep(LEASE_DURATION.multipliedBy(2).toMillis());
+            fill(instanceB, MAX_PROCESSES);
+
+            coordinatorA.disconnected = false;
+            Thread.sleep(RENEW_INTERVAL.multipliedBy(4).toMillis());
+            List<Lease> leases = coordinatorB.getLeases();
+            assertTrue(sumOfSlots(leases) <= MAX_PROCESSES, leases.toString());
+            assertThrows(InstantiationException.class, () -> instanceA.addProcess(Priority.High));
+        }
+    }
+
+    @Test
+    void neverLeasesMoreThanTheMaximumToCompetingInstances(@TempDir Path directory) throws Exception {
+        // Every statement runs on a new connection: the coordinators share nothing but the database file.
+        url = "jdbc:h2:file:" + directory.resolve("lease") + ";LOCK_TIMEOUT=10000";
+        List<JdbcLeaseCoordinator> coordinators = new ArrayList<>();
+        for (int i = 0; i < COMPETING_INSTANCES; i++) {
+            coordinators.add(this.coordinator());
+        }
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        AtomicLong shortGrants = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(COMPETING_INSTANCES);
+        try {
+            List<Future<?>> instances = new ArrayList<>();
+            for (int i = 0; i < COMPETING_INSTANCES; i++) {
+                String holder = "instance-" + i;
+                JdbcLeaseCoordinator coordinator = coordinators.get(i);
+                Random random = new Random(i);
+                instances.add(executor.submit(() -> {
+                    start.await();
+                    long heldSlots = 0;
+                    for (int renewal = 0; renewal < RENEWALS; renewal++) {
+                        long wantedSlots = random.nextInt((int) MAX_PROCESSES + 1);
+                        heldSlots = coordinator.renew(holder, heldSlots, wantedSlots, Math.min(heldSlots, wantedSlots));
+                        if (heldSlots < wantedSlots) {
+                            shortGrants.incrementAndGet();
+                        }
+                        List<Lease> leases = coordinator.getLeases();
+                        if (sumOfSlots(leases) > MAX_PROCESSES) {
+                            violations.add(leases.toString());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> instance : instances) {
+                instance.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(), new ArrayList<>(violations));
+        assertTrue(shortGrants.get() > 0, "The instances never competed for the capacity");
+        List<Lease> leases = coordinators.get(0).getLeases();
+        assertTrue(sumOfSlots(leases) <= MAX_PROCESSES, leases.toString());
+    }
+
+    private JdbcLeaseCoordinator coordinator() {
+        DataSource dataSource = new DriverManagerDataSource(url, "sa", "");
+        return new JdbcLeaseCoordinator(dataSource, MAX_PROCESSES, LEASE_DURATION);
+    }
+
+    private TaskManagerService instance(String instanceId, LeaseCoordinator leaseCoordinator) {
+        return new TaskManagerService(TaskManagerConfig.builder()
+                .maxProcesses(MAX_PROCESSES)
+                .leaseCoordinator(leaseCoordinator)
+                .instanceId(instanceId)
+                .leaseBlock(2)
+                .renewInterval(RENEW_INTERVAL)
+                .build());
+    }
+
+    /**
+     * Add processes to an instance until it runs the given number, waiting for its lease to grow.
+     */
+    private static void fill(TaskManagerService instance, long processes) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (instance.getProcesses().size() < processes) {
+            assertTrue(System.nanoTime() < deadline, "The lease did not grow to " + processes + " slots");
+            try {
+                instance.addProcess(Priority.Low);
+            } catch (InstantiationException e) {
+                Thread.sleep(RENEW_INTERVAL.toMillis());
+            }
+        }
+    }
+
+    private static long sumOfSlots(List<Lease> leases) {
+        return leases.stream().mapToLong(Lease::getSlots).sum();
+    }
+
+    /**
+     * A lease coordinator which cannot be reached while it is disconnected.
+     */
+    private static final class DisconnectableLeaseCoordinator implements LeaseCoordinator {
+
+        private final LeaseCoordinator leaseCoordinator;
+        private volatile boolean disconnected;
+
+        private DisconnectableLeaseCoordinator(LeaseCoordinator leaseCoordinator) {
+            this.leaseCoordinator = leaseCoordinator;
+        }
+
+        @Override
+        public Duration getLeaseDuration() {
+            return leaseCoordinator.getLeaseDuration();
+        }
+
+        @Override
+        public long renew(String holder, long heldSlots, long wantedSlots, long usedSlots) {
+            if (disconnected) {
+                throw new IllegalStateException("Disconnected");
+            }
+            return leaseCoordinator.renew(holder, heldSlots, wantedSlots, usedSlots);
+        }
+
+        @Override
+        public void release(String holder) {
+            leaseCoordinator.release(holder);
+        }
+
+        @Override
+        public List<Lease> getLeases() {
+            return leaseCoordinator.getLeases();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.repository.ProcessRepository;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the H2 query plan of every {@link JpaProcessStore} query against the schema in schema.sql.
+ * The statements are those of the store, explained with their arguments, except the {@link ProcessRepository} ones
+ * which are generated by JPA.  The table holds the processes of a single partition, as by default, and is analyzed, so
+ * that the plans are those of a production table: an index on the partition alone walks the whole table.  Every query
+ * must narrow its index lookup by the column it filters on, and listings must be read in index order instead of being
+ * sorted.
+ */
+class JpaProcessStoreQueryPlanTest {
+
+    private static final Timestamp BEFORE = Timestamp.valueOf("2021-09-01 12:00:00");
+    private static final Timestamp AFTER = Timestamp.valueOf("2021-08-01 12:00:00");
+    private static final int PROCESSES = 20_000;
+
+    /**
+     * The index a plan reads and its lookup conditions, which H2 prints in a comment after the table name.
+     */
+    private static final Pattern INDEX_LOOKUP = Pattern.compile("(?s)/\\* PUBLIC\\.([A-Z_0-9]+): (.*?)\\*/");
+
+    private Connection connection;
+
+    static Stream<Arguments> queries() {
+        return Stream.of(
+                Arguments.of("loadAll", JpaProcessStore.LOAD_ALL_SQL, List.of(0), "PARTITION_ID", true),
+                Arguments.of("deleteAll", JpaProcessStore.DELETE_SQL, List.of(0), "PARTITION_ID", false),
+                deleteWhere("deleteWhere priorities", "PRIORITY", ProcessFilter.builder()
+                        .priority(Priority.Low)
+                        .priority(Priority.Medium)
+                        .build()),
+                deleteWhere("deleteWhere pid range", "ID", ProcessFilter.builder()
+                        .minProcessId(10L)
+                        .maxProcessId(20L)
+                        .build()),
+                deleteWhere("deleteWhere older than", "START_TIME", ProcessFilter.builder()
+                        .startedBefore(BEFORE)
+                        .build()),
+                deleteWhere("deleteWhere all criteria", "PRIORITY", ProcessFilter.builder()
+                        .priority(Priority.Low)
+                        .priority(Priority.Medium)
+                        .minProcessId(10L)
+                        .maxProcessId(20L)
+                        .startedBefore(BEFORE)
+                        .startedAfter(AFTER)
+                        .build()),
+                Arguments.of("ProcessRepository.deleteAllByIdInBatch",
+                        "delete from process where id in (?, ?, ?)", List.of(1, 2, 3), "ID", false),
+                Arguments.of("ProcessRepository.findById",
+                        "select * from process where id = ?", List.of(1), "ID", false)
+        );
+    }
+
+    @BeforeEach
+    void createSchema() throws SQLException, IOException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:query_plan_test");
+        try (InputStream schema = getClass().getResourceAsStream("/schema.sql");
+             Statement statement = connection.createStatement()
+        ) {
+            assertNotNull(schema, "schema.sql not found");
+            String script = new String(schema.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .filter(line -> !line.trim().startsWith("--"))
+                    .collect(Collectors.joining("\n"));
+            for (String sql : script.split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+            statement.execute("insert into process (id, priority, start_time) select x, mod(x, 3) + 1, " +
+                    "dateadd('HOUR', x, timestamp '2020-01-01 00:00:00') from system_range(1, " + PROCESSES + ")");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    void queryLooksUpTheFilteredColumn(String query,
+                                       String sql,
+                                       List<Object> arguments,
+                                       String filteredColumn,
+                                       boolean sorted
+    ) throws SQLException {
+        String plan = explain(sql, arguments);
+
+        assertFalse(plan.contains(".tableScan"), query + " scans the table: " + plan);
+        Matcher index = INDEX_LOOKUP.matcher(plan);
+        assertTrue(index.find(), query + " does not use an index: " + plan);
+        assertTrue(Pattern.compile("(?<![A-Z_])" + filteredColumn + "(?![A-Z_])").matcher(index.group(2)).find(),
+                query + " does not look " + filteredColumn + " up in " + index.group(1) + ": " + plan);
+        if (sorted) {
+            assertTrue(plan.contains("/* index sorted */"), query + " sorts the table: " + plan);
+        }
+    }
+
+    private static Arguments deleteWhere(String query, String filteredColumn, ProcessFilter filter) {
+        List<Object> arguments = new ArrayList<>();
+        arguments.add(0);
+        String sql = JpaProcessStore.deleteWhereSql(filter, arguments);
+        return Arguments.of(query, sql, arguments, filteredColumn, false);
+    }
+
+    private String explain(String sql, List<Object> arguments) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < arguments.size(); i++) {
+                statement.setObject(i + 1, arguments.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertTrue(resultSet.next());
+                return resultSet.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessCursor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The non-blocking variant of the {@link TaskManagerService}.
+ * <p>
+ * Requests run on a bounded pool of threads and complete their future once done; a request which does not fit in the
+ * pool queue fails with a {@link RejectedExecutionException}.  Concurrent adds are coalesced: they are queued, and one
+ * drain task at a time takes all the queued adds, up to the maximum batch size, and admits them with
+ * {@link TaskManagerService#addProcesses(String, List, TaskManagerService.AddMode)}, so the whole micro-batch shares
+ * one capacity check and one write to the process store.  Consecutive adds with the same partition key and add mode
+ * are batched together, so the outcome is the same as running the adds one after the other in arrival order.  Adds in
+ * the Queue add mode, explicit or the add mode of their partition, are not coalesced, since they wait for a free slot
+ * on their own thread.
+ * <p>
+ * Once the service is closed, the requests which have not started yet, and the new ones, fail with a
+ * {@link RejectedExecutionException}, so no future is left pending.
+ */
+public class AsyncTaskManagerService implements AutoCloseable {
+
+    private final TaskManagerService taskManagerService;
+    private final ThreadPoolExecutor executor;
+    private final int maxBatchSize;
+    private final int queueCapacity;
+
+    private final ConcurrentLinkedQueue<PendingAdd> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAddCount = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * An add waiting to be coalesced into a batch.
+     */
+    private static final class PendingAdd {
+        private final String partitionKey;
+        private final Priority priority;
+        private final TaskManagerService.AddMode addMode;
+        private final CompletableFuture<Process> future = new CompletableFuture<>();
+
+        private PendingAdd(String partitionKey, Priority priority, TaskManagerService.AddMode addMode) {
+            this.partitionKey = partitionKey;
+            this.priority = priority;
+            this.addMode = addMode;
+        }
+
+        private boolean isBatchedWith(PendingAdd other) {
+            return Objects.equals(partitionKey, other.partitionKey) && addMode == other.addMode;
+        }
+    }
+
+    /**
+     * A request waiting for a thread, which can be failed if it is dropped.
+     */
+    private static final class Request<T> implements Runnable {
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Request(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+            }
+        }
+    }
+
+    /**
+     * Instantiates a new Async task manager service.
+     *
+     * @param taskManagerService the task manager service
+     * @param threads            the number of threads running the requests
+     * @param queueCapacity      the maximum number of pending requests, beyond which requests are rejected
+     * @param maxBatchSize       the maximum number of concurrent adds coalesced into one batch
+     */
+    public AsyncTaskManagerService(TaskManagerService taskManagerService,
+                                   int threads,
+                                   int queueCapacity,
+                                   int maxBatchSize
+    ) {
+        this.taskManagerService = taskManagerService;
+        this.maxBatchSize = maxBatchSize;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "task-manager-async-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Add a new process according to the provided add mode, coalesced with the concurrent adds.
+     * The future fails with an {@link InstantiationException} if the process is rejected.
+     *
+     * @param priority the priority
+     * @param addMode  the add mode, or null for the add mode of the partition
+     * @return the future process
+     */
+    public CompletableFuture<Process> addProcess(Priority priority, TaskManagerService.AddMode addMode) {
+        return this.addProcess(null, priority, addMode);
+    }
+
+    /**
+     * Add a new process to the partition of the given key, coalesced with the concurrent adds.
+     * The future fails with an {@link InstantiationException} if the process is rejected.
+     *
+     * @param partitionKey the partition key, or null
+     * @param priority     the priority
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @return the future process
+     */
+    public CompletableFuture<Process> addProcess(String partitionKey,
+                                                 Priority priority,
+                                                 TaskManagerService.AddMode addMode
+    ) {
+        boolean queued = addMode == null ?
+                taskManagerService.queuesByDefault(partitionKey) :
+                addMode == TaskManagerService.AddMode.Queue;
+        if (queued) {
+            return this.submit(() -> {
+                try {
+                    return partitionKey == null ?
+                            taskManagerService.addProcess(priority, addMode) :
+                            taskManagerService.addProcess(partitionKey, priority, addMode, null);
+                } catch (InstantiationException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        }
+        PendingAdd add = new PendingAdd(partitionKey, priority, addMode);
+        if (pendingAddCount.incrementAndGet() > queueCapacity) {
+            pendingAddCount.decrementAndGet();
+            add.future.completeExceptionally(new RejectedExecutionException("Too many pending adds"));
+            return add.future;
+        }
+        pendingAdds.add(add);
+        this.scheduleDrain();
+        if (executor.isShutdown()) {
+            // Closed meanwhile: no drain task may run any more.
+            this.failPendingAdds(new RejectedExecutionException("The task manager service is closed"));
+        }
+        return add.future;
+    }
+
+    /**
+     * Add new processes at once, with one capacity check for the whole batch.
+     * The batch is not coalesced with the concurrent adds, it is already one.
+     *
+     * @param partitionKey the partition key, or null
+     * @param priorities   the priorities
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @return the future results, in the order of the priorities
+     */
+    public CompletableFuture<List<AddResult>> addProcesses(String partitionKey,
+                                                           List<Priority> priorities,
+                                                           TaskManagerService.AddMode addMode
+    ) {
+        return this.submit(() -> partitionKey == null ?
+                taskManagerService.addProcesses(priorities, addMode) :
+                taskManagerService.addProcesses(partitionKey, priorities, addMode));
+    }
+
+    /**
+     * Kill a specific process.
+     * The future fails with an {@link IllegalArgumentException} if the process is not running.
+     *
+     * @param processId the process id
+     * @return the future completed once the process is killed
+     */
+    public CompletableFuture<Void> killProcess(Long processId) {
+        return this.submit(() -> {
+            taskManagerService.killProcess(processId);
+            return null;
+        });
+    }
+
+    /**
+     * Kill the processes with the given IDs at once.
+     *
+     * @param processIds the process ids
+     * @return the future number of killed processes
+     */
+    public CompletableFuture<Integer> killProcesses(List<Long> processIds) {
+        return this.submit(() -> taskManagerService.killProcesses(processIds));
+    }
+
+    /**
+     * Kill group of processes with the given priority.
+     *
+     * @param priority the priority
+     * @return the future completed once the processes are killed
+     */
+    public CompletableFuture<Void> killGroup(Priority priority) {
+        return this.submit(() -> {
+            taskManagerService.killGroup(priority);
+            return null;
+        });
+    }
+
+    /**
+     * Kill all running processes.
+     *
+     * @return the future completed once the processes are killed
+     */
+    public CompletableFuture<Void> killAll() {
+        return this.submit(() -> {
+            taskManagerService.killAll();
+            return null;
+        });
+    }
+
+    /**
+     * Gets processes.
+     *
+     * @param sortMode the sort mode
+     * @return the future processes
+     */
+    public CompletableFuture<List<Process>> getProcesses(TaskManagerService.SortMode sortMode) {
+        return this.submit(() -> taskManagerService.getProcesses(sortMode));
+    }
+
+    /**
+     * Gets a page of processes, keyset paginated.
+     *
+     * @param sortMode the sort mode
+     * @param after    the cursor of the last process of the previous page, or null for the first page
+     * @param limit    the maximum number of processes
+     * @return the future processes
+     */
+    public CompletableFuture<List<Process>> getProcesses(TaskManagerService.SortMode sortMode,
+                                                         ProcessCursor after,
+                                                         int limit
+    ) {
+        return this.submit(() -> taskManagerService.getProcesses(sortMode, after, limit));
+    }
+
+    /**
+     * Stop running requests.  The running ones are interrupted, the pending ones fail with a
+     * {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        RejectedExecutionException closed = new RejectedExecutionException("The task manager service is closed");
+        for (Runnable dropped : executor.shutdownNow()) {
+            if (dropped instanceof Request) {
+                ((Request<?>) dropped).future.completeExceptionally(closed);
+            }
+        }
+        this.failPendingAdds(closed);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+        Request<T> request = new Request<>(supplier);
+        try {
+            executor.execute(request);
+        } catch (RejectedExecutionException e) {
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drainAdds);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                this.failPendingAdds(e);
+            }
+        }
+    }
+
+    /**
+     * Admit the queued adds in batches, then hand over to another drain task if adds were queued meanwhile.
+     */
+    private void drainAdds() {
+        try {
+            List<PendingAdd> batch = new ArrayList<>();
+            PendingAdd add;
+            while (batch.size() < maxBatchSize && (add = pendingAdds.poll()) != null) {
+                batch.add(add);
+            }
+            pendingAddCount.addAndGet(-batch.size());
+
+            int start = 0;
+            while (start < batch.size()) {
+                int end = start + 1;
+                while (end < batch.size() && batch.get(end).isBatchedWith(batch.get(start))) {
+                    end++;
+                }
+                this.admit(batch.subList(start, end));
+                start = end;
+            }
+        } finally {
+            draining.set(false);
+            if (!pendingAdds.isEmpty()) {
+                this.scheduleDrain();
+            }
+        }
+    }
+
+    private void admit(List<PendingAdd> adds) {
+        List<Priority> priorities = new ArrayList<>(adds.size());
+        for (PendingAdd add : adds) {
+            priorities.add(add.priority);
+        }
+
+        List<AddResult> results;
+        try {
+            PendingAdd first = adds.get(0);
+            results = first.partitionKey == null ?
+                    taskManagerService.addProcesses(priorities, first.addMode) :
+                    taskManagerService.addProcesses(first.partitionKey, priorities, first.addMode);
+        } catch (RuntimeException e) {
+            adds.forEach(add -> add.future.completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < adds.size(); i++) {
+            AddResult result = results.get(i);
+            if (result.getStatus() == AddResult.Status.Admitted) {
+                adds.get(i).future.complete(result.getProcess().orElseThrow());
+            } else {
+                adds.get(i).future.completeExceptionally(new InstantiationException(result.getMessage().orElse(null)));
+            }
+        }
+    }
+
+    private void failPendingAdds(Throwable cause) {
+        PendingAdd add;
+        while ((add = pendingAdds.poll()) != null) {
+            pendingAddCount.decrementAndGet();
+            add.future.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.cluster.LeaseCoordinator;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.store.NoOpProcessStore;
+import com.joshings.taskmanager.service.store.ProcessStoreFactory;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The configuration of a {@link TaskManagerService}, e.g.
+ * <pre>
+ * new TaskManagerService(TaskManagerConfig.builder().maxProcesses(100).build());
+ * </pre>
+ * Everything but the capacity has a default: the processes are kept in memory only, in one partition.
+ */
+@Getter
+@Builder
+public final class TaskManagerConfig {
+
+    /**
+     * The settings of a task manager partition.
+     */
+    @Getter
+    public static final class PartitionConfig {
+
+        /**
+         * The maximum number of processes running in the partition.
+         */
+        private final long maxProcesses;
+
+        /**
+         * The maximum weight of the processes running in the partition, or 0 to allow maxProcesses processes of the
+         * default weight.
+         */
+        private final long maxWeight;
+
+        /**
+         * The add mode of the processes added to the partition without an explicit add mode.
+         */
+        private final TaskManagerService.AddMode addMode;
+
+        /**
+         * Instantiates a new Partition config.
+         *
+         * @param maxProcesses the maximum number of processes running in the partition
+         * @param addMode      the add mode of the processes added to the partition without an explicit add mode
+         */
+        public PartitionConfig(long maxProcesses, TaskManagerService.AddMode addMode) {
+            this(maxProcesses, 0, addMode);
+        }
+
+        /**
+         * Instantiates a new Partition config with a weighted budget.
+         *
+         * @param maxProcesses the maximum number of processes running in the partition, when maxWeight is 0
+         * @param maxWeight    the maximum weight of the processes running in the partition, or 0
+         * @param addMode      the add mode of the processes added to the partition without an explicit add mode
+         */
+        public PartitionConfig(long maxProcesses, long maxWeight, TaskManagerService.AddMode addMode) {
+            this.maxProcesses = maxProcesses;
+            this.maxWeight = maxWeight;
+            this.addMode = addMode;
+        }
+
+        /**
+         * Gets the capacity of the partition: its weighted budget, or else its maximum number of processes.
+         *
+         * @return the capacity
+         */
+        public long getCapacity() {
+            return maxWeight > 0 ? maxWeight : maxProcesses;
+        }
+    }
+
+    /**
+     * The maximum allowed number of processes, when there are no partitions.
+     */
+    private final long maxProcesses;
+
+    /**
+     * The maximum weight of the running processes, when there are no partitions, or 0 to allow maxProcesses processes
+     * of the default weight.  Every process uses as much of this weighted budget as its weight, e.g. CPU or memory
+     * units.
+     */
+    private final long maxWeight;
+
+    /**
+     * The partitions the processes are split into, each with its own capacity, add mode and store.
+     * When empty, there is one partition whose capacity is maxProcesses.
+     */
+    @Singular
+    private final List<PartitionConfig> partitions;
+
+    /**
+     * The factory of the process store of every partition.
+     */
+    @Builder.Default
+    private final ProcessStoreFactory processStoreFactory = (partition, partitionCount) -> new NoOpProcessStore();
+
+    /**
+     * The priorities the processes may have.  Prio mode eviction costs the same whatever the size of the range.
+     */
+    @Builder.Default
+    private final PriorityRange priorityRange = PriorityRange.ofAliases();
+
+    @Builder.Default
+    private final TaskManagerMetrics metrics = new TaskManagerMetrics();
+
+    /**
+     * The precision of the process time-to-live: processes expire on the first tick after their time-to-live.
+     */
+    @Builder.Default
+    private final Duration expiryTick = Duration.ofMillis(100);
+
+    /**
+     * The maximum time a process added in the Queue add mode waits for a free slot before it is rejected.
+     */
+    @Builder.Default
+    private final Duration queueTimeout = Duration.ofSeconds(10);
+
+    /**
+     * The number of process lifecycle events the event ring buffer holds, a power of 2.
+     */
+    @Builder.Default
+    private final int eventRingSize = 65_536;
+
+    /**
+     * The time the command of a killed process is given to terminate after SIGTERM, before it is sent SIGKILL.
+     */
+    @Builder.Default
+    private final Duration killGracePeriod = Duration.ofSeconds(5);
+
+    /**
+     * The coordinator the capacity is leased from, or null if the capacity is not shared with a cluster.
+     */
+    private final LeaseCoordinator leaseCoordinator;
+
+    /**
+     * The id of this instance in the cluster.
+     */
+    @Builder.Default
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * The number of admission slots leased from the cluster at once.
+     */
+    @Builder.Default
+    private final long leaseBlock = 10;
+
+    /**
+     * The interval between two lease renewals, shorter than the lease duration of the coordinator.
+     */
+    @Builder.Default
+    private final Duration renewInterval = Duration.ofSeconds(2);
+
+    /**
+     * Gets the capacity when there are no partitions: the weighted budget, or else the maximum number of processes.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return maxWeight > 0 ? maxWeight : maxProcesses;
+    }
+}
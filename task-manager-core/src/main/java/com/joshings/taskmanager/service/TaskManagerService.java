@@ -0,0 +1,982 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.admission.AdmissionController;
+import com.joshings.taskmanager.service.cluster.ClusterCapacity;
+import com.joshings.taskmanager.service.cluster.Lease;
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.expiry.ProcessExpiry;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessCursor;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+import com.joshings.taskmanager.service.partition.PartitionMerge;
+import com.joshings.taskmanager.service.partition.TaskManagerPartition;
+import com.joshings.taskmanager.service.store.ProcessIdAllocator;
+import com.joshings.taskmanager.service.store.ProcessSnapshot;
+import com.joshings.taskmanager.service.supervisor.ProcessSupervisor;
+import com.joshings.taskmanager.service.supervisor.ProcessUsage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The Task manager (TM) service.
+ * A software component that is designed for handling multiple processes inside an operating system.
+ * It only depends on plain Java and can be embedded, see {@link TaskManagerConfig}.
+ */
+public class TaskManagerService implements AutoCloseable {
+
+    /**
+     * The available modes for adding a process to the TM.
+     */
+    public enum AddMode {
+        /**
+         * Default add mode.
+         * The default behaviour is that we can accept new processes till when there is capacity inside the Task
+         * Manager, otherwise we won’t accept any new process.
+         */
+        Default("dflt"),
+        /**
+         * Fifo add mode.
+         * Accept all new processes through the addProcess() method, killing and removing from the TM list the oldest
+         * one (First-In, First-Out) when the max size is reached.  A weighted process evicts the oldest processes
+         * until their weight makes room for it.
+         */
+        Fifo("fifo"),
+        /**
+         * Prio add mode.
+         * Every call to the addProcess() method, when the max size is reached, should result into an evaluation: if the
+         * new process passed in the add() call has a higher priority compared to any of the existing one, we remove the
+         * lowest priority that is the oldest, otherwise we skip it.  A weighted process evicts the lowest priority
+         * processes, the oldest first, until their weight makes room for it.
+         */
+        Prio("prio"),
+        /**
+         * Queue add mode.
+         * When the max size is reached, the addProcess() call waits for a process to be killed, up to the queue
+         * timeout.  The waiting processes are started in priority order, then in the order they were added.
+         */
+        Queue("queue");
+
+        private final String modeName;
+
+        AddMode(String modeName) {
+            this.modeName = modeName;
+        }
+
+        /**
+         * Gets mode name.
+         *
+         * @return the mode name
+         */
+        public String getModeName() {
+            return this.modeName;
+        }
+
+        /**
+         * Get the Add Mode from its name.
+         *
+         * @param modeName the mode name
+         * @return the add mode
+         */
+        public static AddMode fromString(String modeName) {
+            for (AddMode addMode : AddMode.values()) {
+                if (addMode.modeName.equalsIgnoreCase(modeName)) {
+                    return addMode;
+                }
+            }
+            throw new IllegalArgumentException("Unrecognized creation mode");
+        }
+    }
+
+    /**
+     * The available modes for sorting the process list which is retrieved from the TM.
+     */
+    public enum SortMode {
+        /**
+         * Sort by start time.
+         */
+        StartTime("start_time"),
+        /**
+         * Sort by process ID.
+         */
+        Pid("pid"),
+        /**
+         * Sort by priority.
+         */
+        Prio("prio");
+
+        private final String modeName;
+
+        SortMode (String modeName) {
+            this.modeName = modeName;
+        }
+
+        /**
+         * Gets mode name.
+         *
+         * @return the mode name
+         */
+        public String getModeName() {
+            return this.modeName;
+        }
+
+        /**
+         * Get the mode from its name.
+         *
+         * @param modeName the mode name
+         * @return the sort mode
+         */
+        public static SortMode fromString(String modeName) {
+            for (SortMode sortMode : SortMode.values()) {
+                if (sortMode.modeName.equalsIgnoreCase(modeName)) {
+                    return sortMode;
+                }
+            }
+            throw new IllegalArgumentException("Unrecognized sort mode");
+        }
+    }
+
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private final TaskManagerPartition[] partitions;
+    private final TaskManagerMetrics taskManagerMetrics;
+    private final PriorityRange priorityRange;
+    private final ProcessExpiry processExpiry;
+    private final ProcessEventRing processEvents;
+    private final ProcessSupervisor processSupervisor;
+
+    /**
+     * The leases of the partitions, in the cluster capacity mode.
+     */
+    private final ClusterCapacity clusterCapacity;
+
+    /**
+     * Runs the operations of all the partitions in parallel, only when there are several partitions.
+     */
+    private final ExecutorService fanOutExecutor;
+
+    /**
+     * Instantiates a new Task manager service.
+     * The process table of every partition is loaded from its process store, which is only written to afterwards.
+     * In the cluster capacity mode, the capacity of every partition is leased from the cluster instead of configured.
+     *
+     * @param config the task manager configuration
+     */
+    public TaskManagerService(TaskManagerConfig config) {
+        this.taskManagerMetrics = config.getMetrics();
+        this.priorityRange = config.getPriorityRange();
+
+        boolean leased = config.getLeaseCoordinator() != null;
+        List<TaskManagerConfig.PartitionConfig> partitionConfigs = config.getPartitions();
+        if (partitionConfigs.isEmpty()) {
+            if (!leased && config.getCapacity() < 1) {
+                throw new IllegalArgumentException("The maximum allowed number of processes must be greater than 0");
+            }
+            this.partitions = new TaskManagerPartition[]{new TaskManagerPartition(
+                    0,
+                    1,
+                    leased ? 0 : config.getCapacity(),
+                    AddMode.Default,
+                    config.getQueueTimeout(),
+                    config.getPriorityRange(),
+                    config.getProcessStoreFactory().create(0, 1)
+            )};
+            this.fanOutExecutor = null;
+        } else {
+            int partitionCount = partitionConfigs.size();
+            this.partitions = new TaskManagerPartition[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = new TaskManagerPartition(
+                        i,
+                        partitionCount,
+                        leased ? 0 : partitionConfigs.get(i).getCapacity(),
+                        partitionConfigs.get(i).getAddMode(),
+                        config.getQueueTimeout(),
+                        config.getPriorityRange(),
+                        config.getProcessStoreFactory().create(i, partitionCount)
+                );
+            }
+            this.fanOutExecutor = Executors.newFixedThreadPool(
+                    Math.min(partitionCount, Runtime.getRuntime().availableProcessors()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "partition-fan-out");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+            );
+        }
+        taskManagerMetrics.setQueueDepth(this::getQueueDepth);
+        this.processEvents = new ProcessEventRing(config.getEventRingSize());
+        this.processExpiry = new ProcessExpiry(config.getExpiryTick(), this::expire);
+        this.processSupervisor = new ProcessSupervisor(config.getKillGracePeriod(), this::exited);
+
+        this.clusterCapacity = !leased ? null : new ClusterCapacity(
+                config.getLeaseCoordinator(),
+                config.getInstanceId(),
+                Arrays.stream(partitions).map(TaskManagerPartition::getAdmissionController).collect(Collectors.toList()),
+                config.getLeaseBlock(),
+                config.getRenewInterval()
+        );
+    }
+
+    /**
+     * Gets the priorities the processes may have.
+     *
+     * @return the priority range
+     */
+    public PriorityRange getPriorityRange() {
+        return priorityRange;
+    }
+
+    /**
+     * Gets the number of partitions.
+     *
+     * @return the partition count
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Gets the partition of a partition key.
+     * A key which is a partition number, e.g. "2", selects that partition, any other key, e.g. a tenant, is hashed.
+     *
+     * @param partitionKey the partition key
+     * @return the partition
+     */
+    public int partitionOf(String partitionKey) {
+        if (!partitionKey.isEmpty() && partitionKey.length() < 10 && partitionKey.chars().allMatch(Character::isDigit)) {
+            int partition = Integer.parseInt(partitionKey);
+            if (partition < partitions.length) {
+                return partition;
+            }
+        }
+        return Math.floorMod(partitionKey.hashCode(), partitions.length);
+    }
+
+    /**
+     * Whether a process added without an explicit add mode may wait for a free slot, because the partition it is
+     * added to has the Queue add mode.
+     *
+     * @param partitionKey the partition key, or null for a process without a key, which may be added to any partition
+     * @return true if the process may wait for a free slot
+     */
+    public boolean queuesByDefault(String partitionKey) {
+        if (partitionKey != null) {
+            return partitions[this.partitionOf(partitionKey)].getAddMode() == AddMode.Queue;
+        }
+        return Arrays.stream(partitions).anyMatch(partition -> partition.getAddMode() == AddMode.Queue);
+    }
+
+    /**
+     * Gets processes.
+     * The processes of the partitions are listed in parallel and merged.
+     *
+     * @param sortMode the sort mode
+     * @return the processes
+     */
+    public List<Process> getProcesses(SortMode sortMode) {
+        if (partitions.length == 1) {
+            return partitions[0].getProcessTable().list(sortMode);
+        }
+        return PartitionMerge.merge(
+                this.fanOut(partition -> partition.getProcessTable().list(sortMode)),
+                order(sortMode),
+                Integer.MAX_VALUE
+        );
+    }
+
+    /**
+     * Gets a page of processes, keyset paginated.
+     * With several partitions, the start time order is not a keyset order, so only the pid and prio sort modes can be
+     * paginated.
+     *
+     * @param sortMode the sort mode
+     * @param after    the cursor of the last process of the previous page, or null for the first page
+     * @param limit    the maximum number of processes
+     * @return the processes
+     */
+    public List<Process> getProcesses(SortMode sortMode, ProcessCursor after, int limit) {
+        if (partitions.length == 1) {
+            return partitions[0].getProcessTable().page(sortMode, after, limit);
+        }
+        checkPageable(sortMode, after);
+        return PartitionMerge.merge(
+                this.fanOut(partition -> partition.getProcessTable().page(sortMode, after, limit)),
+                order(sortMode),
+                limit
+        );
+    }
+
+    /**
+     * Stream the processes, which are fetched one page at a time.
+     *
+     * @param sortMode the sort mode
+     * @param after    the cursor of the process to start after, or null to start with the first process
+     * @return the processes
+     */
+    public Stream<Process> streamProcesses(SortMode sortMode, ProcessCursor after) {
+        if (partitions.length == 1) {
+            return partitions[0].getProcessTable().stream(sortMode, after, STREAM_PAGE_SIZE);
+        }
+        checkPageable(sortMode, after);
+        List<Iterator<Process>> iterators = new ArrayList<>(partitions.length);
+        for (TaskManagerPartition partition : partitions) {
+            iterators.add(partition.getProcessTable().stream(sortMode, after, STREAM_PAGE_SIZE).iterator());
+        }
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        PartitionMerge.merge(iterators, order(sortMode)),
+                        Spliterator.ORDERED | Spliterator.NONNULL
+                ),
+                false
+        );
+    }
+
+    /**
+     * Get a list of processes which is sorted by start time.
+     *
+     * @return the processes
+     */
+    public List<Process> getProcesses() {
+        return getProcesses(SortMode.StartTime);
+    }
+
+    /**
+     * Add a new weighted process to the partition of the given key, which is killed once its time-to-live has elapsed.
+     * The process uses as much of the capacity as its weight.
+     * Safe for concurrent callers: the capacity of the partition is never exceeded and an evicted process is only ever
+     * evicted by one caller.
+     *
+     * @param partitionKey the partition key, see {@link #partitionOf(String)}
+     * @param priority     the priority
+     * @param weight       the weight, e.g. CPU or memory units, at least 1
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @param ttl          the time-to-live, or null to keep the process running until it is killed
+     * @return the process
+     * @throws InstantiationException   the instantiation exception
+     * @throws IllegalArgumentException if the priority is out of the priority range, or the weight is below 1
+     */
+    public Process addProcess(String partitionKey, Priority priority, long weight, AddMode addMode, Duration ttl)
+            throws InstantiationException {
+        return this.addProcess(partitionKey, priority, weight, addMode, ttl, null);
+    }
+
+    /**
+     * Add a new weighted process running an operating system command to the partition of the given key.
+     * The process is removed once its command exits, and killing the process stops its command.
+     *
+     * @param partitionKey the partition key, see {@link #partitionOf(String)}
+     * @param priority     the priority
+     * @param weight       the weight, e.g. CPU or memory units, at least 1
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @param ttl          the time-to-live, or null to keep the process running until it is killed
+     * @param command      the program and its arguments, or null for a process without a command
+     * @return the process
+     * @throws InstantiationException   the instantiation exception
+     * @throws IllegalArgumentException if the priority is out of the priority range, the weight is below 1, or the
+     *                                  command cannot be started, in which case the processes evicted to make room
+     *                                  for it stay evicted
+     */
+    public Process addProcess(String partitionKey,
+                              Priority priority,
+                              long weight,
+                              AddMode addMode,
+                              Duration ttl,
+                              List<String> command
+    ) throws InstantiationException {
+        return this.addProcess(partitions[this.partitionOf(partitionKey)], priority, weight, addMode, ttl, command);
+    }
+
+    /**
+     * Add a new process to the partition of the given key, which is killed once its time-to-live has elapsed.
+     * Safe for concurrent callers: the maximum allowed number of processes of the partition is never exceeded and an
+     * evicted process is only ever evicted by one caller.
+     *
+     * @param partitionKey the partition key, see {@link #partitionOf(String)}
+     * @param priority     the priority
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @param ttl          the time-to-live, or null to keep the process running until it is killed
+     * @return the process
+     * @throws InstantiationException   the instantiation exception
+     * @throws IllegalArgumentException if the priority is out of the priority range
+     */
+    public Process addProcess(String partitionKey, Priority priority, AddMode addMode, Duration ttl)
+            throws InstantiationException {
+        return this.addProcess(partitionKey, priority, Process.DEFAULT_WEIGHT, addMode, ttl);
+    }
+
+    /**
+     * Add a new weighted process according to the provided add mode, which is killed once its time-to-live has
+     * elapsed.  With several partitions, the process is added to the partition of the calling thread, or to another
+     * partition with room if that one is full.
+     *
+     * @param priority the priority
+     * @param weight   the weight, e.g. CPU or memory units, at least 1
+     * @param addMode  the add mode, or null for the add mode of the partition
+     * @param ttl      the time-to-live, or null to keep the process running until it is killed
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    public Process addProcess(Priority priority, long weight, AddMode addMode, Duration ttl)
+            throws InstantiationException {
+        return this.addProcess(priority, weight, addMode, ttl, null);
+    }
+
+    /**
+     * Add a new weighted process running an operating system command according to the provided add mode.
+     * The process is removed once its command exits, and killing the process stops its command.
+     * With several partitions, the process is added to the partition of the calling thread, or to another partition
+     * with room if that one is full.
+     *
+     * @param priority the priority
+     * @param weight   the weight, e.g. CPU or memory units, at least 1
+     * @param addMode  the add mode, or null for the add mode of the partition
+     * @param ttl      the time-to-live, or null to keep the process running until it is killed
+     * @param command  the program and its arguments, or null for a process without a command
+     * @return the process
+     * @throws InstantiationException   the instantiation exception
+     * @throws IllegalArgumentException if the command cannot be started, in which case the processes evicted to make
+     *                                  room for it stay evicted
+     */
+    public Process addProcess(Priority priority, long weight, AddMode addMode, Duration ttl, List<String> command)
+            throws InstantiationException {
+        return this.addProcess(this.threadPartition(weight), priority, weight, addMode, ttl, command);
+    }
+
+    /**
+     * Add a new process according to the provided add mode, which is killed once its time-to-live has elapsed.
+     * With several partitions, the process is added to the partition of the calling thread, or to another partition
+     * with room if that one is full.
+     *
+     * @param priority the priority
+     * @param addMode  the add mode, or null for the add mode of the partition
+     * @param ttl      the time-to-live, or null to keep the process running until it is killed
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    public Process addProcess(Priority priority, AddMode addMode, Duration ttl) throws InstantiationException {
+        return this.addProcess(priority, Process.DEFAULT_WEIGHT, addMode, ttl);
+    }
+
+    /**
+     * Add a new process according to the provided add mode.
+     *
+     * @param priority the priority
+     * @param addMode  the add mode
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    public Process addProcess(Priority priority, AddMode addMode) throws InstantiationException {
+        return this.addProcess(priority, addMode, null);
+    }
+
+    /**
+     * Add a new process accoring to the add mode of the partition, which is the default mode unless configured.
+     *
+     * @param priority the priority
+     * @return the process
+     * @throws InstantiationException the instantiation exception
+     */
+    public Process addProcess(Priority priority) throws InstantiationException {
+        return this.addProcess(priority, null, null);
+    }
+
+    /**
+     * Add a batch of new processes to the partition of the given key.
+     * The evictions of the whole batch are planned in one pass and the changes are written to the process store in
+     * batches.  The outcome is the same as adding the processes one after the other.  In the Queue add mode, the
+     * processes are added one after the other, each waiting for a free slot.
+     *
+     * @param partitionKey the partition key, see {@link #partitionOf(String)}
+     * @param priorities   the priorities
+     * @param addMode      the add mode, or null for the add mode of the partition
+     * @return one result per process, in the same order
+     */
+    public List<AddResult> addProcesses(String partitionKey, List<Priority> priorities, AddMode addMode) {
+        return this.addProcesses(partitions[this.partitionOf(partitionKey)], priorities, addMode);
+    }
+
+    /**
+     * Add a batch of new processes according to the provided add mode.
+     * With several partitions, the processes are added to the partition of the calling thread, or to another
+     * partition with room for the whole batch if that one is full.
+     *
+     * @param priorities the priorities
+     * @param addMode    the add mode, or null for the add mode of the partition
+     * @return one result per process, in the same order
+     */
+    public List<AddResult> addProcesses(List<Priority> priorities, AddMode addMode) {
+        return this.addProcesses(this.threadPartition(priorities.size()), priorities, addMode);
+    }
+
+    /**
+     * Kill a specific process.
+     *
+     * @param processId the process id
+     */
+    public void killProcess(Long processId) {
+        TaskManagerPartition partition = partitions[ProcessIdAllocator.partitionOf(processId, partitions.length)];
+        Optional<Process> killedProcess = partition.getProcessTable().remove(processId);
+        if (killedProcess.isEmpty()) {
+            throw new IllegalArgumentException("No process with ID " + processId + " is running");
+        }
+        processExpiry.cancel(processId);
+        processSupervisor.terminateAll(Collections.singletonList(processId));
+        processEvents.publish(ProcessEvent.Type.Killed, killedProcess.get());
+        partition.getAdmissionController().release(killedProcess.get().getWeight());
+        taskManagerMetrics.recordKill(TaskManagerMetrics.KillPath.Process, 1);
+    }
+
+    /**
+     * Kill the processes with the given IDs at once, in one batch per partition.
+     * The IDs of the processes which are not running are ignored.
+     *
+     * @param processIds the process ids
+     * @return the number of killed processes
+     */
+    public int killProcesses(Collection<Long> processIds) {
+        return this.removeAllById(processIds, ProcessEvent.Type.Killed, TaskManagerMetrics.KillPath.Batch);
+    }
+
+    /**
+     * Kill group of processes with the given priority.
+     *
+     * @param priority the priority
+     */
+    public void killGroup(Priority priority) {
+        int killed = this.killInAllPartitions(ProcessFilter.ofPriority(priority), ProcessEvent.Type.GroupKilled);
+        taskManagerMetrics.recordKill(TaskManagerMetrics.KillPath.Group, killed);
+    }
+
+    /**
+     * Kill all processes.
+     */
+    public void killAll() {
+        int killed = this.killInAllPartitions(ProcessFilter.all(), ProcessEvent.Type.AllKilled);
+        taskManagerMetrics.recordKill(TaskManagerMetrics.KillPath.All, killed);
+    }
+
+    /**
+     * Kill all the processes matching the filter at once.
+     * The process store deletes them with one set-based statement instead of one statement per process.
+     *
+     * @param filter the filter
+     * @return the number of killed processes
+     */
+    public int killWhere(ProcessFilter filter) {
+        int killed = this.killInAllPartitions(filter, ProcessEvent.Type.Killed);
+        taskManagerMetrics.recordKill(TaskManagerMetrics.KillPath.Where, killed);
+        return killed;
+    }
+
+    /**
+     * Save the running processes to a snapshot file, which atomically replaces the file if it exists.
+     * Every partition is saved as it is at one point in time, the partitions one after the other.
+     *
+     * @param path the snapshot file
+     * @return the number of saved processes
+     * @throws IOException if the snapshot cannot be written
+     */
+    public int saveSnapshot(Path path) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        for (TaskManagerPartition partition : partitions) {
+            processes.addAll(partition.getProcessTable().list(SortMode.Pid));
+        }
+        ProcessSnapshot.write(path, processes);
+        return processes.size();
+    }
+
+    /**
+     * Replace the running processes with the processes of a snapshot file, which keep their IDs and start times.
+     * Every partition replaces its processes at once, and its process store writes them in bulk.  The process ID
+     * sequence is moved past the restored processes, so that the processes added afterwards are started after them.
+     * The restored processes have no time-to-live.
+     *
+     * @param path the snapshot file
+     * @return the number of restored processes
+     * @throws IOException              if the file cannot be read, or is not a valid snapshot
+     * @throws IllegalArgumentException if the restored processes of a partition exceed its capacity, or if a restored
+     *                                  process has a priority out of the priority range
+     */
+    public int loadSnapshot(Path path) throws IOException {
+        List<Process> processes = ProcessSnapshot.read(path);
+        List<List<Process>> processesByPartition = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            processesByPartition.add(new ArrayList<>());
+        }
+        for (Process process : processes) {
+            priorityRange.check(process.getPriority());
+            processesByPartition.get(ProcessIdAllocator.partitionOf(process.getProcessId(), partitions.length))
+                    .add(process);
+        }
+        for (TaskManagerPartition partition : partitions) {
+            long capacity = partition.getAdmissionController().getCapacity();
+            if (weightOf(processesByPartition.get(partition.getPartition())) > capacity) {
+                throw new IllegalArgumentException("The snapshot holds more processes than the capacity of " +
+                        capacity + " of partition " + partition.getPartition());
+            }
+        }
+
+        for (TaskManagerPartition partition : partitions) {
+            List<Process> restoredProcesses = processesByPartition.get(partition.getPartition());
+            List<Process> removedProcesses = partition.getAdmissionController().restoreAll(restoredProcesses);
+            this.stopKilled(removedProcesses);
+            processEvents.publishAll(ProcessEvent.Type.AllKilled, removedProcesses);
+            processEvents.publishAll(ProcessEvent.Type.Added, restoredProcesses);
+        }
+        return processes.size();
+    }
+
+    /**
+     * Gets the number of processes which are waiting for their time-to-live to elapse.
+     *
+     * @return the process count
+     */
+    public int getExpiringProcessCount() {
+        return processExpiry.size();
+    }
+
+    /**
+     * Gets the number of processes waiting for a free slot in the Queue add mode, in all the partitions.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        int queueDepth = 0;
+        for (TaskManagerPartition partition : partitions) {
+            queueDepth += partition.getAdmissionController().getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Gets the capacity leases of the cluster.
+     *
+     * @return the leases
+     * @throws IllegalStateException if the capacity is not shared with a cluster
+     */
+    public List<Lease> getLeases() {
+        if (clusterCapacity == null) {
+            throw new IllegalStateException("The cluster capacity mode is not enabled");
+        }
+        return clusterCapacity.getLeases();
+    }
+
+    /**
+     * Gets the stream of the process lifecycle events, which subscribers can follow instead of listing the processes.
+     *
+     * @return the process events
+     */
+    public ProcessEventRing getEvents() {
+        return processEvents;
+    }
+
+    /**
+     * Gets the admission, eviction and kill metrics.
+     *
+     * @return the task manager metrics
+     */
+    public TaskManagerMetrics getMetrics() {
+        return taskManagerMetrics;
+    }
+
+    /**
+     * Gets the resources used by the command of a process, sampled from {@code /proc} on Linux.
+     *
+     * @param processId the process id
+     * @return the resource usage, empty if the process has no running command
+     */
+    public Optional<ProcessUsage> getUsage(Long processId) {
+        return processSupervisor.usage(processId);
+    }
+
+    /**
+     * Gets the number of processes whose command is running.
+     *
+     * @return the command count
+     */
+    public int getCommandCount() {
+        return processSupervisor.size();
+    }
+
+    /**
+     * Stop expiring processes, stop the running commands, give the leases back to the cluster and close the process
+     * stores, after writing their pending changes.
+     */
+    @Override
+    public void close() {
+        processExpiry.close();
+        processSupervisor.close();
+        processEvents.close();
+        if (clusterCapacity != null) {
+            clusterCapacity.close();
+        }
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdown();
+        }
+        for (TaskManagerPartition partition : partitions) {
+            partition.close();
+        }
+    }
+
+    private Process addProcess(TaskManagerPartition partition,
+                               Priority priority,
+                               long weight,
+                               AddMode addMode,
+                               Duration ttl,
+                               List<String> command
+    ) throws InstantiationException {
+        priorityRange.check(priority);
+        if (weight < 1) {
+            throw new IllegalArgumentException("The weight of a process must be at least 1");
+        }
+        AddMode mode = addMode == null ? partition.getAddMode() : addMode;
+        long startNanos = System.nanoTime();
+        List<Process> evictedProcesses;
+        try {
+            evictedProcesses = partition.getAdmissionController().reserve(priority, weight, mode);
+        } catch (InstantiationException e) {
+            taskManagerMetrics.recordRejection(mode, startNanos);
+            throw e;
+        }
+        this.stopKilled(evictedProcesses);
+
+        Process process;
+        try {
+            process = partition.getProcessTable().add(priority, weight);
+        } catch (RuntimeException e) {
+            partition.getAdmissionController().release(weight);
+            throw e;
+        }
+        if (command != null) {
+            try {
+                processSupervisor.launch(process.getProcessId(), command);
+            } catch (IOException e) {
+                // The victims are not restored: their commands are already stopped.
+                partition.getProcessTable().remove(process.getProcessId());
+                partition.getAdmissionController().release(weight);
+                taskManagerMetrics.recordRejection(mode, evictedProcesses.size(), startNanos);
+                processEvents.publishAll(evictionType(mode), evictedProcesses);
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+        if (ttl != null) {
+            processExpiry.schedule(process.getProcessId(), process.getStartTime(), ttl);
+        }
+        taskManagerMetrics.recordAdmission(mode, evictedProcesses.size(), startNanos);
+        processEvents.publishAll(evictionType(mode), evictedProcesses);
+        processEvents.publish(ProcessEvent.Type.Added, process);
+        return process;
+    }
+
+    private List<AddResult> addProcesses(TaskManagerPartition partition, List<Priority> priorities, AddMode addMode) {
+        priorities.forEach(priorityRange::check);
+        AddMode mode = addMode == null ? partition.getAddMode() : addMode;
+        if (mode == AddMode.Queue) {
+            // Waiting for a slot must not hold the process table locks which the kills freeing the slot need.
+            List<AddResult> results = new ArrayList<>(priorities.size());
+            for (Priority priority : priorities) {
+                try {
+                    results.add(AddResult.admitted(
+                            this.addProcess(partition, priority, Process.DEFAULT_WEIGHT, mode, null, null), null));
+                } catch (InstantiationException e) {
+                    results.add(AddResult.rejected(e.getMessage()));
+                }
+            }
+            return results;
+        }
+        long startNanos = System.nanoTime();
+        List<AddResult> results = partition.getAdmissionController().admitAll(priorities, mode);
+
+        long admitted = 0;
+        List<Long> evictedProcessIds = new ArrayList<>();
+        for (AddResult result : results) {
+            if (result.getStatus() == AddResult.Status.Admitted) {
+                admitted++;
+                if (result.getEvictedProcess().isPresent()) {
+                    Process evictedProcess = result.getEvictedProcess().get();
+                    processExpiry.cancel(evictedProcess.getProcessId());
+                    processEvents.publish(evictionType(mode), evictedProcess);
+                    evictedProcessIds.add(evictedProcess.getProcessId());
+                }
+                processEvents.publish(ProcessEvent.Type.Added, result.getProcess().orElseThrow());
+            }
+        }
+        processSupervisor.terminateAll(evictedProcessIds);
+        long evicted = evictedProcessIds.size();
+        taskManagerMetrics.recordBatchAdmission(mode, admitted, results.size() - admitted, evicted, startNanos);
+        return results;
+    }
+
+    /**
+     * Kill the processes matching the filter in every partition, in parallel.
+     *
+     * @return the number of killed processes
+     */
+    private int killInAllPartitions(ProcessFilter filter, ProcessEvent.Type eventType) {
+        return this.fanOut(partition -> {
+            List<Process> killedProcesses = partition.getProcessTable().removeWhere(filter);
+            int killed = this.stopKilled(killedProcesses);
+            partition.getAdmissionController().release(weightOf(killedProcesses));
+            processEvents.publishAll(eventType, killedProcesses);
+            return killed;
+        }).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Kill the processes whose time-to-live has elapsed during the same tick, in one batch per partition.
+     */
+    private void expire(List<Long> processIds) {
+        this.removeAllById(processIds, ProcessEvent.Type.Expired, TaskManagerMetrics.KillPath.Expired);
+    }
+
+    /**
+     * Remove the processes whose command exited on its own, in one batch per partition.
+     */
+    private void exited(List<Long> processIds) {
+        this.removeAllById(processIds, ProcessEvent.Type.Exited, TaskManagerMetrics.KillPath.Exited);
+    }
+
+    /**
+     * Remove the processes with the given IDs, in one batch per partition.
+     *
+     * @return the number of removed processes
+     */
+    private int removeAllById(Collection<Long> processIds,
+                              ProcessEvent.Type eventType,
+                              TaskManagerMetrics.KillPath killPath
+    ) {
+        List<List<Long>> processIdsByPartition = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            processIdsByPartition.add(new ArrayList<>());
+        }
+        for (Long processId : processIds) {
+            processIdsByPartition.get(ProcessIdAllocator.partitionOf(processId, partitions.length)).add(processId);
+        }
+
+        int removed = 0;
+        for (TaskManagerPartition partition : partitions) {
+            List<Long> partitionProcessIds = processIdsByPartition.get(partition.getPartition());
+            if (!partitionProcessIds.isEmpty()) {
+                List<Process> removedProcesses = partition.getProcessTable().removeAllById(partitionProcessIds);
+                this.stopKilled(removedProcesses);
+                partition.getAdmissionController().release(weightOf(removedProcesses));
+                taskManagerMetrics.recordKill(killPath, removedProcesses.size());
+                processEvents.publishAll(eventType, removedProcesses);
+                removed += removedProcesses.size();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Cancel the expiry and stop the command of the killed processes, when there are any to cancel or stop.
+     *
+     * @return the number of killed processes
+     */
+    private int stopKilled(List<Process> killedProcesses) {
+        if (processExpiry.size() > 0 || processSupervisor.size() > 0) {
+            List<Long> processIds = killedProcesses.stream().map(Process::getProcessId).collect(Collectors.toList());
+            processExpiry.cancelAll(processIds);
+            processSupervisor.terminateAll(processIds);
+        }
+        return killedProcesses.size();
+    }
+
+    /**
+     * Run an operation on every partition, in parallel when there are several partitions.
+     *
+     * @return the results, in partition order
+     */
+    private <T> List<T> fanOut(Function<TaskManagerPartition, T> operation) {
+        if (partitions.length == 1) {
+            return Collections.singletonList(operation.apply(partitions[0]));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(partitions.length);
+        for (TaskManagerPartition partition : partitions) {
+            futures.add(CompletableFuture.supplyAsync(() -> operation.apply(partition), fanOutExecutor));
+        }
+
+        List<T> results = new ArrayList<>(partitions.length);
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Callers without a partition key are spread over the partitions by thread, so that concurrent callers do not
+     * contend on the same partition.  When the partition of the thread has no room for the weight, the next partition
+     * with room takes the processes, so that an unkeyed add is only rejected, evicts or waits when all the partitions
+     * are full.
+     */
+    private TaskManagerPartition threadPartition(long weight) {
+        int home = Math.floorMod(Thread.currentThread().getId(), partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            TaskManagerPartition partition = partitions[(home + i) % partitions.length];
+            AdmissionController admissionController = partition.getAdmissionController();
+            if (admissionController.getCapacity() - admissionController.getUsedSlots() >= weight) {
+                return partition;
+            }
+        }
+        return partitions[home];
+    }
+
+    private static long weightOf(Collection<Process> processes) {
+        long weight = 0;
+        for (Process process : processes) {
+            weight += process.getWeight();
+        }
+        return weight;
+    }
+
+    private static ProcessEvent.Type evictionType(AddMode addMode) {
+        return addMode == AddMode.Fifo ? ProcessEvent.Type.EvictedByFifo : ProcessEvent.Type.EvictedByPrio;
+    }
+
+    /**
+     * The order of the merged processes of the partitions.
+     * The process IDs are not in start order across partitions, so the start time order compares the start times.
+     */
+    private static Comparator<Process> order(SortMode sortMode) {
+        switch (sortMode) {
+            case StartTime:
+                return Comparator.comparing(Process::getStartTime).thenComparing(Process::getProcessId);
+            case Pid:
+                return Comparator.comparing(Process::getProcessId);
+            case Prio:
+                return Comparator.comparing(Process::getPriority).thenComparing(Process::getProcessId);
+            default:
+                throw new IllegalArgumentException("Unrecognized sort mode");
+        }
+    }
+
+    private static void checkPageable(SortMode sortMode, ProcessCursor after) {
+        if (sortMode == SortMode.StartTime && after != null) {
+            throw new IllegalArgumentException("Processes can only be paged by pid or prio across partitions");
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.joshings.taskmanager.service.admission;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.store.ProcessTable;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The admission controller keeps the weight of the running processes within the capacity.
+ * <p>
+ * Every running process holds one slot per unit of its weight, so the capacity is a weighted budget, and the maximum
+ * number of processes when every process has the default weight of 1.  Free slots are reserved with a
+ * compare-and-set, so concurrent callers never overshoot the capacity.  When the capacity is reached, a Fifo or Prio
+ * caller locks the process table, plans the eviction of the smallest set of processes which frees the missing slots,
+ * see {@link ProcessTable#planEviction(Priority, long)}, and takes over their slots.
+ * <p>
+ * A batch is planned in one pass while the process table is locked: the running processes are walked in eviction order
+ * once, and the changes of the whole batch are applied to the table and its store together.
+ * <p>
+ * The capacity may be leased from a cluster, see {@link com.joshings.taskmanager.service.cluster.ClusterCapacity}: it
+ * then grows and shrinks with the lease, and no free slot is handed out once the lease has expired.  Evictions do not
+ * need a free slot and are always allowed.
+ * <p>
+ * In the Queue add mode, a caller which finds no free slot waits in the {@link AdmissionQueue} instead, and is handed
+ * a slot as soon as one is freed.
+ */
+public class AdmissionController {
+
+    private final ProcessTable processTable;
+    private final AtomicLong capacity;
+    private final AtomicLong usedSlots;
+    private final AdmissionQueue admissionQueue;
+    private final long queueTimeoutNanos;
+
+    /**
+     * Whether the capacity is leased, and until when the lease is valid, as a {@link System#nanoTime()}.
+     */
+    private volatile boolean leased;
+    private volatile long leaseDeadlineNanos;
+
+    /**
+     * Instantiates a new Admission controller.
+     *
+     * @param processTable the process table
+     * @param maxProcesses the capacity, which is the maximum allowed weight of the running processes
+     * @param queueTimeout the maximum time a process added in the Queue add mode waits for a free slot
+     */
+    public AdmissionController(ProcessTable processTable, long maxProcesses, Duration queueTimeout) {
+        this.processTable = processTable;
+        this.capacity = new AtomicLong(maxProcesses);
+        this.usedSlots = new AtomicLong(processTable.weight());
+        this.admissionQueue = new AdmissionQueue(this::tryReserveAll);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+    }
+
+    /**
+     * Reserve the slots of a new process according to the provided add mode, evicting running processes if needed.
+     * The slots must be either filled with a process or given back with {@link #release(long)}.
+     *
+     * @param priority the priority of the new process
+     * @param weight   the weight of the new process, which is the number of slots it needs
+     * @param addMode  the add mode
+     * @return the evicted processes, in eviction order
+     * @throws InstantiationException if the slots cannot be reserved
+     */
+    public List<Process> reserve(Priority priority, long weight, TaskManagerService.AddMode addMode)
+            throws InstantiationException {
+
+        if (addMode == TaskManagerService.AddMode.Queue) {
+            admissionQueue.await(priority, weight, queueTimeoutNanos);
+            return Collections.emptyList();
+        }
+        if (this.tryReserveAll(weight)) {
+            return Collections.emptyList();
+        }
+
+        Priority below;
+        switch (addMode) {
+            case Default:
+                throw new InstantiationException(capacityReachedMessage());
+            case Fifo:
+                below = null;
+                break;
+            case Prio:
+                below = priority;
+                break;
+            case Queue:
+            default:
+                throw new IllegalArgumentException("Unrecognized add mode");
+        }
+        List<Process> victims = processTable.lockAll(() -> this.evict(below, weight));
+        if (victims == null) {
+            throw new InstantiationException(addMode == TaskManagerService.AddMode.Fifo ?
+                    capacityReachedMessage(addMode, weight) :
+                    noLowerPriorityMessage(priority, weight));
+        }
+        return victims;
+    }
+
+    /**
+     * Add a batch of processes according to the provided add mode.
+     * The outcome is the same as adding the processes one after the other: a process of the batch may evict a process
+     * admitted earlier in the same batch, in which case that process is never written to the process store.
+     * Processes cannot be queued in a batch, since the batch holds the process table locks which kills need.
+     *
+     * @param priorities the priorities of the new processes
+     * @param addMode    the add mode
+     * @return one result per new process, in the same order
+     */
+    public List<AddResult> admitAll(List<Priority> priorities, TaskManagerService.AddMode addMode) {
+        return processTable.lockAll(() -> {
+            long freeSlots = this.tryReserve(priorities.size());
+            Timestamp startTime = new Timestamp(System.currentTimeMillis());
+            EvictionCandidates candidates = new EvictionCandidates();
+            List<AddResult> results = new ArrayList<>(priorities.size());
+            List<Long> evictedProcessIds = new ArrayList<>();
+            Set<Long> evictedBatchProcessIds = new HashSet<>();
+            List<Process> startedProcesses = new ArrayList<>();
+
+            for (Priority priority : priorities) {
+                Process victim = null;
+                if (freeSlots > 0) {
+                    freeSlots--;
+                } else {
+                    switch (addMode) {
+                        case Default:
+                            results.add(AddResult.rejected(capacityReachedMessage()));
+                            continue;
+                        case Fifo:
+                            victim = candidates.pollOldest();
+                            break;
+                        case Prio:
+                            victim = candidates.pollOldestWithPriorityBelow(priority);
+                            if (victim == null) {
+                                results.add(AddResult.rejected(noLowerPriorityMessage(priority)));
+                                continue;
+                            }
+                            break;
+                        case Queue:
+                            throw new IllegalArgumentException("Processes cannot be queued in a batch");
+                        default:
+                            throw new IllegalArgumentException("Unrecognized add mode");
+                    }
+                    if (victim == null) {
+                        results.add(AddResult.rejected(capacityReachedMessage()));
+                        continue;
+                    }
+                    (candidates.isStarted(victim) ? evictedBatchProcessIds : evictedProcessIds)
+                            .add(victim.getProcessId());
+                    // The new process takes over one slot of the victim, the others are free for the rest of the batch.
+                    freeSlots += victim.getWeight() - Process.DEFAULT_WEIGHT;
+                }
+
+                Process process = processTable.newProcess(priority, startTime);
+                candidates.addStarted(process);
+                startedProcesses.add(process);
+                results.add(AddResult.admitted(process, victim));
+            }
+
+            startedProcesses.removeIf(process -> evictedBatchProcessIds.contains(process.getProcessId()));
+            processTable.applyBatch(evictedProcessIds, startedProcesses);
+            if (freeSlots > 0) {
+                this.release(freeSlots);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Replace the running processes with restored ones, which take over their slots.
+     * Like the processes loaded at startup, the restored processes are not checked against the capacity.
+     *
+     * @param restoredProcesses the restored processes
+     * @return the removed processes
+     */
+    public List<Process> restoreAll(Collection<Process> restoredProcesses) {
+        List<Process> removed = processTable.lockAll(() -> processTable.replaceAll(restoredProcesses));
+        usedSlots.addAndGet(weightOf(restoredProcesses) - weightOf(removed));
+        admissionQueue.signal();
+        return removed;
+    }
+
+    /**
+     * Give back the slots of killed processes or of unused reservations.
+     *
+     * @param slots the number of slots
+     */
+    public void release(long slots) {
+        usedSlots.addAndGet(-slots);
+        admissionQueue.signal();
+    }
+
+    /**
+     * Gets the number of used slots.
+     *
+     * @return the used slots
+     */
+    public long getUsedSlots() {
+        return usedSlots.get();
+    }
+
+    /**
+     * Gets the number of processes waiting for a free slot in the Queue add mode.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return admissionQueue.getDepth();
+    }
+
+    /**
+     * Gets the capacity, which is the maximum allowed number of processes unless it is leased.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return capacity.get();
+    }
+
+    /**
+     * Add leased slots to the capacity.
+     *
+     * @param slots the number of slots
+     */
+    public void grow(long slots) {
+        capacity.addAndGet(slots);
+        admissionQueue.signal();
+    }
+
+    /**
+     * Take slots out of the capacity, whether they are free or not, e.g. when a lease was reclaimed by the cluster.
+     * No free slot is handed out until the running processes fit in the lowered capacity.
+     *
+     * @param slots the number of slots to take
+     */
+    public void shrink(long slots) {
+        capacity.addAndGet(-slots);
+    }
+
+    /**
+     * Take free slots out of the capacity, so that they can be given back to the cluster.
+     * The slots are reserved before the capacity is lowered, so that they cannot be handed out meanwhile.
+     *
+     * @param slots the number of slots to take
+     * @return the number of slots taken, which is lower if fewer slots are free
+     */
+    public long withdraw(long slots) {
+        long withdrawn = this.tryReserve(slots);
+        capacity.addAndGet(-withdrawn);
+        usedSlots.addAndGet(-withdrawn);
+        return withdrawn;
+    }
+
+    /**
+     * Extend the lease of the capacity.  Once the lease has expired, no free slot is handed out until it is extended.
+     *
+     * @param deadlineNanos the end of the lease, as a {@link System#nanoTime()}
+     */
+    public void extendLease(long deadlineNanos) {
+        this.leaseDeadlineNanos = deadlineNanos;
+        this.leased = true;
+        admissionQueue.signal();
+    }
+
+    private boolean isLeaseExpired() {
+        return leased && System.nanoTime() - leaseDeadlineNanos >= 0;
+    }
+
+    private long tryReserve(long slots) {
+        if (this.isLeaseExpired()) {
+            return 0;
+        }
+        long used;
+        long reserved;
+        do {
+            used = usedSlots.get();
+            reserved = Math.min(slots, capacity.get() - used);
+            if (reserved <= 0) {
+                return 0;
+            }
+        } while (!usedSlots.compareAndSet(used, used + reserved));
+        return reserved;
+    }
+
+    /**
+     * Reserve all the given slots, or none.
+     */
+    private boolean tryReserveAll(long slots) {
+        if (this.isLeaseExpired()) {
+            return false;
+        }
+        long used;
+        do {
+            used = usedSlots.get();
+            if (capacity.get() - used < slots) {
+                return false;
+            }
+        } while (!usedSlots.compareAndSet(used, used + slots));
+        return true;
+    }
+
+    /**
+     * Reserve the free slots, then evict the smallest set of processes which frees the missing slots.  The victims
+     * hand the missing slots over to the new process, and free the others.
+     * The caller must hold all the locks of the process table.
+     *
+     * @return the evicted processes, or null if they cannot free enough slots, in which case nothing is reserved
+     */
+    private List<Process> evict(Priority below, long weight) {
+        long reserved = this.tryReserve(weight);
+        if (reserved == weight) {
+            return Collections.emptyList();
+        }
+        List<Process> victims = processTable.planEviction(below, weight - reserved);
+        if (victims.isEmpty()) {
+            if (reserved > 0) {
+                this.release(reserved);
+            }
+            return null;
+        }
+
+        List<Long> victimIds = new ArrayList<>(victims.size());
+        for (Process victim : victims) {
+            victimIds.add(victim.getProcessId());
+        }
+        processTable.applyBatch(victimIds, Collections.emptyList());
+        long excess = weightOf(victims) - (weight - reserved);
+        if (excess > 0) {
+            this.release(excess);
+        }
+        return victims;
+    }
+
+    private static long weightOf(Collection<Process> processes) {
+        long weight = 0;
+        for (Process process : processes) {
+            weight += process.getWeight();
+        }
+        return weight;
+    }
+
+    private static String capacityReachedMessage() {
+        return "Add mode: " + TaskManagerService.AddMode.Default + ". " +
+                "The maximum allowed number of processes is running.";
+    }
+
+    private static String capacityReachedMessage(TaskManagerService.AddMode addMode, long weight) {
+        if (weight == Process.DEFAULT_WEIGHT) {
+            return capacityReachedMessage();
+        }
+        return "Add mode: " + addMode + ". " +
+                "The capacity is used and the running processes cannot free a weight of " + weight + ".";
+    }
+
+    private static String noLowerPriorityMessage(Priority priority) {
+        return "Add mode: " + TaskManagerService.AddMode.Prio + ". " +
+                "The maximum allowed number of processes is running and no processes with " +
+                "priority lower than " + priority.getPriorityName() + " were found.";
+    }
+
+    private static String noLowerPriorityMessage(Priority priority, long weight) {
+        if (weight == Process.DEFAULT_WEIGHT) {
+            return noLowerPriorityMessage(priority);
+        }
+        return "Add mode: " + TaskManagerService.AddMode.Prio + ". " +
+                "The capacity is used and the processes with priority lower than " + priority.getPriorityName() +
+                " cannot free a weight of " + weight + ".";
+    }
+
+    /**
+     * The eviction candidates of a batch: the running processes, which are older, followed by the processes started
+     * earlier in the batch.  Every candidate is handed out at most once.
+     * Like the process table, the candidates are a bucket queue with the occupied priorities sorted by priority and the
+     * oldest running candidate of every priority sorted by process id, so a candidate is found in logarithmic time
+     * whatever the number of priorities.
+     */
+    private final class EvictionCandidates {
+
+        private final NavigableMap<Priority, Candidates> byPriority = new TreeMap<>();
+        private final NavigableMap<Long, Candidates> byRunningHead = new TreeMap<>();
+        private final Deque<Process> startedInOrder = new ArrayDeque<>();
+        private final Set<Long> startedProcessIds = new HashSet<>();
+
+        private EvictionCandidates() {
+            for (Priority priority : processTable.occupiedPriorities()) {
+                Candidates candidates = new Candidates(priority, processTable.startOrderIterator(priority));
+                byPriority.put(priority, candidates);
+                this.advance(candidates);
+            }
+        }
+
+        private void addStarted(Process process) {
+            byPriority.computeIfAbsent(
+                    process.getPriority(), priority -> new Candidates(priority, Collections.emptyIterator())
+            ).started.addLast(process);
+            startedInOrder.addLast(process);
+            startedProcessIds.add(process.getProcessId());
+        }
+
+        private boolean isStarted(Process process) {
+            return startedProcessIds.contains(process.getProcessId());
+        }
+
+        private Process pollOldest() {
+            Map.Entry<Long, Candidates> oldest = byRunningHead.firstEntry();
+            return oldest != null ? this.advance(oldest.getValue()) : startedInOrder.pollFirst();
+        }
+
+        private Process pollOldestWithPriorityBelow(Priority priority) {
+            Map.Entry<Priority, Candidates> lowest = byPriority.firstEntry();
+            if (lowest == null || lowest.getKey().compareTo(priority) >= 0) {
+                return null;
+            }
+            Candidates candidates = lowest.getValue();
+            return candidates.runningHead != null ? this.advance(candidates) : this.pollStarted(candidates);
+        }
+
+        private Process pollStarted(Candidates candidates) {
+            Process process = candidates.started.pollFirst();
+            this.dropIfEmpty(candidates);
+            return process;
+        }
+
+        private Process advance(Candidates candidates) {
+            Process head = candidates.runningHead;
+            if (head != null) {
+                byRunningHead.remove(head.getProcessId());
+            }
+            candidates.runningHead = candidates.running.hasNext() ? candidates.running.next() : null;
+            if (candidates.runningHead != null) {
+                byRunningHead.put(candidates.runningHead.getProcessId(), candidates);
+            }
+            this.dropIfEmpty(candidates);
+            return head;
+        }
+
+        private void dropIfEmpty(Candidates candidates) {
+            if (candidates.runningHead == null && candidates.started.isEmpty()) {
+                byPriority.remove(candidates.priority);
+            }
+        }
+    }
+
+    /**
+     * The eviction candidates with the same priority.
+     */
+    private static final class Candidates {
+        private final Priority priority;
+        private final Iterator<Process> running;
+        private final Deque<Process> started = new ArrayDeque<>();
+        private Process runningHead;
+
+        private Candidates(Priority priority, Iterator<Process> running) {
+            this.priority = priority;
+            this.running = running;
+        }
+    }
+}
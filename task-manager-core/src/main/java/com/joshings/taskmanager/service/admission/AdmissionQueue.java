@@ -0,0 +1,145 @@
+package com.joshings.taskmanager.service.admission;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+
+/**
+ * The processes added in the {@link TaskManagerService.AddMode#Queue} add mode which wait for a free slot.
+ * <p>
+ * The waiters are ordered by priority, highest first, then by arrival.  Freed slots are handed over to the waiters in
+ * that order by whoever frees them, and every waiter sleeps on its own condition until it is handed a slot, so only
+ * the admitted waiter is woken up.  A new waiter never overtakes the waiters already queued.  A waiter is handed all
+ * the slots of its weight at once, and the waiters behind it wait until it is, or until it times out or is interrupted.
+ */
+class AdmissionQueue {
+
+    private static final class Waiter {
+        private final long priorityValue;
+        private final long weight;
+        private final long sequence;
+        private final Condition admitted;
+        private boolean granted;
+
+        private Waiter(long priorityValue, long weight, long sequence, Condition admitted) {
+            this.priorityValue = priorityValue;
+            this.weight = weight;
+            this.sequence = sequence;
+            this.admitted = admitted;
+        }
+    }
+
+    private static final Comparator<Waiter> ADMISSION_ORDER = Comparator
+            .comparingLong((Waiter waiter) -> -waiter.priorityValue)
+            .thenComparingLong(waiter -> waiter.sequence);
+
+    private final LongPredicate tryReserveSlots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Waiter> waiters = new TreeSet<>(ADMISSION_ORDER);
+    private long sequence;
+
+    /**
+     * The number of waiters, read without the lock so that freeing slots does not lock the queue when it is empty.
+     */
+    private volatile int depth;
+
+    /**
+     * Instantiates a new Admission queue.
+     *
+     * @param tryReserveSlots reserves the given number of free slots, if there are enough
+     */
+    AdmissionQueue(LongPredicate tryReserveSlots) {
+        this.tryReserveSlots = tryReserveSlots;
+    }
+
+    /**
+     * Gets the number of waiting processes.
+     *
+     * @return the queue depth
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Wait for a free slot, behind the waiters with a higher priority and the earlier waiters with the same priority.
+     *
+     * @param priority     the priority of the new process
+     * @param weight       the weight of the new process, which is the number of slots it waits for
+     * @param timeoutNanos the maximum time to wait
+     * @throws InstantiationException if no slot was handed over before the timeout, or the wait was interrupted
+     */
+    void await(Priority priority, long weight, long timeoutNanos) throws InstantiationException {
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(priority.getPriorityValue(), weight, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            // Published before trying to reserve, so that a slot freed meanwhile is handed over by its releaser.
+            depth = waiters.size();
+            this.grant();
+
+            long remainingNanos = timeoutNanos;
+            while (!waiter.granted) {
+                if (remainingNanos <= 0) {
+                    this.leave(waiter);
+                    throw new InstantiationException(timeoutMessage(timeoutNanos));
+                }
+                try {
+                    remainingNanos = waiter.admitted.awaitNanos(remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (waiter.granted) {
+                        return;
+                    }
+                    this.leave(waiter);
+                    throw new InstantiationException("Add mode: " + TaskManagerService.AddMode.Queue + ". " +
+                            "Interrupted while waiting for a free slot.");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand the free slots over to the waiters.  Must be called whenever slots are freed or the capacity grows.
+     */
+    void signal() {
+        if (depth == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            this.grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grant() {
+        while (!waiters.isEmpty() && tryReserveSlots.test(waiters.first().weight)) {
+            Waiter waiter = waiters.pollFirst();
+            waiter.granted = true;
+            waiter.admitted.signal();
+        }
+        depth = waiters.size();
+    }
+
+    /**
+     * Remove a waiter which gives up, then hand the free slots over: the waiters it held back may fit in them.
+     */
+    private void leave(Waiter waiter) {
+        waiters.remove(waiter);
+        this.grant();
+    }
+
+    private static String timeoutMessage(long timeoutNanos) {
+        return "Add mode: " + TaskManagerService.AddMode.Queue + ". " +
+                "No slot was freed within " + timeoutNanos / 1_000_000 + "ms.";
+    }
+}
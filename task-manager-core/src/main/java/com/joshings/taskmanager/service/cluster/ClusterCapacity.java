@@ -0,0 +1,129 @@
+package com.joshings.taskmanager.service.cluster;
+
+import com.joshings.taskmanager.service.admission.AdmissionController;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lease the capacity of the partitions of a task manager instance from the cluster.
+ * <p>
+ * Every partition admits processes from its own lease without reaching the coordinator.  The leases are renewed in the
+ * background and resized on the way: a partition asks for one more block of slots than it uses, and gives back its
+ * free slots once it holds more than two blocks it does not use, so idle instances leave the slots to the busy ones.
+ * A lease is only considered valid locally until the coordinator would expire it, so an instance which cannot renew
+ * its leases stops admitting new processes before its slots are reclaimed.  When it renews them again, it only gets the
+ * slots still free, and admits no new process until its running processes fit in them.
+ */
+@Slf4j
+public class ClusterCapacity implements AutoCloseable {
+
+    private final LeaseCoordinator leaseCoordinator;
+    private final String instanceId;
+    private final List<AdmissionController> admissionControllers;
+    private final long leaseBlock;
+    private final ScheduledExecutorService renewer;
+
+    /**
+     * Instantiates a new Cluster capacity and leases the initial capacity of every partition.
+     *
+     * @param leaseCoordinator     the lease coordinator
+     * @param instanceId           the id of this instance, unique in the cluster
+     * @param admissionControllers the admission controllers of the partitions, whose capacity is leased
+     * @param leaseBlock           the number of slots leased at once
+     * @param renewInterval        the interval between two lease renewals, shorter than the lease duration
+     */
+    public ClusterCapacity(LeaseCoordinator leaseCoordinator,
+                           String instanceId,
+                           List<AdmissionController> admissionControllers,
+                           long leaseBlock,
+                           Duration renewInterval
+    ) {
+        if (renewInterval.compareTo(leaseCoordinator.getLeaseDuration()) >= 0) {
+            throw new IllegalArgumentException("The lease renew interval must be shorter than the lease duration");
+        }
+        this.leaseCoordinator = leaseCoordinator;
+        this.instanceId = instanceId;
+        this.admissionControllers = admissionControllers;
+        this.leaseBlock = leaseBlock;
+
+        this.renewAll();
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(
+                this::renewAll,
+                renewInterval.toMillis(),
+                renewInterval.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Gets the leases of the cluster.
+     *
+     * @return the leases
+     */
+    public List<Lease> getLeases() {
+        return leaseCoordinator.getLeases();
+    }
+
+    /**
+     * Stop renewing the leases and give them back to the cluster.
+     */
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        for (int partition = 0; partition < admissionControllers.size(); partition++) {
+            try {
+                leaseCoordinator.release(this.holder(partition));
+            } catch (RuntimeException e) {
+                log.warn("Could not release the lease of {}, it will expire", this.holder(partition), e);
+            }
+        }
+    }
+
+    private void renewAll() {
+        for (int partition = 0; partition < admissionControllers.size(); partition++) {
+            try {
+                this.renew(partition);
+            } catch (RuntimeException e) {
+                log.error("Could not renew the lease of {}", this.holder(partition), e);
+            }
+        }
+    }
+
+    private void renew(int partition) {
+        AdmissionController admissionController = admissionControllers.get(partition);
+        long used = admissionController.getUsedSlots();
+        long held = admissionController.getCapacity();
+        long wanted = held < used + leaseBlock || held > used + 2 * leaseBlock ? used + leaseBlock : held;
+
+        // Free slots are taken out of the local capacity before the lease shrinks, never after.
+        if (held > wanted) {
+            held -= admissionController.withdraw(held - wanted);
+        }
+        long renewedNanos = System.nanoTime();
+        long granted = leaseCoordinator.renew(this.holder(partition), held, wanted, used);
+        // A reclaimed lease comes back smaller than the capacity, which must shrink before the lease is valid again.
+        if (granted < held) {
+            log.warn("The lease of {} was reclaimed, its capacity shrinks from {} to {} slots",
+                    this.holder(partition), held, granted);
+            admissionController.shrink(held - granted);
+        }
+        admissionController.extendLease(renewedNanos + leaseCoordinator.getLeaseDuration().toNanos());
+        if (granted > held) {
+            admissionController.grow(granted - held);
+        }
+    }
+
+    private String holder(int partition) {
+        return instanceId + "/" + partition;
+    }
+}
@@ -0,0 +1,52 @@
+package com.joshings.taskmanager.service.cluster;
+
+import lombok.Getter;
+
+import java.sql.Timestamp;
+
+/**
+ * The admission slots leased by a task manager partition from the cluster.
+ */
+@Getter
+public class Lease {
+
+    /**
+     * The holder, which is the instance id followed by the partition.
+     */
+    private final String holder;
+
+    /**
+     * The number of leased slots.
+     */
+    private final long slots;
+
+    /**
+     * The number of slots in use when the lease was last renewed.
+     */
+    private final long used;
+
+    /**
+     * The end of the lease, unless it is renewed.
+     */
+    private final Timestamp expiresAt;
+
+    /**
+     * Instantiates a new Lease.
+     *
+     * @param holder    the holder
+     * @param slots     the slots
+     * @param used      the used slots
+     * @param expiresAt the expiry time
+     */
+    public Lease(String holder, long slots, long used, Timestamp expiresAt) {
+        this.holder = holder;
+        this.slots = slots;
+        this.used = used;
+        this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lease %s - slots %5d - used %5d - expires at %s", holder, slots, used, expiresAt);
+    }
+}
@@ -0,0 +1,49 @@
+package com.joshings.taskmanager.service.cluster;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Grants the admission slot leases of the task manager instances of a cluster, out of the shared maximum allowed number
+ * of processes.
+ * <p>
+ * The lease changes of all the instances must be serialized.  The leases which have not been renewed in time are
+ * reclaimed, which gives the slots of dead instances back to the cluster.
+ */
+public interface LeaseCoordinator {
+
+    /**
+     * Gets the time a lease is valid for unless it is renewed.
+     *
+     * @return the lease duration
+     */
+    Duration getLeaseDuration();
+
+    /**
+     * Renew a lease, resizing it to the wanted number of slots if the cluster has enough free slots.
+     * A valid lease never shrinks below the slots already held, which the holder may be using.  A lease which has
+     * expired and been reclaimed may have had its slots granted to other holders, so it is renewed with the free slots
+     * only, and may shrink below the slots held: the holder must then shrink its capacity to the returned slots.
+     *
+     * @param holder      the holder
+     * @param heldSlots   the number of slots the holder currently holds
+     * @param wantedSlots the number of slots the holder wants
+     * @param usedSlots   the number of slots the holder uses, for monitoring
+     * @return the number of slots of the renewed lease
+     */
+    long renew(String holder, long heldSlots, long wantedSlots, long usedSlots);
+
+    /**
+     * Give the slots of a lease back to the cluster.
+     *
+     * @param holder the holder
+     */
+    void release(String holder);
+
+    /**
+     * Gets the leases of the cluster.
+     *
+     * @return the leases
+     */
+    List<Lease> getLeases();
+}
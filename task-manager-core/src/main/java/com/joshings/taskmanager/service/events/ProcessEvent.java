@@ -0,0 +1,118 @@
+package com.joshings.taskmanager.service.events;
+
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.Getter;
+
+/**
+ * A lifecycle event of a process.
+ * The events are preallocated entries of the {@link ProcessEventRing} which are overwritten once consumed, so a
+ * subscriber must copy what it keeps out of an event before returning.
+ */
+public final class ProcessEvent {
+
+    /**
+     * The lifecycle events.
+     */
+    public enum Type {
+        /**
+         * The process was started.
+         */
+        Added,
+        /**
+         * The process was evicted by a process added in the Fifo add mode.
+         */
+        EvictedByFifo,
+        /**
+         * The process was evicted by a process added in the Prio add mode.
+         */
+        EvictedByPrio,
+        /**
+         * The process was killed on its own, or matched the filter of a kill.
+         */
+        Killed,
+        /**
+         * The process was killed with its priority group.
+         */
+        GroupKilled,
+        /**
+         * The process was killed with all the processes.
+         */
+        AllKilled,
+        /**
+         * The process was killed once its time-to-live elapsed.
+         */
+        Expired,
+        /**
+         * The command of the process exited on its own.
+         */
+        Exited
+    }
+
+    /**
+     * The position of the event in the event stream.
+     */
+    @Getter
+    private long sequence;
+
+    @Getter
+    private Type type;
+
+    @Getter
+    private long processId;
+
+    /**
+     * The priority of the process.
+     */
+    @Getter
+    private Priority priority;
+
+    /**
+     * The start time of the process in epoch milliseconds.
+     */
+    @Getter
+    private long startTimeMillis;
+
+    /**
+     * The weight of the process.
+     */
+    @Getter
+    private long weight;
+
+    /**
+     * The time the event was published in epoch milliseconds.
+     */
+    @Getter
+    private long timeMillis;
+
+    /**
+     * Overwrite the event.
+     */
+    void set(long sequence,
+             Type type,
+             long processId,
+             Priority priority,
+             long startTimeMillis,
+             long weight,
+             long timeMillis
+    ) {
+        this.sequence = sequence;
+        this.type = type;
+        this.processId = processId;
+        this.priority = priority;
+        this.startTimeMillis = startTimeMillis;
+        this.weight = weight;
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Overwrite the event with a copy of another event.
+     */
+    void copy(ProcessEvent event) {
+        this.set(event.sequence, event.type, event.processId, event.priority, event.startTimeMillis, event.weight,
+                event.timeMillis);
+    }
+
+    public String toString() {
+        return String.format("Event %d - %s - process %d", sequence, type, processId);
+    }
+}
@@ -0,0 +1,31 @@
+package com.joshings.taskmanager.service.events;
+
+/**
+ * A subscriber of the process lifecycle events.
+ * All the methods of a subscriber are called from the same thread, one at a time.
+ */
+public interface ProcessEventHandler {
+
+    /**
+     * Called once before the first event.
+     */
+    default void onStart() {
+    }
+
+    /**
+     * Handle an event.
+     * The event is only valid during the call.
+     *
+     * @param event the event
+     */
+    void onEvent(ProcessEvent event);
+
+    /**
+     * Called when a subscriber which does not hold back the publishers fell so far behind that the events it had not
+     * consumed yet were overwritten.  The subscriber resumes with the oldest event still available.
+     *
+     * @param lostEvents the number of lost events
+     */
+    default void onOverrun(long lostEvents) {
+    }
+}
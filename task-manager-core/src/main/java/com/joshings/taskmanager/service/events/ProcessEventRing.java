@@ -0,0 +1,331 @@
+package com.joshings.taskmanager.service.events;
+
+import com.joshings.taskmanager.service.model.Process;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The process lifecycle event stream, a ring buffer of preallocated events.
+ * <p>
+ * Publishers claim the next sequence of the stream with one atomic increment, overwrite the event of its slot and mark
+ * the slot as published with that sequence.  Publishing never allocates and does nothing while there is no subscriber.
+ * <p>
+ * Every subscriber runs on its own thread and consumes the events at its own pace, from the sequence it subscribed at.
+ * The backpressure of a subscriber decides what happens once it is a whole ring behind: a {@link Backpressure#Block}
+ * subscriber holds back the publishers until it has consumed the slot they need, a {@link Backpressure#Drop}
+ * subscriber never holds anyone back and loses the overwritten events instead.  Events are copied out of the ring
+ * before they are handed to a subscriber, so a lagging subscriber never sees a half overwritten event.
+ */
+@Slf4j
+public class ProcessEventRing implements AutoCloseable {
+
+    /**
+     * What happens when a subscriber falls a whole ring behind the publishers.
+     */
+    public enum Backpressure {
+        /**
+         * The publishers wait for the subscriber.
+         */
+        Block,
+        /**
+         * The subscriber loses the events it has not consumed yet.
+         */
+        Drop
+    }
+
+    /**
+     * The mark of a slot whose event is being overwritten.
+     */
+    private static final long WRITING = Long.MIN_VALUE;
+
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int size;
+    private final int mask;
+    private final ProcessEvent[] events;
+
+    /**
+     * The sequence of the event published in every slot, or {@link #WRITING}.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence to claim.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The subscribers holding back the publishers.
+     */
+    private volatile Subscription[] gatingSubscriptions = new Subscription[0];
+
+    /**
+     * Instantiates a new Process event ring.
+     *
+     * @param size the number of events the ring holds, a power of 2
+     */
+    public ProcessEventRing(int size) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The event ring size must be a power of 2");
+        }
+        this.size = size;
+        this.mask = size - 1;
+        this.events = new ProcessEvent[size];
+        this.published = new AtomicLongArray(size);
+        for (int slot = 0; slot < size; slot++) {
+            events[slot] = new ProcessEvent();
+            // As if the slot had held the event one ring before the first one.
+            published.set(slot, slot - size);
+        }
+    }
+
+    /**
+     * Publish an event of a process.
+     *
+     * @param type    the event type
+     * @param process the process
+     */
+    public void publish(ProcessEvent.Type type, Process process) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        this.publishEvent(type, process);
+    }
+
+    /**
+     * Publish the same event for several processes.
+     *
+     * @param type      the event type
+     * @param processes the processes
+     */
+    public void publishAll(ProcessEvent.Type type, Collection<Process> processes) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        for (Process process : processes) {
+            this.publishEvent(type, process);
+        }
+    }
+
+    /**
+     * Subscribe to the events published from now on.
+     *
+     * @param name         the name of the subscriber
+     * @param backpressure what happens when the subscriber falls a whole ring behind
+     * @param handler      the handler of the events
+     * @return the subscription, to be closed to unsubscribe
+     */
+    public Subscription subscribe(String name, Backpressure backpressure, ProcessEventHandler handler) {
+        Subscription subscription = new Subscription(name, backpressure, handler, claimed.get());
+        subscriptions.add(subscription);
+        if (backpressure == Backpressure.Block) {
+            this.updateGatingSubscriptions();
+        }
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Gets the subscriptions.
+     *
+     * @return the subscriptions
+     */
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    /**
+     * Gets the sequence of the next event.
+     *
+     * @return the number of events published so far
+     */
+    public long getSequence() {
+        return claimed.get();
+    }
+
+    /**
+     * Close all the subscriptions.
+     */
+    @Override
+    public void close() {
+        subscriptions.forEach(Subscription::close);
+    }
+
+    private void publishEvent(ProcessEvent.Type type, Process process) {
+        long sequence = claimed.getAndIncrement();
+        int slot = (int) sequence & mask;
+        this.awaitSlot(sequence, slot);
+
+        published.set(slot, WRITING);
+        VarHandle.storeStoreFence();
+        events[slot].set(
+                sequence,
+                type,
+                process.getProcessId(),
+                process.getPriority(),
+                process.getStartTime().getTime(),
+                process.getWeight(),
+                System.currentTimeMillis()
+        );
+        published.set(slot, sequence);
+    }
+
+    /**
+     * Wait until the previous event of the slot has been published and consumed by the blocking subscribers.
+     */
+    private void awaitSlot(long sequence, int slot) {
+        long wrapped = sequence - size;
+        long idleNanos = MIN_IDLE_NANOS;
+        while (published.get(slot) != wrapped || wrapped >= this.minGatingSequence()) {
+            LockSupport.parkNanos(idleNanos);
+            idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+        }
+    }
+
+    private long minGatingSequence() {
+        long min = Long.MAX_VALUE;
+        for (Subscription subscription : gatingSubscriptions) {
+            min = Math.min(min, subscription.next);
+        }
+        return min;
+    }
+
+    private void updateGatingSubscriptions() {
+        gatingSubscriptions = subscriptions.stream()
+                .filter(subscription -> subscription.backpressure == Backpressure.Block)
+                .toArray(Subscription[]::new);
+    }
+
+    /**
+     * A subscriber consuming the events on its own thread.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        @Getter
+        private final String name;
+
+        @Getter
+        private final Backpressure backpressure;
+
+        private final ProcessEventHandler handler;
+        private final Thread thread;
+
+        /**
+         * The copy of the event handed to the handler.
+         */
+        private final ProcessEvent event = new ProcessEvent();
+
+        /**
+         * The sequence of the next event to consume.
+         */
+        private volatile long next;
+
+        /**
+         * The number of events lost to overruns.
+         */
+        @Getter
+        private volatile long lostEvents;
+
+        private volatile boolean running = true;
+
+        private Subscription(String name, Backpressure backpressure, ProcessEventHandler handler, long next) {
+            this.name = name;
+            this.backpressure = backpressure;
+            this.handler = handler;
+            this.next = next;
+            this.thread = new Thread(this::run, "process-events-" + name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Gets the number of published events the subscriber has not consumed yet.
+         *
+         * @return the lag
+         */
+        public long getLag() {
+            return Math.max(0, claimed.get() - next);
+        }
+
+        /**
+         * Stop consuming the events.
+         */
+        @Override
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            if (backpressure == Backpressure.Block) {
+                updateGatingSubscriptions();
+            }
+            LockSupport.unpark(thread);
+        }
+
+        private void run() {
+            try {
+                handler.onStart();
+            } catch (RuntimeException e) {
+                log.error("The event subscriber {} failed to start", name, e);
+            }
+
+            long idleNanos = MIN_IDLE_NANOS;
+            while (running) {
+                if (this.consume()) {
+                    idleNanos = MIN_IDLE_NANOS;
+                } else {
+                    LockSupport.parkNanos(idleNanos);
+                    idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+                }
+            }
+        }
+
+        /**
+         * Consume the next event, if published.
+         *
+         * @return false if there is no event to consume yet
+         */
+        private boolean consume() {
+            long sequence = next;
+            int slot = (int) sequence & mask;
+            long slotSequence = published.get(slot);
+            if (slotSequence == sequence) {
+                event.copy(events[slot]);
+                VarHandle.acquireFence();
+                if (published.get(slot) == sequence) {
+                    try {
+                        handler.onEvent(event);
+                    } catch (RuntimeException e) {
+                        log.error("The event subscriber {} failed to handle {}", name, event, e);
+                    }
+                    next = sequence + 1;
+                    return true;
+                }
+            }
+
+            // A blocking subscriber is never overrun, its events are only late.
+            if (backpressure == Backpressure.Drop && (slotSequence > sequence || claimed.get() - sequence > size)) {
+                long resumed = Math.max(sequence + 1, claimed.get() - size);
+                lostEvents += resumed - sequence;
+                next = resumed;
+                try {
+                    handler.onOverrun(resumed - sequence);
+                } catch (RuntimeException e) {
+                    log.error("The event subscriber {} failed to handle an overrun", name, e);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.joshings.taskmanager.service.events;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.model.Process;
+import lombok.Getter;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A live materialized view of the running processes, kept up to date from the process lifecycle events, so that it
+ * can be read as often as needed without listing the processes of the task manager.
+ * <p>
+ * The view starts from a listing of the processes and applies the events on top of it; applying an event twice does
+ * not change the view.  The events of different processes may be published out of order, e.g. the kill of a process
+ * may be published before its start, so the IDs of the processes removed before they were seen are remembered for a
+ * while.  The view is rebuilt from a new listing when it loses events.
+ */
+public class ProcessView implements ProcessEventHandler, AutoCloseable {
+
+    private static final int MAX_TOMBSTONES = 10_000;
+
+    private final TaskManagerService taskManagerService;
+    private final Map<Long, Process> processes = new ConcurrentHashMap<>();
+    private final PriorityRange priorityRange;
+
+    /**
+     * The process count of every priority, indexed by the position of the priority within the range.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The IDs of the processes removed before they were added, oldest first.  Only used by the subscriber thread.
+     */
+    private final Map<Long, Boolean> tombstones = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return this.size() > MAX_TOMBSTONES;
+        }
+    };
+
+    private final ProcessEventRing.Subscription subscription;
+
+    /**
+     * The number of times the view was rebuilt from a listing.
+     */
+    @Getter
+    private volatile long rebuilds;
+
+    /**
+     * Instantiates a new Process view and subscribes it to the events of the task manager.
+     *
+     * @param taskManagerService the task manager service
+     * @param backpressure       what happens when the view falls a whole ring behind
+     */
+    public ProcessView(TaskManagerService taskManagerService, ProcessEventRing.Backpressure backpressure) {
+        this.taskManagerService = taskManagerService;
+        this.priorityRange = taskManagerService.getPriorityRange();
+        this.counts = new AtomicLongArray(priorityRange.size());
+        this.subscription = taskManagerService.getEvents().subscribe("process-view", backpressure, this);
+    }
+
+    /**
+     * Gets the number of running processes.
+     *
+     * @return the process count
+     */
+    public int size() {
+        return processes.size();
+    }
+
+    /**
+     * Gets the number of running processes with the given priority.
+     *
+     * @param priority the priority
+     * @return the process count
+     */
+    public long count(Priority priority) {
+        return priorityRange.contains(priority) ? counts.get(priorityRange.indexOf(priority)) : 0;
+    }
+
+    /**
+     * Get a list of the running processes which is sorted by process ID.
+     *
+     * @return the processes
+     */
+    public List<Process> getProcesses() {
+        List<Process> list = new ArrayList<>(processes.values());
+        list.sort(Comparator.comparing(Process::getProcessId));
+        return list;
+    }
+
+    /**
+     * Gets the subscription of the view to the events.
+     *
+     * @return the subscription
+     */
+    public ProcessEventRing.Subscription getSubscription() {
+        return subscription;
+    }
+
+    @Override
+    public void onStart() {
+        this.rebuild();
+    }
+
+    @Override
+    public void onEvent(ProcessEvent event) {
+        if (event.getType() == ProcessEvent.Type.Added) {
+            if (tombstones.remove(event.getProcessId()) == null) {
+                this.add(new Process(
+                        event.getProcessId(),
+                        event.getPriority(),
+                        new Timestamp(event.getStartTimeMillis()),
+                        event.getWeight()
+                ));
+            }
+        } else {
+            Process removed = processes.remove(event.getProcessId());
+            if (removed == null) {
+                tombstones.put(event.getProcessId(), Boolean.TRUE);
+            } else {
+                counts.decrementAndGet(priorityRange.indexOf(removed.getPriority()));
+            }
+        }
+    }
+
+    @Override
+    public void onOverrun(long lostEvents) {
+        this.rebuild();
+    }
+
+    /**
+     * Stop following the events.
+     */
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+    private void rebuild() {
+        processes.clear();
+        tombstones.clear();
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        taskManagerService.getProcesses(TaskManagerService.SortMode.Pid).forEach(this::add);
+        rebuilds++;
+    }
+
+    private void add(Process process) {
+        if (processes.putIfAbsent(process.getProcessId(), process) == null) {
+            counts.incrementAndGet(priorityRange.indexOf(process.getPriority()));
+        }
+    }
+}
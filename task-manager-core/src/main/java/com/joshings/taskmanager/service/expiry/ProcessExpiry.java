@@ -0,0 +1,117 @@
+package com.joshings.taskmanager.service.expiry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Expires processes once their time-to-live has elapsed.
+ * The timers live in a {@link TimingWheel} which a background thread advances once per tick, handing all the
+ * processes expired by a tick to the expiry handler at once.  The thread is only started with the first timer.
+ */
+@Slf4j
+public class ProcessExpiry implements AutoCloseable {
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final Consumer<List<Long>> expiryHandler;
+    private final TimingWheel timingWheel;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Instantiates a new Process expiry.
+     *
+     * @param tickDuration  the duration of a tick, which is the precision of the expiry
+     * @param expiryHandler the handler of the ids of the processes which expired during a tick
+     */
+    public ProcessExpiry(Duration tickDuration, Consumer<List<Long>> expiryHandler) {
+        if (tickDuration.toMillis() < 1) {
+            throw new IllegalArgumentException("The expiry tick must be at least 1ms");
+        }
+        this.tickMillis = tickDuration.toMillis();
+        this.originMillis = System.currentTimeMillis();
+        this.expiryHandler = expiryHandler;
+        this.timingWheel = new TimingWheel(0);
+    }
+
+    /**
+     * Expire a process once its time-to-live has elapsed since it was started.
+     *
+     * @param processId the process id
+     * @param startTime the start time
+     * @param ttl       the time-to-live
+     */
+    public synchronized void schedule(long processId, Timestamp startTime, Duration ttl) {
+        long expiryMillis = startTime.getTime() + ttl.toMillis() - originMillis;
+        timingWheel.schedule(processId, Math.floorDiv(expiryMillis + tickMillis - 1, tickMillis));
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "process-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancel the expiry of a killed process.
+     *
+     * @param processId the process id
+     */
+    public synchronized void cancel(long processId) {
+        timingWheel.cancel(processId);
+    }
+
+    /**
+     * Cancel the expiry of killed processes.
+     *
+     * @param processIds the process ids
+     */
+    public synchronized void cancelAll(Collection<Long> processIds) {
+        for (Long processId : processIds) {
+            timingWheel.cancel(processId);
+        }
+    }
+
+    /**
+     * Gets the number of processes waiting to expire.
+     *
+     * @return the timer count
+     */
+    public synchronized int size() {
+        return timingWheel.size();
+    }
+
+    /**
+     * Stop expiring processes.
+     */
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        List<Long> expired;
+        synchronized (this) {
+            expired = timingWheel.advance((System.currentTimeMillis() - originMillis) / tickMillis);
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        try {
+            expiryHandler.accept(expired);
+        } catch (RuntimeException e) {
+            log.error("Could not kill {} expired processes", expired.size(), e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.joshings.taskmanager.service.expiry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hierarchical timing wheel of process expiry timers.
+ * <p>
+ * Time is counted in ticks.  Every level is a wheel of {@link #WHEEL_SIZE} slots, a slot of level {@code n} spanning
+ * {@code WHEEL_SIZE^n} ticks, so four levels cover {@code WHEEL_SIZE^4} ticks.  A timer is put in the lowest level
+ * whose range covers its deadline, and is moved down one level when the tick reaches its slot (cascading), until it
+ * lands in level 0, whose slots are exactly one tick.  The slots are doubly linked lists and timers are also indexed
+ * by process ID, so scheduling and cancelling a timer are O(1).  Timers further away than the wheels cover wait in the
+ * last slot they reach and are cascaded again.
+ * <p>
+ * Not thread safe, the caller must synchronize.
+ */
+class TimingWheel {
+
+    private static final int WHEEL_BITS = 6;
+
+    /**
+     * The number of slots of a level.
+     */
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * The number of ticks all the levels cover.
+     */
+    private static final long SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+    private static final class Timer {
+        private final long processId;
+        private final long deadlineTick;
+        private Timer previous;
+        private Timer next;
+        private Timer[] slots;
+        private int slot;
+
+        private Timer(long processId, long deadlineTick) {
+            this.processId = processId;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final Timer[][] wheels = new Timer[LEVELS][WHEEL_SIZE];
+    private final Map<Long, Timer> timers = new HashMap<>();
+
+    /**
+     * The last tick whose timers have expired.
+     */
+    private long currentTick;
+
+    /**
+     * Instantiates a new Timing wheel.
+     *
+     * @param currentTick the current tick
+     */
+    TimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+    }
+
+    /**
+     * Gets the number of scheduled timers.
+     *
+     * @return the timer count
+     */
+    int size() {
+        return timers.size();
+    }
+
+    /**
+     * Schedule the expiry of a process, replacing its previous timer if any.
+     * A deadline which has already passed expires on the next tick.
+     *
+     * @param processId    the process id
+     * @param deadlineTick the tick the process expires at
+     */
+    void schedule(long processId, long deadlineTick) {
+        this.cancel(processId);
+        Timer timer = new Timer(processId, Math.max(deadlineTick, currentTick + 1));
+        timers.put(processId, timer);
+        this.place(timer);
+    }
+
+    /**
+     * Cancel the expiry of a process.
+     *
+     * @param processId the process id
+     * @return true if the process had a timer
+     */
+    boolean cancel(long processId) {
+        Timer timer = timers.remove(processId);
+        if (timer == null) {
+            return false;
+        }
+        this.unlink(timer);
+        return true;
+    }
+
+    /**
+     * Advance the wheels up to the given tick.
+     *
+     * @param tick the tick
+     * @return the ids of the processes which expired meanwhile, in deadline order
+     */
+    List<Long> advance(long tick) {
+        List<Long> expired = new ArrayList<>();
+        while (currentTick < tick) {
+            if (timers.isEmpty()) {
+                currentTick = tick;
+                break;
+            }
+            currentTick++;
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++) {
+                this.cascade(level, (int) (currentTick >>> (WHEEL_BITS * level)) & SLOT_MASK);
+            }
+
+            Timer[] slots = wheels[0];
+            int slot = (int) currentTick & SLOT_MASK;
+            for (Timer timer = slots[slot]; timer != null; timer = timer.next) {
+                timers.remove(timer.processId);
+                expired.add(timer.processId);
+                timer.slots = null;
+            }
+            slots[slot] = null;
+        }
+        return expired;
+    }
+
+    private void cascade(int level, int slot) {
+        Timer timer = wheels[level][slot];
+        wheels[level][slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            this.place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Put a timer in the lowest level covering its deadline, or in the farthest slot if it is beyond all the levels.
+     */
+    private void place(Timer timer) {
+        long deadlineTick = Math.min(timer.deadlineTick, currentTick + SPAN - 1);
+        long delta = deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+
+        Timer[] slots = wheels[level];
+        int slot = (int) (deadlineTick >>> (WHEEL_BITS * level)) & SLOT_MASK;
+        timer.slots = slots;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = slots[slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.slots == null) {
+            return;
+        }
+        if (timer.previous == null) {
+            timer.slots[timer.slot] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.slots = null;
+        timer.previous = null;
+        timer.next = null;
+    }
+}
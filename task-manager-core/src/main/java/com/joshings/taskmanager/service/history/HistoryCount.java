@@ -0,0 +1,45 @@
+package com.joshings.taskmanager.service.history;
+
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * The number of processes of a priority which ended for the same reason during a history partition, e.g. the Fifo
+ * evictions of high priority processes during an hour.
+ */
+@Getter
+public final class HistoryCount {
+
+    /**
+     * The start of the partition.
+     */
+    private final Instant partitionStart;
+
+    private final Priority priority;
+
+    private final ProcessEvent.Type endReason;
+
+    private final long count;
+
+    /**
+     * Instantiates a new History count.
+     *
+     * @param partitionStart the start of the partition
+     * @param priority       the priority
+     * @param endReason      the end reason
+     * @param count          the process count
+     */
+    public HistoryCount(Instant partitionStart, Priority priority, ProcessEvent.Type endReason, long count) {
+        this.partitionStart = partitionStart;
+        this.priority = priority;
+        this.endReason = endReason;
+        this.count = count;
+    }
+
+    public String toString() {
+        return String.format("%s - %s - %s - %d", partitionStart, priority, endReason, count);
+    }
+}
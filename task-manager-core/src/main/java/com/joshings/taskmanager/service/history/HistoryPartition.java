@@ -0,0 +1,315 @@
+package com.joshings.taskmanager.service.history;
+
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * A time partition of the process history: an append-only memory-mapped file of the processes which ended during the
+ * partition, and the counts of those processes by priority and end reason.
+ * <p>
+ * The file starts with {@code [int magic][int version][long partition start]}, followed by fixed size records of
+ * {@code [long pid][int priority][long start][long end][long weight][byte end reason][int crc32]}.  One thread appends
+ * the records, while any thread may read them: a reader sees the records appended before it read the size.  When a
+ * partition is opened, its file is read up to the first incomplete or corrupt record.
+ */
+@Slf4j
+final class HistoryPartition {
+
+    private static final int MAGIC = 0x544d4831;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int PAYLOAD_SIZE = Long.BYTES + Integer.BYTES + 3 * Long.BYTES + Byte.BYTES;
+    private static final int RECORD_SIZE = PAYLOAD_SIZE + Integer.BYTES;
+
+    /**
+     * The end reasons, by their code in the records.  New reasons must be added at the end.
+     */
+    private static final ProcessEvent.Type[] END_REASONS = {
+            ProcessEvent.Type.EvictedByFifo,
+            ProcessEvent.Type.EvictedByPrio,
+            ProcessEvent.Type.Killed,
+            ProcessEvent.Type.GroupKilled,
+            ProcessEvent.Type.AllKilled,
+            ProcessEvent.Type.Expired,
+            ProcessEvent.Type.Exited
+    };
+
+    private final Path path;
+
+    /**
+     * The start of the partition in epoch milliseconds.
+     */
+    @Getter
+    private final long startMillis;
+
+    private final FileChannel channel;
+
+    /**
+     * The mapped file, which is remapped bigger whenever it is full.
+     */
+    private volatile MappedByteBuffer records;
+
+    /**
+     * The number of records, written after the records.
+     */
+    private volatile int size;
+
+    /**
+     * The record counts by priority, then by end reason code.
+     */
+    private final Map<Priority, AtomicLongArray> counts = new ConcurrentHashMap<>();
+
+    private final CRC32 crc = new CRC32();
+
+    private HistoryPartition(Path path, long startMillis, FileChannel channel, MappedByteBuffer records) {
+        this.path = path;
+        this.startMillis = startMillis;
+        this.channel = channel;
+        this.records = records;
+    }
+
+    /**
+     * Open a partition file, creating it if it does not exist yet, and read its records.
+     *
+     * @param path           the partition file
+     * @param startMillis    the start of the partition in epoch milliseconds
+     * @param initialRecords the number of records the file is created for, which is doubled whenever it is full
+     * @return the history partition
+     * @throws IOException if the file cannot be opened or is not a partition starting at the given time
+     */
+    static HistoryPartition open(Path path, long startMillis, int initialRecords) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long fileSize = Math.max(channel.size(), HEADER_SIZE + (long) initialRecords * RECORD_SIZE);
+            HistoryPartition partition = new HistoryPartition(
+                    path, startMillis, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize));
+            partition.readHeader();
+            return partition;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return the record count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append a record.  Only called by the history writer.
+     *
+     * @param record the record, which ended during the partition
+     * @throws IOException if the file cannot be grown
+     */
+    void append(ProcessHistoryRecord record) throws IOException {
+        int position = HEADER_SIZE + size * RECORD_SIZE;
+        this.ensureCapacity((long) position + RECORD_SIZE);
+        MappedByteBuffer file = records;
+        file.putLong(position, record.getProcessId());
+        file.putInt(position + Long.BYTES, (int) record.getPriority().getPriorityValue());
+        file.putLong(position + Long.BYTES + Integer.BYTES, record.getStartTimeMillis());
+        file.putLong(position + 2 * Long.BYTES + Integer.BYTES, record.getEndTimeMillis());
+        file.putLong(position + 3 * Long.BYTES + Integer.BYTES, record.getWeight());
+        file.put(position + 4 * Long.BYTES + Integer.BYTES, (byte) codeOf(record.getEndReason()));
+        file.putInt(position + PAYLOAD_SIZE, this.checksum(file, position));
+
+        this.count(record.getPriority(), codeOf(record.getEndReason()));
+        size = size + 1;
+    }
+
+    /**
+     * Hand the records which ended within a time range to a consumer, in the order they were appended.
+     *
+     * @param fromMillis the start of the range in epoch milliseconds, inclusive
+     * @param toMillis   the end of the range in epoch milliseconds, exclusive
+     * @param consumer   the consumer of the records, which returns false to stop
+     * @return false if the consumer stopped
+     */
+    boolean forEach(long fromMillis, long toMillis, Predicate<ProcessHistoryRecord> consumer) {
+        int count = size;
+        ByteBuffer file = records.duplicate();
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            long endTimeMillis = file.getLong(position + 2 * Long.BYTES + Integer.BYTES);
+            if (endTimeMillis >= fromMillis && endTimeMillis < toMillis && !consumer.test(read(file, position))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the record counts by priority, then by end reason.
+     *
+     * @return the record counts
+     */
+    Map<Priority, Map<ProcessEvent.Type, Long>> counts() {
+        Map<Priority, Map<ProcessEvent.Type, Long>> snapshot = new TreeMap<>();
+        counts.forEach((priority, reasonCounts) -> {
+            for (int code = 0; code < END_REASONS.length; code++) {
+                long count = reasonCounts.get(code);
+                if (count > 0) {
+                    snapshot.computeIfAbsent(priority, p -> new TreeMap<>()).put(END_REASONS[code], count);
+                }
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Count the records which ended within a time range by priority, then by end reason, reading only the fields it
+     * counts by.
+     *
+     * @param fromMillis the start of the range in epoch milliseconds, inclusive
+     * @param toMillis   the end of the range in epoch milliseconds, exclusive
+     * @return the record counts
+     */
+    Map<Priority, Map<ProcessEvent.Type, Long>> counts(long fromMillis, long toMillis) {
+        Map<Integer, long[]> rangeCounts = new HashMap<>();
+        int count = size;
+        ByteBuffer file = records.duplicate();
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            long endTimeMillis = file.getLong(position + 2 * Long.BYTES + Integer.BYTES);
+            if (endTimeMillis >= fromMillis && endTimeMillis < toMillis) {
+                rangeCounts.computeIfAbsent(file.getInt(position + Long.BYTES), p -> new long[END_REASONS.length])
+                        [file.get(position + 4 * Long.BYTES + Integer.BYTES)]++;
+            }
+        }
+
+        Map<Priority, Map<ProcessEvent.Type, Long>> snapshot = new TreeMap<>();
+        rangeCounts.forEach((priorityValue, reasonCounts) -> {
+            for (int code = 0; code < END_REASONS.length; code++) {
+                if (reasonCounts[code] > 0) {
+                    snapshot.computeIfAbsent(Priority.fromValue(priorityValue), p -> new TreeMap<>())
+                            .put(END_REASONS[code], reasonCounts[code]);
+                }
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Sync the records to disk.
+     */
+    void force() {
+        records.force();
+    }
+
+    /**
+     * Sync the records and close the file.  The records may still be read.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException {
+        records.force();
+        channel.close();
+    }
+
+    /**
+     * Close and delete the file.  The readers which already started still read the records.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private void readHeader() throws IOException {
+        MappedByteBuffer file = records;
+        if (file.getInt(0) == 0) {
+            file.putInt(0, MAGIC).putInt(Integer.BYTES, VERSION).putLong(2 * Integer.BYTES, startMillis);
+            return;
+        }
+        if (file.getInt(0) != MAGIC || file.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Not a process history partition, or unsupported version: " + path);
+        }
+        if (file.getLong(2 * Integer.BYTES) != startMillis) {
+            throw new IOException("The process history partition " + path + " does not start at " + startMillis);
+        }
+
+        int count = 0;
+        for (int position = HEADER_SIZE; position + RECORD_SIZE <= file.capacity(); position += RECORD_SIZE) {
+            if (file.getInt(position + PAYLOAD_SIZE) != this.checksum(file, position)) {
+                if (file.getLong(position) != 0) {
+                    log.warn("Ignoring the corrupt tail of the process history partition {} at record {}", path, count);
+                }
+                break;
+            }
+            ProcessHistoryRecord record = read(file, position);
+            this.count(record.getPriority(), codeOf(record.getEndReason()));
+            count++;
+        }
+        size = count;
+        // Anything left after the last valid record is a torn write, which the next record overwrites.
+    }
+
+    private void ensureCapacity(long capacity) throws IOException {
+        if (capacity <= records.capacity()) {
+            return;
+        }
+        long grown = Math.max(capacity, 2L * records.capacity());
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("The process history partition " + path + " is full, shorten the partitions");
+        }
+        records = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(grown, Integer.MAX_VALUE));
+    }
+
+    private void count(Priority priority, int code) {
+        counts.computeIfAbsent(priority, p -> new AtomicLongArray(END_REASONS.length)).incrementAndGet(code);
+    }
+
+    private int checksum(ByteBuffer file, int position) {
+        crc.reset();
+        crc.update(file.duplicate().position(position).limit(position + PAYLOAD_SIZE));
+        return (int) crc.getValue();
+    }
+
+    private static ProcessHistoryRecord read(ByteBuffer file, int position) {
+        int code = file.get(position + 4 * Long.BYTES + Integer.BYTES);
+        if (code < 0 || code >= END_REASONS.length) {
+            throw new IllegalStateException("Unrecognized process history end reason " + code);
+        }
+        return new ProcessHistoryRecord(
+                file.getLong(position),
+                Priority.fromValue(file.getInt(position + Long.BYTES)),
+                file.getLong(position + Long.BYTES + Integer.BYTES),
+                file.getLong(position + 2 * Long.BYTES + Integer.BYTES),
+                file.getLong(position + 3 * Long.BYTES + Integer.BYTES),
+                END_REASONS[code]
+        );
+    }
+
+    private static int codeOf(ProcessEvent.Type endReason) {
+        for (int code = 0; code < END_REASONS.length; code++) {
+            if (END_REASONS[code] == endReason) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("Not an end reason: " + endReason);
+    }
+}
@@ -0,0 +1,308 @@
+package com.joshings.taskmanager.service.history;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.events.ProcessEventHandler;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An append-only history of the processes which are no longer running, kept apart from the running processes.
+ * <p>
+ * The history follows the process lifecycle events, and records every process removed from the task manager from the
+ * event which removed it, which carries all its details, so the history never reads the running processes.  The
+ * records are partitioned by end time, one memory-mapped file per partition (an hour by default), and every partition
+ * keeps the counts of its records by priority and end reason, so counting the ends of whole partitions reads no
+ * record, and listing a time range only reads the partitions of the range.  The partitions older than the retention
+ * are dropped by deleting their file, whenever a new partition starts.
+ * <p>
+ * The records are not synced one by one: a partition is synced when the next one starts and when the history is
+ * closed.  A history which falls a whole ring behind with the {@link ProcessEventRing.Backpressure#Drop} backpressure
+ * does not record the processes removed by the lost events.
+ */
+@Slf4j
+public class ProcessHistory implements ProcessEventHandler, AutoCloseable {
+
+    private static final int INITIAL_PARTITION_RECORDS = 64 * 1024;
+    private static final String FILE_PREFIX = "history-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long partitionMillis;
+    private final long retentionMillis;
+
+    /**
+     * The partitions by start time.  Appends and drops hold the partition lock, reads hold no lock.
+     */
+    private final ConcurrentSkipListMap<Long, HistoryPartition> partitions = new ConcurrentSkipListMap<>();
+    private final ReentrantLock partitionLock = new ReentrantLock();
+
+    private final ProcessEventRing.Subscription subscription;
+
+    /**
+     * Instantiates a new Process history, opens its partitions and subscribes it to the events of the task manager.
+     *
+     * @param taskManagerService the task manager service
+     * @param directory          the directory of the partition files, created if needed
+     * @param partitionDuration  the time span of a partition, which is also the granularity of the counts
+     * @param retention          how long the records are kept, at least the time span of a partition
+     * @param backpressure       what happens when the history falls a whole ring behind
+     */
+    public ProcessHistory(TaskManagerService taskManagerService,
+                          Path directory,
+                          Duration partitionDuration,
+                          Duration retention,
+                          ProcessEventRing.Backpressure backpressure
+    ) {
+        if (partitionDuration.toMillis() < 1 || retention.compareTo(partitionDuration) < 0) {
+            throw new IllegalArgumentException(
+                    "The history partitions must last at least 1ms, and be retained at least that long");
+        }
+        this.directory = directory;
+        this.partitionMillis = partitionDuration.toMillis();
+        this.retentionMillis = retention.toMillis();
+        try {
+            this.open();
+        } catch (IOException e) {
+            this.closePartitions();
+            throw new UncheckedIOException("Could not open the process history " + directory, e);
+        }
+        this.dropExpired();
+        this.subscription = taskManagerService.getEvents().subscribe("process-history", backpressure, this);
+    }
+
+    /**
+     * Gets the records of the processes which ended within a time range, partition by partition, in the order they
+     * were recorded.
+     *
+     * @param from  the start of the range, inclusive
+     * @param to    the end of the range, exclusive
+     * @param limit the maximum number of records
+     * @return the records
+     */
+    public List<ProcessHistoryRecord> getRecords(Instant from, Instant to, int limit) {
+        List<ProcessHistoryRecord> records = new ArrayList<>();
+        if (limit <= 0) {
+            return records;
+        }
+        for (HistoryPartition partition : this.partitionsOf(from.toEpochMilli(), to.toEpochMilli()).values()) {
+            boolean more = partition.forEach(from.toEpochMilli(), to.toEpochMilli(), record -> {
+                records.add(record);
+                return records.size() < limit;
+            });
+            if (!more) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Count the processes which ended within a time range by partition, priority and end reason, e.g. the evictions
+     * per priority per hour.  The partitions entirely within the range are counted from their counts, without reading
+     * their records.
+     *
+     * @param from the start of the range, inclusive
+     * @param to   the end of the range, exclusive
+     * @return the non-zero counts, by partition start, then priority, then end reason
+     */
+    public List<HistoryCount> countEnds(Instant from, Instant to) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<HistoryCount> counts = new ArrayList<>();
+        for (HistoryPartition partition : this.partitionsOf(fromMillis, toMillis).values()) {
+            boolean whole = partition.getStartMillis() >= fromMillis &&
+                    partition.getStartMillis() + partitionMillis <= toMillis;
+            Map<Priority, Map<ProcessEvent.Type, Long>> partitionCounts = whole ?
+                    partition.counts() :
+                    partition.counts(fromMillis, toMillis);
+            Instant partitionStart = Instant.ofEpochMilli(partition.getStartMillis());
+            partitionCounts.forEach((priority, reasonCounts) -> reasonCounts.forEach((endReason, count) ->
+                    counts.add(new HistoryCount(partitionStart, priority, endReason, count))));
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of records of all the partitions.
+     *
+     * @return the record count
+     */
+    public long size() {
+        long size = 0;
+        for (HistoryPartition partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of partitions.
+     *
+     * @return the partition count
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Gets the subscription of the history to the events.
+     *
+     * @return the subscription
+     */
+    public ProcessEventRing.Subscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Drop the partitions which ended before the retention, each in one file deletion.
+     */
+    public void dropExpired() {
+        this.dropBefore(System.currentTimeMillis() - retentionMillis);
+    }
+
+    @Override
+    public void onEvent(ProcessEvent event) {
+        if (event.getType() == ProcessEvent.Type.Added) {
+            return;
+        }
+        this.append(new ProcessHistoryRecord(
+                event.getProcessId(),
+                event.getPriority(),
+                event.getStartTimeMillis(),
+                event.getTimeMillis(),
+                event.getWeight(),
+                event.getType()
+        ));
+    }
+
+    @Override
+    public void onOverrun(long lostEvents) {
+        log.warn("The process history lost {} events, the processes which ended meanwhile are not recorded",
+                lostEvents);
+    }
+
+    /**
+     * Stop following the events, sync the partitions and close their files.
+     */
+    @Override
+    public void close() {
+        subscription.close();
+        this.closePartitions();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long startMillis;
+                try {
+                    startMillis = Long.parseLong(
+                            name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring the file {} of the process history", file);
+                    continue;
+                }
+                partitions.put(startMillis, HistoryPartition.open(file, startMillis, INITIAL_PARTITION_RECORDS));
+            }
+        }
+        log.info("Opened the process history {}: {} partitions, {} records", directory, partitions.size(), size());
+    }
+
+    /**
+     * Append a record to the partition of its end time, which is created if needed.
+     */
+    private void append(ProcessHistoryRecord record) {
+        long startMillis = Math.floorDiv(record.getEndTimeMillis(), partitionMillis) * partitionMillis;
+        partitionLock.lock();
+        try {
+            HistoryPartition partition = partitions.get(startMillis);
+            if (partition == null) {
+                partition = this.createPartition(startMillis);
+            }
+            partition.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record the end of process " + record.getProcessId(), e);
+        } finally {
+            partitionLock.unlock();
+        }
+    }
+
+    /**
+     * Create a partition.  When it is the latest one, the previous latest one is complete, so it is synced, and the
+     * partitions past the retention are dropped.
+     */
+    private HistoryPartition createPartition(long startMillis) throws IOException {
+        Map.Entry<Long, HistoryPartition> latest = partitions.lastEntry();
+        HistoryPartition partition = HistoryPartition.open(
+                directory.resolve(FILE_PREFIX + startMillis + FILE_SUFFIX), startMillis, INITIAL_PARTITION_RECORDS);
+        partitions.put(startMillis, partition);
+        if (latest == null || latest.getKey() < startMillis) {
+            if (latest != null) {
+                latest.getValue().force();
+            }
+            this.dropBefore(startMillis - retentionMillis);
+        }
+        return partition;
+    }
+
+    /**
+     * Drop the partitions which ended before the given time.
+     */
+    private void dropBefore(long timeMillis) {
+        partitionLock.lock();
+        try {
+            NavigableMap<Long, HistoryPartition> expired = partitions.headMap(timeMillis - partitionMillis, true);
+            for (HistoryPartition partition : new ArrayList<>(expired.values())) {
+                partitions.remove(partition.getStartMillis());
+                partition.delete();
+                log.info("Dropped the process history partition of {}",
+                        Instant.ofEpochMilli(partition.getStartMillis()));
+            }
+        } catch (IOException e) {
+            log.error("Could not drop the expired partitions of the process history {}", directory, e);
+        } finally {
+            partitionLock.unlock();
+        }
+    }
+
+    /**
+     * The partitions holding the ends of a time range.
+     */
+    private NavigableMap<Long, HistoryPartition> partitionsOf(long fromMillis, long toMillis) {
+        long firstStartMillis = Math.floorDiv(fromMillis, partitionMillis) * partitionMillis;
+        return firstStartMillis < toMillis ?
+                partitions.subMap(firstStartMillis, true, toMillis, false) :
+                new TreeMap<>();
+    }
+
+    private void closePartitions() {
+        partitionLock.lock();
+        try {
+            for (HistoryPartition partition : partitions.values()) {
+                partition.close();
+            }
+        } catch (IOException e) {
+            log.error("Could not close the process history {}", directory, e);
+        } finally {
+            partitionLock.unlock();
+        }
+    }
+}
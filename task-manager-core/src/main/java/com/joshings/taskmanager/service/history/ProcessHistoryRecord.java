@@ -0,0 +1,66 @@
+package com.joshings.taskmanager.service.history;
+
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * The history of a process which is no longer running: when it started, when it ended and why.
+ */
+@Getter
+public final class ProcessHistoryRecord {
+
+    private final long processId;
+
+    private final Priority priority;
+
+    /**
+     * The start time in epoch milliseconds.
+     */
+    private final long startTimeMillis;
+
+    /**
+     * The end time in epoch milliseconds.
+     */
+    private final long endTimeMillis;
+
+    private final long weight;
+
+    /**
+     * Why the process ended: the type of the event which removed it.
+     */
+    private final ProcessEvent.Type endReason;
+
+    /**
+     * Instantiates a new Process history record.
+     *
+     * @param processId       the process id
+     * @param priority        the priority
+     * @param startTimeMillis the start time in epoch milliseconds
+     * @param endTimeMillis   the end time in epoch milliseconds
+     * @param weight          the weight
+     * @param endReason       the type of the event which removed the process
+     */
+    public ProcessHistoryRecord(long processId,
+                                Priority priority,
+                                long startTimeMillis,
+                                long endTimeMillis,
+                                long weight,
+                                ProcessEvent.Type endReason
+    ) {
+        this.processId = processId;
+        this.priority = priority;
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.weight = weight;
+        this.endReason = endReason;
+    }
+
+    public String toString() {
+        return String.format("PID %d - %s - started %s - ended %s - %s",
+                processId, priority, Instant.ofEpochMilli(startTimeMillis), Instant.ofEpochMilli(endTimeMillis),
+                endReason);
+    }
+}
@@ -0,0 +1,180 @@
+package com.joshings.taskmanager.service.http;
+
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Process;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compact JSON and binary encodings of the HTTP API.
+ * <p>
+ * A process is encoded as {@code {"pid":1,"prio":"high","start":1630000000000,"weight":1}}, with the start time in
+ * epoch milliseconds, and as a fixed size binary record of its pid, priority value, start time and weight, all big
+ * endian.  The request bodies are flat JSON arrays of numbers or strings, which is all the API accepts.
+ */
+final class ProcessJson {
+
+    /**
+     * The size of a binary process record: pid, priority value, start time and weight.
+     */
+    static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    private ProcessJson() {
+    }
+
+    /**
+     * Append a process as a JSON object.
+     *
+     * @param json    the JSON being written
+     * @param process the process
+     * @return the JSON being written
+     */
+    static StringBuilder appendProcess(StringBuilder json, Process process) {
+        json.append("{\"pid\":").append(process.getProcessId());
+        json.append(",\"prio\":");
+        appendString(json, process.getPriority().getPriorityName());
+        json.append(",\"start\":").append(process.getStartTime().getTime());
+        return json.append(",\"weight\":").append(process.getWeight()).append('}');
+    }
+
+    /**
+     * Append the result of a batch add: the added process and the id of the process it evicted, if any, or the
+     * reason why it was rejected.
+     *
+     * @param json   the JSON being written
+     * @param result the add result
+     * @return the JSON being written
+     */
+    static StringBuilder appendResult(StringBuilder json, AddResult result) {
+        if (result.getStatus() != AddResult.Status.Admitted) {
+            return appendError(json, result.getMessage().orElse("Rejected"));
+        }
+        appendProcess(json, result.getProcess().orElseThrow());
+        result.getEvictedProcessId().ifPresent(evicted -> {
+            json.setLength(json.length() - 1);
+            json.append(",\"evicted\":").append(evicted).append('}');
+        });
+        return json;
+    }
+
+    /**
+     * Append an error as a JSON object.
+     *
+     * @param json    the JSON being written
+     * @param message the error message
+     * @return the JSON being written
+     */
+    static StringBuilder appendError(StringBuilder json, String message) {
+        json.append("{\"error\":");
+        appendString(json, message == null ? "" : message);
+        return json.append('}');
+    }
+
+    /**
+     * Write a page of processes as binary records.
+     *
+     * @param processes the processes
+     * @return the records
+     */
+    static byte[] toRecords(List<Process> processes) {
+        ByteBuffer records = ByteBuffer.allocate(processes.size() * RECORD_SIZE);
+        for (Process process : processes) {
+            records.putLong(process.getProcessId());
+            records.putInt((int) process.getPriority().getPriorityValue());
+            records.putLong(process.getStartTime().getTime());
+            records.putLong(process.getWeight());
+        }
+        return records.array();
+    }
+
+    /**
+     * Parse a flat JSON array of numbers or strings, e.g. {@code [1, 2]} or {@code ["high", 5]}.
+     *
+     * @param json the JSON array
+     * @return the elements, as text
+     */
+    static List<String> parseArray(String json) {
+        List<String> elements = new ArrayList<>();
+        int i = skipWhitespace(json, 0);
+        if (i == json.length() || json.charAt(i) != '[') {
+            throw new IllegalArgumentException("Expected a JSON array");
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length() && json.charAt(i) == ']') {
+            return expectEnd(json, i + 1, elements);
+        }
+        while (i < json.length()) {
+            StringBuilder element = new StringBuilder();
+            if (json.charAt(i) == '"') {
+                i = readString(json, i + 1, element);
+            } else {
+                while (i < json.length() && ",] \t\r\n".indexOf(json.charAt(i)) < 0) {
+                    element.append(json.charAt(i++));
+                }
+                if (element.length() == 0) {
+                    break;
+                }
+            }
+            elements.add(element.toString());
+            i = skipWhitespace(json, i);
+            if (i < json.length() && json.charAt(i) == ']') {
+                return expectEnd(json, i + 1, elements);
+            }
+            if (i == json.length() || json.charAt(i) != ',') {
+                break;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        throw new IllegalArgumentException("Malformed JSON array");
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Read a string whose opening quote was read, unescaping the quotes and backslashes.
+     *
+     * @return the index after the closing quote
+     */
+    private static int readString(String json, int i, StringBuilder value) {
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i < json.length()) {
+                c = json.charAt(i++);
+            }
+            value.append(c);
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static List<String> expectEnd(String json, int i, List<String> elements) {
+        if (skipWhitespace(json, i) != json.length()) {
+            throw new IllegalArgumentException("Unexpected content after the JSON array");
+        }
+        return elements;
+    }
+}
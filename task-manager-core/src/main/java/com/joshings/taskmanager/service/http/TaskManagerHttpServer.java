@@ -0,0 +1,428 @@
+package com.joshings.taskmanager.service.http;
+
+import com.joshings.taskmanager.service.AsyncTaskManagerService;
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessCursor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The HTTP API of the task manager, served by the HTTP server of the JDK.
+ * <p>
+ * The requests are parsed on the single thread of the server, then handed to the {@link AsyncTaskManagerService}; the
+ * response is sent by the thread which completes the request, so no thread waits for the task manager, and the server
+ * keeps reading the connections meanwhile.  The request bodies are read by a few body reader threads instead, so that
+ * a slow upload only holds up a body reader.  The connections are kept alive and requests may be pipelined.  The bulk
+ * endpoints add or kill many processes with one request and one capacity check per partition:
+ * <ul>
+ *     <li>{@code POST /processes?prio=&mode=&partition=} adds a process</li>
+ *     <li>{@code POST /processes/batch?mode=&partition=} adds the processes of a JSON array of priorities</li>
+ *     <li>{@code POST /processes/kill} kills the processes of a JSON array of pids</li>
+ *     <li>{@code DELETE /processes/{pid}} kills a process</li>
+ *     <li>{@code DELETE /processes?prio=} kills a group of processes, or all of them without a priority</li>
+ *     <li>{@code GET /processes?sort=&after=&limit=} lists a page of processes, in JSON, or in binary records of
+ *     {@value ProcessJson#RECORD_SIZE} bytes if {@code application/octet-stream} is accepted</li>
+ * </ul>
+ * A rejected add answers 409, a task manager busy with too many pending requests, or a server with too many request
+ * bodies waiting to be read, answers 503.
+ */
+@Slf4j
+public class TaskManagerHttpServer implements AutoCloseable {
+
+    private static final String PROCESSES_PATH = "/processes";
+    private static final String BATCH_PATH = PROCESSES_PATH + "/batch";
+    private static final String KILL_PATH = PROCESSES_PATH + "/kill";
+
+    private static final String JSON = "application/json";
+    private static final String BINARY = "application/octet-stream";
+
+    /**
+     * The header of the cursor of the next page of a binary listing, absent on the last page.
+     */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_PENDING_BODIES = 1000;
+
+    private final AsyncTaskManagerService asyncTaskManagerService;
+    private final HttpServer server;
+
+    /**
+     * The threads which read the request bodies, off the thread of the server.
+     */
+    private final ExecutorService bodyReaders;
+
+    /**
+     * Instantiates a new Task manager http server and starts it.
+     *
+     * @param asyncTaskManagerService the asynchronous task manager service
+     * @param address                 the address to listen on, with the port 0 for any free port
+     * @param backlog                 the maximum number of connections waiting to be accepted, or 0 for the default
+     * @param bodyReaders             the number of threads reading the request bodies
+     * @throws IOException if the server cannot listen on the address
+     */
+    public TaskManagerHttpServer(AsyncTaskManagerService asyncTaskManagerService,
+                                 InetSocketAddress address,
+                                 int backlog,
+                                 int bodyReaders
+    ) throws IOException {
+        if (bodyReaders < 1) {
+            throw new IllegalArgumentException("The HTTP server needs at least one body reader");
+        }
+        this.asyncTaskManagerService = asyncTaskManagerService;
+        this.bodyReaders = new ThreadPoolExecutor(
+                bodyReaders,
+                bodyReaders,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_BODIES),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "http-body-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        try {
+            this.server = HttpServer.create(address, backlog);
+        } catch (IOException e) {
+            this.bodyReaders.shutdown();
+            throw e;
+        }
+        // The server answers the paths outside of every context itself, and closes the connection.
+        server.createContext("/", this::handle);
+        server.setExecutor(null);
+        server.start();
+        log.info("Serving the task manager API on {}", server.getAddress());
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server, closing the open connections, and the body readers.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        bodyReaders.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            this.route(exchange);
+        } catch (RuntimeException e) {
+            this.fail(exchange, e);
+        }
+    }
+
+    private void route(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getRawPath();
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (path.equals(PROCESSES_PATH)) {
+            switch (method) {
+                case "GET":
+                    this.list(exchange, query);
+                    return;
+                case "POST":
+                    this.add(exchange, query);
+                    return;
+                case "DELETE":
+                    this.killGroup(exchange, query);
+                    return;
+                default:
+                    sendError(exchange, 405, "Unsupported method " + method);
+                    return;
+            }
+        }
+        if (path.equals(BATCH_PATH) || path.equals(KILL_PATH)) {
+            if (!method.equals("POST")) {
+                sendError(exchange, 405, "Unsupported method " + method);
+            } else if (path.equals(BATCH_PATH)) {
+                this.withBody(exchange, body -> this.addBatch(exchange, query, body));
+            } else {
+                this.withBody(exchange, body -> this.killBatch(exchange, body));
+            }
+            return;
+        }
+        if (path.startsWith(PROCESSES_PATH + "/") && method.equals("DELETE")) {
+            this.kill(exchange, path.substring(PROCESSES_PATH.length() + 1));
+            return;
+        }
+        sendError(exchange, 404, "No such resource " + path);
+    }
+
+    private void add(HttpExchange exchange, Map<String, String> query) {
+        Priority priority = Priority.fromString(required(query, "prio"));
+        this.whenComplete(
+                asyncTaskManagerService.addProcess(query.get("partition"), priority, addMode(query)),
+                exchange,
+                process -> sendJson(exchange, 201, ProcessJson.appendProcess(new StringBuilder(), process))
+        );
+    }
+
+    private void addBatch(HttpExchange exchange, Map<String, String> query, String body) {
+        List<Priority> priorities = new ArrayList<>();
+        for (String priority : ProcessJson.parseArray(body)) {
+            priorities.add(Priority.fromString(priority));
+        }
+        this.whenComplete(
+                asyncTaskManagerService.addProcesses(query.get("partition"), priorities, addMode(query)),
+                exchange,
+                results -> {
+                    StringBuilder json = new StringBuilder(results.size() * 64).append('[');
+                    for (AddResult result : results) {
+                        ProcessJson.appendResult(json, result).append(',');
+                    }
+                    json.setLength(results.isEmpty() ? json.length() : json.length() - 1);
+                    sendJson(exchange, 200, json.append(']'));
+                }
+        );
+    }
+
+    private void kill(HttpExchange exchange, String processId) {
+        long pid;
+        try {
+            pid = Long.parseLong(processId);
+        } catch (NumberFormatException e) {
+            sendError(exchange, 404, "No such resource " + exchange.getRequestURI().getRawPath());
+            return;
+        }
+        asyncTaskManagerService.killProcess(pid).whenComplete((killed, error) -> {
+            if (error == null) {
+                sendEmpty(exchange);
+            } else if (unwrap(error) instanceof IllegalArgumentException) {
+                sendError(exchange, 404, unwrap(error).getMessage());
+            } else {
+                this.fail(exchange, error);
+            }
+        });
+    }
+
+    private void killBatch(HttpExchange exchange, String body) {
+        List<Long> processIds = new ArrayList<>();
+        for (String processId : ProcessJson.parseArray(body)) {
+            try {
+                processIds.add(Long.parseLong(processId));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unrecognized process ID " + processId);
+            }
+        }
+        this.whenComplete(
+                asyncTaskManagerService.killProcesses(processIds),
+                exchange,
+                killed -> sendJson(exchange, 200, new StringBuilder("{\"killed\":").append(killed).append('}'))
+        );
+    }
+
+    private void killGroup(HttpExchange exchange, Map<String, String> query) {
+        String prio = query.get("prio");
+        CompletableFuture<Void> killed = prio == null ?
+                asyncTaskManagerService.killAll() :
+                asyncTaskManagerService.killGroup(Priority.fromString(prio));
+        this.whenComplete(killed, exchange, nothing -> sendEmpty(exchange));
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) {
+        TaskManagerService.SortMode sortMode =
+                TaskManagerService.SortMode.fromString(query.getOrDefault("sort", "pid"));
+        ProcessCursor after = query.containsKey("after") ?
+                ProcessCursor.fromString(sortMode, query.get("after")) :
+                null;
+        int limit = query.containsKey("limit") ? parseLimit(query.get("limit")) : DEFAULT_PAGE_SIZE;
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean binary = accept != null && accept.contains(BINARY);
+        this.whenComplete(asyncTaskManagerService.getProcesses(sortMode, after, limit), exchange, processes -> {
+            String next = processes.size() < limit ?
+                    null :
+                    ProcessCursor.after(sortMode, processes.get(processes.size() - 1)).toString();
+            if (binary) {
+                if (next != null) {
+                    exchange.getResponseHeaders().set(NEXT_CURSOR_HEADER, next);
+                }
+                send(exchange, 200, BINARY, ProcessJson.toRecords(processes));
+                return;
+            }
+            StringBuilder json = new StringBuilder(processes.size() * 64 + 32).append("{\"processes\":[");
+            for (Process process : processes) {
+                ProcessJson.appendProcess(json, process).append(',');
+            }
+            json.setLength(processes.isEmpty() ? json.length() : json.length() - 1);
+            json.append("],\"next\":");
+            if (next == null) {
+                json.append("null");
+            } else {
+                json.append('"').append(next).append('"');
+            }
+            sendJson(exchange, 200, json.append('}'));
+        });
+    }
+
+    /**
+     * Read the request body on a body reader, then handle the request there.
+     *
+     * @throws RejectedExecutionException if too many request bodies are waiting to be read
+     */
+    private void withBody(HttpExchange exchange, Consumer<String> handler) {
+        bodyReaders.execute(() -> {
+            try {
+                handler.accept(readBody(exchange));
+            } catch (IOException | RuntimeException e) {
+                this.fail(exchange, e);
+            }
+        });
+    }
+
+    /**
+     * Send the response once the request completes, or the error it failed with.
+     */
+    private <T> void whenComplete(CompletableFuture<T> request, HttpExchange exchange, Consumer<T> writer) {
+        request.whenComplete((value, error) -> {
+            if (error != null) {
+                this.fail(exchange, error);
+            } else {
+                writer.accept(value);
+            }
+        });
+    }
+
+    private void fail(HttpExchange exchange, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof IllegalArgumentException) {
+            sendError(exchange, 400, cause.getMessage());
+        } else if (cause instanceof InstantiationException) {
+            sendError(exchange, 409, cause.getMessage());
+        } else if (cause instanceof RejectedExecutionException) {
+            sendError(exchange, 503, cause.getMessage());
+        } else if (cause instanceof IOException) {
+            log.debug("Could not read the request {}", exchange.getRequestURI(), cause);
+            exchange.close();
+        } else {
+            log.error("Could not serve the request {} {}",
+                    exchange.getRequestMethod(), exchange.getRequestURI(), cause);
+            sendError(exchange, 500, "Internal error");
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, StringBuilder json) {
+        send(exchange, status, JSON, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        sendJson(exchange, status, ProcessJson.appendError(new StringBuilder(), message));
+    }
+
+    private static void sendEmpty(HttpExchange exchange) {
+        try {
+            // The server finishes a response without a body as soon as its headers are sent, and closes the
+            // connection unless the request body was read to the end by then.
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(204, -1);
+        } catch (IOException e) {
+            log.debug("Could not answer the request {}", exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        } catch (IOException e) {
+            log.debug("Could not answer the request {}", exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_SIZE + 1);
+            if (bytes.length > MAX_BODY_SIZE) {
+                throw new IllegalArgumentException("The request body is larger than " + MAX_BODY_SIZE + " bytes");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                query.put(
+                        URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing the " + name + " parameter");
+        }
+        return value;
+    }
+
+    private static TaskManagerService.AddMode addMode(Map<String, String> query) {
+        String mode = query.get("mode");
+        return mode == null ? null : TaskManagerService.AddMode.fromString(mode);
+    }
+
+    private static int parseLimit(String limit) {
+        try {
+            int pageSize = Integer.parseInt(limit);
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("The limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return pageSize;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unrecognized limit " + limit);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.joshings.taskmanager.service.load;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An operation of the load test mix, with its share of the load.
+ */
+public final class LoadOperation {
+
+    /**
+     * The operations the load test can run.
+     */
+    public enum Type {
+        /**
+         * Add a process.
+         */
+        Add("add"),
+        /**
+         * Kill a process recently added by the load test.
+         */
+        Kill("kill"),
+        /**
+         * Kill a priority group.
+         */
+        KillGroup("kill-group"),
+        /**
+         * List all the processes.
+         */
+        GetProcesses("list");
+
+        private final String typeName;
+
+        Type(String typeName) {
+            this.typeName = typeName;
+        }
+
+        /**
+         * Gets type name.
+         *
+         * @return the type name
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+    }
+
+    @Getter
+    private final Type type;
+
+    /**
+     * The add mode of an add, or null for the add mode of the partition.
+     */
+    @Getter
+    private final TaskManagerService.AddMode addMode;
+
+    /**
+     * The priority of an add or a group kill, or null for a random priority of the priority range.
+     */
+    @Getter
+    private final Priority priority;
+
+    /**
+     * The share of the load, relative to the weights of the other operations.
+     */
+    @Getter
+    private final int weight;
+
+    /**
+     * Instantiates a new Load operation.
+     *
+     * @param type     the type
+     * @param addMode  the add mode of an add, or null for the add mode of the partition
+     * @param priority the priority of an add or a group kill, or null for a random priority of the priority range
+     * @param weight   the weight
+     */
+    public LoadOperation(Type type, TaskManagerService.AddMode addMode, Priority priority, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("The weight of an operation must be at least 1");
+        }
+        this.type = type;
+        this.addMode = addMode;
+        this.priority = priority;
+        this.weight = weight;
+    }
+
+    /**
+     * Parse an operation mix, e.g. "add-fifo-low:40,add-prio:20,kill:30,kill-group-high:1,list:1".
+     * An add may name its add mode and its priority, a group kill its priority, in any order.  Unnamed priorities are
+     * picked at random.
+     *
+     * @param mix the comma separated operations, each followed by its weight
+     * @return the operations
+     */
+    public static List<LoadOperation> parseMix(String mix) {
+        List<LoadOperation> operations = new ArrayList<>();
+        for (String operation : mix.split(",")) {
+            String[] nameAndWeight = operation.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Expected an operation and its weight, e.g. add-fifo:10, got " +
+                        operation);
+            }
+            operations.add(parse(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim())));
+        }
+        return operations;
+    }
+
+    private static LoadOperation parse(String name, int weight) {
+        for (Type type : new Type[]{Type.KillGroup, Type.Kill, Type.Add, Type.GetProcesses}) {
+            if (!name.equals(type.typeName) && !name.startsWith(type.typeName + "-")) {
+                continue;
+            }
+            TaskManagerService.AddMode addMode = null;
+            Priority priority = null;
+            String options = name.substring(type.typeName.length());
+            for (String option : options.isEmpty() ? new String[0] : options.substring(1).split("-")) {
+                if (type == Type.Add && isAddMode(option)) {
+                    addMode = TaskManagerService.AddMode.fromString(option);
+                } else if (type == Type.Add || type == Type.KillGroup) {
+                    priority = Priority.fromString(option);
+                } else {
+                    throw new IllegalArgumentException("Unrecognized operation " + name);
+                }
+            }
+            return new LoadOperation(type, addMode, priority, weight);
+        }
+        throw new IllegalArgumentException("Unrecognized operation " + name);
+    }
+
+    private static boolean isAddMode(String option) {
+        for (TaskManagerService.AddMode addMode : TaskManagerService.AddMode.values()) {
+            if (addMode.getModeName().equalsIgnoreCase(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the name of the operation in the mix.
+     *
+     * @return the name
+     */
+    public String getName() {
+        StringBuilder name = new StringBuilder(type.typeName);
+        if (addMode != null) {
+            name.append('-').append(addMode.getModeName());
+        }
+        if (priority != null) {
+            name.append('-').append(priority.getPriorityName());
+        }
+        return name.toString();
+    }
+}
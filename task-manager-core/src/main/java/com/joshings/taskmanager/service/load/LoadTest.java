@@ -0,0 +1,197 @@
+package com.joshings.taskmanager.service.load;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load generator which drives the task manager service directly with a weighted mix of operations.
+ * <p>
+ * In a closed loop, every thread runs the next operation as soon as the previous one returns.  With a target rate, the
+ * threads share the rate and run every operation at its scheduled time; the latency is measured from the scheduled time
+ * rather than from the actual start, so a stall of the task manager shows in the latencies of all the operations which
+ * should have run meanwhile instead of hiding them.
+ * <p>
+ * Kills pick one of the processes recently added by the load test, which may have been evicted or killed since.
+ */
+@Slf4j
+public class LoadTest {
+
+    private static final int RECENT_PROCESSES = 4096;
+    private static final long NO_PROCESS = -1;
+
+    private final TaskManagerService taskManagerService;
+    private final List<LoadOperation> operations;
+    private final int[] cumulativeWeights;
+    private final int threads;
+    private final double rate;
+    private final Duration duration;
+
+    private final AtomicLongArray recentProcessIds = new AtomicLongArray(RECENT_PROCESSES);
+    private final AtomicLong addedProcesses = new AtomicLong();
+
+    /**
+     * Instantiates a new Load test.
+     *
+     * @param taskManagerService the task manager service
+     * @param operations         the operation mix
+     * @param threads            the number of threads running the operations
+     * @param rate               the target number of operations per second of all the threads, 0 for a closed loop
+     * @param duration           the duration of the test
+     */
+    public LoadTest(TaskManagerService taskManagerService,
+                    List<LoadOperation> operations,
+                    int threads,
+                    double rate,
+                    Duration duration
+    ) {
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("The load test needs at least 1 thread");
+        }
+        if (rate < 0) {
+            throw new IllegalArgumentException("The target rate must not be negative");
+        }
+        this.taskManagerService = taskManagerService;
+        this.operations = operations;
+        this.threads = threads;
+        this.rate = rate;
+        this.duration = duration;
+
+        this.cumulativeWeights = new int[operations.size()];
+        int total = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            total += operations.get(i).getWeight();
+            cumulativeWeights[i] = total;
+        }
+        for (int i = 0; i < RECENT_PROCESSES; i++) {
+            recentProcessIds.set(i, NO_PROCESS);
+        }
+    }
+
+    /**
+     * Run the load test until its duration has elapsed.
+     *
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public LoadTestReport run() throws InterruptedException {
+        LoadTestReport report = new LoadTestReport(operations, threads, rate, taskManagerService.getMetrics());
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + duration.toNanos();
+        long intervalNanos = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            LoadTestReport.Recorder recorder = report.newRecorder();
+            // The threads are staggered so that their operations are spread over the interval.
+            long firstNanos = startNanos + intervalNanos * i / threads;
+            workers[i] = new Thread(() -> this.work(recorder, firstNanos, intervalNanos, endNanos), "load-test-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+        report.finish(System.nanoTime() - startNanos);
+        return report;
+    }
+
+    private void work(LoadTestReport.Recorder recorder, long firstNanos, long intervalNanos, long endNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long scheduledNanos = firstNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            if (intervalNanos > 0) {
+                if (scheduledNanos >= endNanos) {
+                    break;
+                }
+                if (scheduledNanos > now) {
+                    LockSupport.parkNanos(scheduledNanos - now);
+                }
+            } else if (now >= endNanos) {
+                break;
+            }
+
+            long startNanos = intervalNanos > 0 ? scheduledNanos : System.nanoTime();
+            int operation = this.pickOperation(random);
+            boolean succeeded = this.runOperation(operations.get(operation), random);
+            recorder.record(operation, succeeded, System.nanoTime() - startNanos);
+            scheduledNanos += intervalNanos;
+        }
+    }
+
+    /**
+     * Run an operation.
+     *
+     * @return false if the task manager refused the operation, e.g. a rejected add or a kill of a process which is not
+     * running anymore
+     */
+    private boolean runOperation(LoadOperation operation, ThreadLocalRandom random) {
+        try {
+            switch (operation.getType()) {
+                case Add:
+                    long processId = taskManagerService
+                            .addProcess(priority(operation, random), operation.getAddMode())
+                            .getProcessId();
+                    recentProcessIds.set((int) (addedProcesses.getAndIncrement() % RECENT_PROCESSES), processId);
+                    return true;
+                case Kill:
+                    long victim = recentProcessIds.get(random.nextInt(RECENT_PROCESSES));
+                    if (victim == NO_PROCESS) {
+                        return false;
+                    }
+                    taskManagerService.killProcess(victim);
+                    return true;
+                case KillGroup:
+                    taskManagerService.killGroup(priority(operation, random));
+                    return true;
+                case GetProcesses:
+                    taskManagerService.getProcesses();
+                    return true;
+                default:
+                    throw new IllegalArgumentException("Unrecognized operation");
+            }
+        } catch (InstantiationException | IllegalArgumentException e) {
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Load test operation {} failed", operation.getName(), e);
+            return false;
+        }
+    }
+
+    private int pickOperation(ThreadLocalRandom random) {
+        int weight = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (weight < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    private Priority priority(LoadOperation operation, ThreadLocalRandom random) {
+        if (operation.getPriority() != null) {
+            return operation.getPriority();
+        }
+        PriorityRange priorityRange = taskManagerService.getPriorityRange();
+        return priorityRange.get(random.nextInt(priorityRange.size()));
+    }
+}
@@ -0,0 +1,162 @@
+package com.joshings.taskmanager.service.load;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.metrics.LatencyHistogram;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a load test: the achieved throughput, the latencies of every operation and the admission counters
+ * of the task manager during the test.
+ */
+public class LoadTestReport {
+
+    private static final TaskManagerService.AddMode[] ADD_MODES = TaskManagerService.AddMode.values();
+
+    private final List<LoadOperation> operations;
+    private final int threads;
+    private final double rate;
+    private final TaskManagerMetrics taskManagerMetrics;
+    private final List<Recorder> recorders = new ArrayList<>();
+
+    private final long[] succeeded;
+    private final long[] failed;
+    private final LatencyHistogram[] latencies;
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    private final long[][] admissionCounters;
+
+    /**
+     * The duration of the test.
+     */
+    @Getter
+    private long elapsedNanos;
+
+    /**
+     * A per thread recorder, so that the threads do not contend on shared counters while recording.
+     */
+    final class Recorder {
+        private final long[] succeeded = new long[operations.size()];
+        private final long[] failed = new long[operations.size()];
+        private final LatencyHistogram[] latencies = histograms(operations.size());
+
+        void record(int operation, boolean success, long latencyNanos) {
+            if (success) {
+                succeeded[operation]++;
+            } else {
+                failed[operation]++;
+            }
+            latencies[operation].record(latencyNanos);
+        }
+    }
+
+    LoadTestReport(List<LoadOperation> operations, int threads, double rate, TaskManagerMetrics taskManagerMetrics) {
+        this.operations = operations;
+        this.threads = threads;
+        this.rate = rate;
+        this.taskManagerMetrics = taskManagerMetrics;
+        this.succeeded = new long[operations.size()];
+        this.failed = new long[operations.size()];
+        this.latencies = histograms(operations.size());
+        this.admissionCounters = this.readAdmissionCounters();
+    }
+
+    Recorder newRecorder() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Merge the recorders of the threads, which must have stopped, and take the admission counters.
+     */
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < operations.size(); i++) {
+                succeeded[i] += recorder.succeeded[i];
+                failed[i] += recorder.failed[i];
+                latencies[i].add(recorder.latencies[i]);
+                totalLatency.add(recorder.latencies[i]);
+            }
+        }
+        long[][] counters = this.readAdmissionCounters();
+        for (int mode = 0; mode < ADD_MODES.length; mode++) {
+            for (int counter = 0; counter < counters[mode].length; counter++) {
+                admissionCounters[mode][counter] = counters[mode][counter] - admissionCounters[mode][counter];
+            }
+        }
+    }
+
+    /**
+     * Gets the number of operations run.
+     *
+     * @return the operation count
+     */
+    public long getOperationCount() {
+        return totalLatency.getCount();
+    }
+
+    /**
+     * Gets the achieved throughput.
+     *
+     * @return the operations per second
+     */
+    public double getOperationsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getOperationCount() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Print the report.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Load test: %d threads, %s, %.1fs%n",
+                threads,
+                rate > 0 ? String.format("target %.0f ops/s", rate) : "closed loop",
+                elapsedNanos / 1e9));
+        report.append(String.format("Operations %d: %.1f ops/s%n", getOperationCount(), getOperationsPerSecond()));
+        for (int i = 0; i < operations.size(); i++) {
+            report.append(String.format("  %-20s ok %10d  failed %10d  %.1f ops/s  latency %s%n",
+                    operations.get(i).getName(),
+                    succeeded[i],
+                    failed[i],
+                    elapsedNanos == 0 ? 0 : latencies[i].getCount() * 1e9 / elapsedNanos,
+                    TaskManagerMetrics.format(latencies[i])));
+        }
+        report.append(String.format("  %-20s latency %s%n", "all", TaskManagerMetrics.format(totalLatency)));
+
+        report.append("Admissions during the test\n");
+        for (TaskManagerService.AddMode addMode : ADD_MODES) {
+            long[] counters = admissionCounters[addMode.ordinal()];
+            report.append(String.format("  %-5s admitted %10d  rejected %10d  evicted %10d%n",
+                    addMode.getModeName(), counters[0], counters[1], counters[2]));
+        }
+        return report.toString().stripTrailing();
+    }
+
+    private long[][] readAdmissionCounters() {
+        long[][] counters = new long[ADD_MODES.length][];
+        for (TaskManagerService.AddMode addMode : ADD_MODES) {
+            counters[addMode.ordinal()] = new long[]{
+                    taskManagerMetrics.getAdmissions(addMode),
+                    taskManagerMetrics.getRejections(addMode),
+                    taskManagerMetrics.getEvictions(addMode)
+            };
+        }
+        return counters;
+    }
+
+    private static LatencyHistogram[] histograms(int size) {
+        LatencyHistogram[] histograms = new LatencyHistogram[size];
+        for (int i = 0; i < size; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
@@ -0,0 +1,122 @@
+package com.joshings.taskmanager.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, allocation-free latency histogram in the style of HdrHistogram.
+ * Values are counted in log-linear buckets: every power of two is split into 32 sub-buckets, so a recorded value is
+ * reported with a relative error below 1/32 (about 3%).  Recording is a couple of atomic increments.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record a value.
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(bucketIndex(v));
+        totalCount.incrementAndGet();
+        long max;
+        while (v > (max = maxValue.get()) && !maxValue.compareAndSet(max, v)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Record the time elapsed since the given {@link System#nanoTime()}.
+     *
+     * @param startNanos the start nanos
+     */
+    public void recordSince(long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add the values recorded by another histogram, e.g. to merge per thread histograms.
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        long otherMax = other.maxValue.get();
+        long max;
+        while (otherMax > (max = maxValue.get()) && !maxValue.compareAndSet(max, otherMax)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the max
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Gets the value at the given percentile: the highest value equivalent to the bucket holding that percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
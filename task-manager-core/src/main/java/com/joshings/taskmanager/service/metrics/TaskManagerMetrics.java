@@ -0,0 +1,292 @@
+package com.joshings.taskmanager.service.metrics;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * The admission, eviction and kill counters and latency histograms of the task manager.
+ * All the counters and histograms are allocated up front, recording never allocates.
+ */
+public class TaskManagerMetrics {
+
+    /**
+     * The ways processes get killed.
+     */
+    public enum KillPath {
+        /**
+         * A single process was killed.
+         */
+        Process,
+        /**
+         * A group of processes with the same priority was killed.
+         */
+        Group,
+        /**
+         * All the processes were killed.
+         */
+        All,
+        /**
+         * The processes matching a filter were killed.
+         */
+        Where,
+        /**
+         * A batch of processes was killed by ID.
+         */
+        Batch,
+        /**
+         * The processes whose time-to-live elapsed were killed.
+         */
+        Expired,
+        /**
+         * The processes whose command exited on its own were removed.
+         */
+        Exited
+    }
+
+    /**
+     * The calls to the process store.
+     */
+    public enum StoreOperation {
+        /**
+         * Load all the processes at startup.
+         */
+        LoadAll,
+        /**
+         * Reserve a block of process IDs.
+         */
+        ReserveProcessIdBlock,
+        /**
+         * Save one process.
+         */
+        Save,
+        /**
+         * Save a batch of processes.
+         */
+        SaveAll,
+        /**
+         * Delete processes.
+         */
+        DeleteAll,
+        /**
+         * Delete the processes matching a filter.
+         */
+        DeleteWhere,
+        /**
+         * Replace all the processes with restored ones.
+         */
+        ReplaceAll
+    }
+
+    private static final int ADD_MODES = TaskManagerService.AddMode.values().length;
+
+    private final LongAdder[] admissions = counters(ADD_MODES);
+    private final LongAdder[] rejections = counters(ADD_MODES);
+    private final LongAdder[] evictions = counters(ADD_MODES);
+    private final LatencyHistogram[] admissionLatencies = histograms(ADD_MODES);
+    private final LatencyHistogram batchAdmissionLatency = new LatencyHistogram();
+
+    private final LongAdder[] kills = counters(KillPath.values().length);
+    private final LongAdder[] killedProcesses = counters(KillPath.values().length);
+
+    private final LatencyHistogram[] storeLatencies = histograms(StoreOperation.values().length);
+
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    /**
+     * Record an admitted process.
+     *
+     * @param addMode    the add mode
+     * @param evicted    the number of processes evicted to make room for it
+     * @param startNanos the {@link System#nanoTime()} the admission started at
+     */
+    public void recordAdmission(TaskManagerService.AddMode addMode, long evicted, long startNanos) {
+        admissions[addMode.ordinal()].increment();
+        if (evicted > 0) {
+            evictions[addMode.ordinal()].add(evicted);
+        }
+        admissionLatencies[addMode.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * Record a rejected process.
+     *
+     * @param addMode    the add mode
+     * @param startNanos the {@link System#nanoTime()} the admission started at
+     */
+    public void recordRejection(TaskManagerService.AddMode addMode, long startNanos) {
+        rejections[addMode.ordinal()].increment();
+        admissionLatencies[addMode.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * Record a process rejected after processes were evicted to make room for it, e.g. because its command could not
+     * be started.
+     *
+     * @param addMode    the add mode
+     * @param evicted    the number of processes evicted to make room for it
+     * @param startNanos the {@link System#nanoTime()} the admission started at
+     */
+    public void recordRejection(TaskManagerService.AddMode addMode, long evicted, long startNanos) {
+        if (evicted > 0) {
+            evictions[addMode.ordinal()].add(evicted);
+        }
+        this.recordRejection(addMode, startNanos);
+    }
+
+    /**
+     * Record the outcome of a batch admission.
+     *
+     * @param addMode    the add mode
+     * @param admitted   the number of admitted processes
+     * @param rejected   the number of rejected processes
+     * @param evicted    the number of evicted processes
+     * @param startNanos the {@link System#nanoTime()} the batch admission started at
+     */
+    public void recordBatchAdmission(TaskManagerService.AddMode addMode, long admitted, long rejected, long evicted,
+                                     long startNanos) {
+        admissions[addMode.ordinal()].add(admitted);
+        rejections[addMode.ordinal()].add(rejected);
+        evictions[addMode.ordinal()].add(evicted);
+        batchAdmissionLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Record a kill.
+     *
+     * @param killPath  the kill path
+     * @param processes the number of killed processes
+     */
+    public void recordKill(KillPath killPath, long processes) {
+        kills[killPath.ordinal()].increment();
+        killedProcesses[killPath.ordinal()].add(processes);
+    }
+
+    /**
+     * Report the number of processes waiting for a free slot in the Queue add mode.
+     * Their wait times are the admission latencies of the Queue add mode.
+     *
+     * @param queueDepth the queue depth
+     */
+    public void setQueueDepth(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Gets the number of admitted processes.
+     *
+     * @param addMode the add mode
+     * @return the admission count
+     */
+    public long getAdmissions(TaskManagerService.AddMode addMode) {
+        return admissions[addMode.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of rejected processes.
+     *
+     * @param addMode the add mode
+     * @return the rejection count
+     */
+    public long getRejections(TaskManagerService.AddMode addMode) {
+        return rejections[addMode.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of processes evicted to make room for new processes.
+     *
+     * @param addMode the add mode of the new processes
+     * @return the eviction count
+     */
+    public long getEvictions(TaskManagerService.AddMode addMode) {
+        return evictions[addMode.ordinal()].sum();
+    }
+
+    /**
+     * Gets the latency histogram of the batch admissions, whose count is the number of batches.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getBatchAdmissionLatency() {
+        return batchAdmissionLatency;
+    }
+
+    /**
+     * Gets the latency histogram of a process store call.
+     *
+     * @param storeOperation the store operation
+     * @return the latency histogram
+     */
+    public LatencyHistogram getStoreLatency(StoreOperation storeOperation) {
+        return storeLatencies[storeOperation.ordinal()];
+    }
+
+    /**
+     * Print the counters and the latency percentiles.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Admissions\n");
+        for (TaskManagerService.AddMode addMode : TaskManagerService.AddMode.values()) {
+            int i = addMode.ordinal();
+            report.append(String.format("  %-5s admitted %10d  rejected %10d  evicted %10d  latency %s%n",
+                    addMode.getModeName(), admissions[i].sum(), rejections[i].sum(), evictions[i].sum(),
+                    format(admissionLatencies[i])));
+        }
+        report.append(String.format("  batch latency %s%n", format(batchAdmissionLatency)));
+        report.append(String.format("  queue depth %10d%n", queueDepth.getAsInt()));
+
+        report.append("Kills\n");
+        for (KillPath killPath : KillPath.values()) {
+            int i = killPath.ordinal();
+            report.append(String.format("  %-7s calls %10d  processes %10d%n",
+                    killPath, kills[i].sum(), killedProcesses[i].sum()));
+        }
+
+        report.append("Process store\n");
+        for (StoreOperation storeOperation : StoreOperation.values()) {
+            report.append(String.format("  %-21s latency %s%n",
+                    storeOperation, format(storeLatencies[storeOperation.ordinal()])));
+        }
+        return report.toString().stripTrailing();
+    }
+
+    /**
+     * Format the count and the latency percentiles of a histogram.
+     *
+     * @param histogram the histogram
+     * @return the formatted histogram
+     */
+    public static String format(LatencyHistogram histogram) {
+        return String.format("count %10d  p50 %9.1fus  p99 %9.1fus  p999 %9.1fus  max %9.1fus",
+                histogram.getCount(),
+                micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private static LongAdder[] counters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static LatencyHistogram[] histograms(int size) {
+        LatencyHistogram[] histograms = new LatencyHistogram[size];
+        for (int i = 0; i < size; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
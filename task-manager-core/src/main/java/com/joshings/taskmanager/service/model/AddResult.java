@@ -0,0 +1,106 @@
+package com.joshings.taskmanager.service.model;
+
+import lombok.Getter;
+
+import java.util.Optional;
+
+/**
+ * The result of adding one process of a batch.
+ */
+public final class AddResult {
+
+    /**
+     * The outcome of adding a process.
+     */
+    public enum Status {
+        /**
+         * The process was started.
+         */
+        Admitted,
+        /**
+         * The process was not started.
+         */
+        Rejected
+    }
+
+    @Getter
+    private final Status status;
+
+    private final Process process;
+
+    private final Process evictedProcess;
+
+    private final String message;
+
+    private AddResult(Status status, Process process, Process evictedProcess, String message) {
+        this.status = status;
+        this.process = process;
+        this.evictedProcess = evictedProcess;
+        this.message = message;
+    }
+
+    /**
+     * The process was started, possibly evicting another one.
+     *
+     * @param process        the started process
+     * @param evictedProcess the evicted process, or null
+     * @return the add result
+     */
+    public static AddResult admitted(Process process, Process evictedProcess) {
+        return new AddResult(Status.Admitted, process, evictedProcess, null);
+    }
+
+    /**
+     * The process was not started.
+     *
+     * @param message the reason
+     * @return the add result
+     */
+    public static AddResult rejected(String message) {
+        return new AddResult(Status.Rejected, null, null, message);
+    }
+
+    /**
+     * Gets the started process.
+     *
+     * @return the process, if admitted
+     */
+    public Optional<Process> getProcess() {
+        return Optional.ofNullable(process);
+    }
+
+    /**
+     * Gets the process which was evicted to make room for the started process.
+     *
+     * @return the evicted process
+     */
+    public Optional<Process> getEvictedProcess() {
+        return Optional.ofNullable(evictedProcess);
+    }
+
+    /**
+     * Gets the id of the process which was evicted to make room for the started process.
+     *
+     * @return the evicted process id
+     */
+    public Optional<Long> getEvictedProcessId() {
+        return this.getEvictedProcess().map(Process::getProcessId);
+    }
+
+    /**
+     * Gets the reason why the process was not started.
+     *
+     * @return the message, if rejected
+     */
+    public Optional<String> getMessage() {
+        return Optional.ofNullable(message);
+    }
+
+    public String toString() {
+        if (status == Status.Rejected) {
+            return message;
+        }
+        return "Created process with ID " + process.getProcessId() +
+                (evictedProcess == null ? "" : ", killed process with ID " + evictedProcess.getProcessId());
+    }
+}
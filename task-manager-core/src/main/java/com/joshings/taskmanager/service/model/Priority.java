@@ -0,0 +1,145 @@
+package com.joshings.taskmanager.service.model;
+
+import java.util.List;
+
+/**
+ * The process priorities: non-negative numbers, the higher the more important.
+ * The historical priorities low, medium and high remain as aliases of 1, 2 and 3.
+ */
+public final class Priority implements Comparable<Priority> {
+
+    /**
+     * Low priority.
+     */
+    public static final Priority Low = new Priority(1, "low");
+    /**
+     * Medium priority.
+     */
+    public static final Priority Medium = new Priority(2, "medium");
+    /**
+     * High priority.
+     */
+    public static final Priority High = new Priority(3, "high");
+
+    private static final List<Priority> ALIASES = List.of(Low, Medium, High);
+
+    /**
+     * The priorities with the lowest values, which are shared instead of being allocated for every process.
+     */
+    private static final Priority[] BY_VALUE = new Priority[1024];
+
+    static {
+        for (int i = 0; i < BY_VALUE.length; i++) {
+            BY_VALUE[i] = new Priority(i, null);
+        }
+        for (Priority alias : ALIASES) {
+            BY_VALUE[alias.priorityValue] = alias;
+        }
+    }
+
+    private final int priorityValue;
+    private final String priorityName;
+
+    private Priority(int priorityValue, String priorityName) {
+        this.priorityValue = priorityValue;
+        this.priorityName = priorityName;
+    }
+
+    /**
+     * Gets the priorities which have a name.
+     *
+     * @return the named priorities, from the lowest to the highest
+     */
+    public static List<Priority> aliases() {
+        return ALIASES;
+    }
+
+    /**
+     * Gets priority value.
+     *
+     * @return the priority value
+     */
+    public long getPriorityValue() {
+        return priorityValue;
+    }
+
+    /**
+     * Gets priority name: its alias, or else its value.
+     *
+     * @return the priority name
+     */
+    public String getPriorityName() {
+        return priorityName != null ? priorityName : Integer.toString(priorityValue);
+    }
+
+    /**
+     * Get the priority from the priority name, which is either an alias or a value.
+     *
+     * @param priorityName the priority name
+     * @return the priority
+     */
+    public static Priority fromString(String priorityName) {
+        for (Priority alias : ALIASES) {
+            if (alias.priorityName.equalsIgnoreCase(priorityName)) {
+                return alias;
+            }
+        }
+        try {
+            return fromValue(Integer.parseInt(priorityName.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unrecognized priority name");
+        }
+    }
+
+    /**
+     * Get the priority from the priority value.
+     *
+     * @param priorityValue the priority value
+     * @return the priority
+     */
+    public static Priority fromLong(Long priorityValue) {
+        return fromValue(priorityValue);
+    }
+
+    /**
+     * Get the priority from the priority value, without allocating the low priorities.
+     *
+     * @param priorityValue the priority value
+     * @return the priority
+     */
+    public static Priority fromValue(long priorityValue) {
+        if (priorityValue < 0 || priorityValue > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unrecognized priority value");
+        }
+        return priorityValue < BY_VALUE.length ?
+                BY_VALUE[(int) priorityValue] :
+                new Priority((int) priorityValue, null);
+    }
+
+    @Override
+    public int compareTo(Priority other) {
+        return Integer.compare(priorityValue, other.priorityValue);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Priority && ((Priority) other).priorityValue == priorityValue;
+    }
+
+    @Override
+    public int hashCode() {
+        return priorityValue;
+    }
+
+    /**
+     * The alias of the priority, capitalized, or else its value.
+     *
+     * @return the priority
+     */
+    @Override
+    public String toString() {
+        return priorityName == null ?
+                Integer.toString(priorityValue) :
+                Character.toUpperCase(priorityName.charAt(0)) + priorityName.substring(1);
+    }
+}
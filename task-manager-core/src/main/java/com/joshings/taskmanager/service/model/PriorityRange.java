@@ -0,0 +1,104 @@
+package com.joshings.taskmanager.service.model;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The range of the priorities a task manager accepts, both ends included.
+ * The process table keeps one bucket per priority of the range, so the range is bounded.
+ */
+@Getter
+public final class PriorityRange {
+
+    /**
+     * The maximum number of priorities in a range.
+     */
+    public static final int MAX_SIZE = 1 << 16;
+
+    private final Priority lowest;
+    private final Priority highest;
+
+    /**
+     * Instantiates a new Priority range.
+     *
+     * @param lowest  the lowest priority value
+     * @param highest the highest priority value
+     */
+    public PriorityRange(long lowest, long highest) {
+        if (highest < lowest || highest - lowest >= MAX_SIZE) {
+            throw new IllegalArgumentException("A priority range must hold between 1 and " + MAX_SIZE + " priorities");
+        }
+        this.lowest = Priority.fromValue(lowest);
+        this.highest = Priority.fromValue(highest);
+    }
+
+    /**
+     * Gets the range of the named priorities, low to high.
+     *
+     * @return the priority range
+     */
+    public static PriorityRange ofAliases() {
+        List<Priority> aliases = Priority.aliases();
+        return new PriorityRange(
+                aliases.get(0).getPriorityValue(), aliases.get(aliases.size() - 1).getPriorityValue());
+    }
+
+    /**
+     * Gets the number of priorities of the range.
+     *
+     * @return the size
+     */
+    public int size() {
+        return (int) (highest.getPriorityValue() - lowest.getPriorityValue()) + 1;
+    }
+
+    /**
+     * Whether the priority is within the range.
+     *
+     * @param priority the priority
+     * @return true if the priority is within the range
+     */
+    public boolean contains(Priority priority) {
+        return priority.compareTo(lowest) >= 0 && priority.compareTo(highest) <= 0;
+    }
+
+    /**
+     * Gets the position of a priority within the range, 0 for the lowest priority.
+     *
+     * @param priority the priority, within the range
+     * @return the index
+     */
+    public int indexOf(Priority priority) {
+        return (int) (priority.getPriorityValue() - lowest.getPriorityValue());
+    }
+
+    /**
+     * Gets the priority at a position within the range.
+     *
+     * @param index the index, 0 for the lowest priority
+     * @return the priority
+     */
+    public Priority get(int index) {
+        return Priority.fromValue(lowest.getPriorityValue() + index);
+    }
+
+    /**
+     * Check that a priority is within the range.
+     *
+     * @param priority the priority
+     * @return the priority
+     * @throws IllegalArgumentException if the priority is out of the range
+     */
+    public Priority check(Priority priority) {
+        if (!this.contains(priority)) {
+            throw new IllegalArgumentException("Priority " + priority.getPriorityName() + " is out of the range " + this);
+        }
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return lowest.getPriorityValue() + ".." + highest.getPriorityValue();
+    }
+}
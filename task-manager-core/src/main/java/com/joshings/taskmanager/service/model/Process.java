@@ -10,6 +10,11 @@ import java.sql.Timestamp;
  */
 public final class Process {
 
+    /**
+     * The weight of a process which does not say how much of the capacity it uses.
+     */
+    public static final long DEFAULT_WEIGHT = 1;
+
     @Getter
     private final Long processId;
 
@@ -20,16 +25,35 @@ public final class Process {
     private final Timestamp startTime;
 
     /**
-     * Instantiates a new Process.
+     * The share of the capacity the process uses, in resource units, e.g. CPU or memory units.
+     */
+    @Getter
+    private final long weight;
+
+    /**
+     * Instantiates a new Process with the default weight.
      *
      * @param processId the process id
      * @param priority  the priority
      * @param startTime the start time
      */
     public Process(Long processId, Priority priority, Timestamp startTime) {
+        this(processId, priority, startTime, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * Instantiates a new Process.
+     *
+     * @param processId the process id
+     * @param priority  the priority
+     * @param startTime the start time
+     * @param weight    the weight, at least 1
+     */
+    public Process(Long processId, Priority priority, Timestamp startTime, long weight) {
         this.processId = processId;
         this.priority = priority;
         this.startTime = startTime;
+        this.weight = weight;
     }
 
     /**
@@ -42,6 +66,7 @@ public final class Process {
     }
 
     public String toString() {
-        return String.format("Process %5d - prio %6s - started at %s", processId, priority, startTime.toString());
+        String process = String.format("Process %5d - prio %6s - started at %s", processId, priority, startTime);
+        return weight == DEFAULT_WEIGHT ? process : process + " - weight " + weight;
     }
 }
@@ -0,0 +1,71 @@
+package com.joshings.taskmanager.service.model;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import lombok.Getter;
+
+/**
+ * A keyset cursor into a sorted list of processes: a page starts right after the process the cursor points at.
+ * Processes are sorted by (priority, process id) in Prio mode, and by process id otherwise, because process IDs are
+ * allocated in start order.
+ */
+public final class ProcessCursor {
+
+    @Getter
+    private final TaskManagerService.SortMode sortMode;
+
+    /**
+     * The priority of the last process of the previous page, only set in Prio mode.
+     */
+    @Getter
+    private final Priority priority;
+
+    @Getter
+    private final long processId;
+
+    private ProcessCursor(TaskManagerService.SortMode sortMode, Priority priority, long processId) {
+        this.sortMode = sortMode;
+        this.priority = priority;
+        this.processId = processId;
+    }
+
+    /**
+     * Create the cursor pointing at the given process.
+     *
+     * @param sortMode the sort mode
+     * @param process  the last process of a page
+     * @return the process cursor
+     */
+    public static ProcessCursor after(TaskManagerService.SortMode sortMode, Process process) {
+        return new ProcessCursor(
+                sortMode,
+                sortMode == TaskManagerService.SortMode.Prio ? process.getPriority() : null,
+                process.getProcessId()
+        );
+    }
+
+    /**
+     * Parse a cursor: "priority:pid" in Prio mode, "pid" otherwise.
+     *
+     * @param sortMode the sort mode
+     * @param cursor   the cursor
+     * @return the process cursor
+     */
+    public static ProcessCursor fromString(TaskManagerService.SortMode sortMode, String cursor) {
+        try {
+            if (sortMode == TaskManagerService.SortMode.Prio) {
+                String[] parts = cursor.split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Unrecognized cursor, expected priority:pid");
+                }
+                return new ProcessCursor(sortMode, Priority.fromString(parts[0]), Long.parseLong(parts[1]));
+            }
+            return new ProcessCursor(sortMode, null, Long.parseLong(cursor));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unrecognized cursor", e);
+        }
+    }
+
+    public String toString() {
+        return priority == null ? Long.toString(processId) : priority.getPriorityName() + ":" + processId;
+    }
+}
@@ -0,0 +1,100 @@
+package com.joshings.taskmanager.service.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A predicate over processes, used to kill all the matching processes at once.
+ * Every criterion is optional, an empty filter matches all the processes.
+ */
+@Builder
+public final class ProcessFilter {
+
+    /**
+     * The priorities, all of them if empty.
+     */
+    @Singular
+    private final Set<Priority> priorities;
+
+    /**
+     * The lowest matching process id, inclusive.
+     */
+    @Getter
+    private final Long minProcessId;
+
+    /**
+     * The highest matching process id, inclusive.
+     */
+    @Getter
+    private final Long maxProcessId;
+
+    /**
+     * Only match processes started before this time.
+     */
+    @Getter
+    private final Timestamp startedBefore;
+
+    /**
+     * Only match processes started after this time.
+     */
+    @Getter
+    private final Timestamp startedAfter;
+
+    /**
+     * A filter matching all the processes with the given priority.
+     *
+     * @param priority the priority
+     * @return the process filter
+     */
+    public static ProcessFilter ofPriority(Priority priority) {
+        return ProcessFilter.builder().priority(priority).build();
+    }
+
+    /**
+     * A filter matching all the processes.
+     *
+     * @return the process filter
+     */
+    public static ProcessFilter all() {
+        return ProcessFilter.builder().build();
+    }
+
+    /**
+     * Gets the matching priorities, in priority order.
+     *
+     * @return the priorities, empty for all the priorities
+     */
+    public SortedSet<Priority> getPriorities() {
+        return new TreeSet<>(priorities);
+    }
+
+    /**
+     * Whether the filter matches all the processes.
+     *
+     * @return true if no criterion is set
+     */
+    public boolean matchesAll() {
+        return priorities.isEmpty() && minProcessId == null && maxProcessId == null &&
+                startedBefore == null && startedAfter == null;
+    }
+
+    /**
+     * Whether the filter matches the given process.
+     *
+     * @param process the process
+     * @return true if the process matches
+     */
+    public boolean matches(Process process) {
+        return (priorities.isEmpty() || priorities.contains(process.getPriority())) &&
+                (minProcessId == null || process.getProcessId() >= minProcessId) &&
+                (maxProcessId == null || process.getProcessId() <= maxProcessId) &&
+                (startedBefore == null || process.getStartTime().before(startedBefore)) &&
+                (startedAfter == null || process.getStartTime().after(startedAfter));
+    }
+}
@@ -0,0 +1,85 @@
+package com.joshings.taskmanager.service.partition;
+
+import java.util.*;
+
+/**
+ * Merge the sorted results of the partitions into one sorted result.
+ */
+public final class PartitionMerge {
+
+    private PartitionMerge() {
+    }
+
+    /**
+     * Merge sorted lists.
+     *
+     * @param <T>        the element type
+     * @param lists      the lists, each sorted by the comparator
+     * @param comparator the comparator
+     * @param limit      the maximum number of elements
+     * @return the merged list
+     */
+    public static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> comparator, int limit) {
+        List<Iterator<T>> iterators = new ArrayList<>(lists.size());
+        int size = 0;
+        for (List<T> list : lists) {
+            iterators.add(list.iterator());
+            size += list.size();
+        }
+        List<T> merged = new ArrayList<>(Math.min(size, limit));
+        Iterator<T> iterator = merge(iterators, comparator);
+        while (merged.size() < limit && iterator.hasNext()) {
+            merged.add(iterator.next());
+        }
+        return merged;
+    }
+
+    /**
+     * Lazily merge sorted iterators.
+     *
+     * @param <T>        the element type
+     * @param iterators  the iterators, each sorted by the comparator
+     * @param comparator the comparator
+     * @return the merged iterator
+     */
+    public static <T> Iterator<T> merge(List<Iterator<T>> iterators, Comparator<? super T> comparator) {
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(
+                Math.max(1, iterators.size()),
+                (left, right) -> comparator.compare(left.element, right.element)
+        );
+        for (Iterator<T> iterator : iterators) {
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator.next(), iterator));
+            }
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Head<T> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.iterator.hasNext()) {
+                    heads.add(new Head<>(head.iterator.next(), head.iterator));
+                }
+                return head.element;
+            }
+        };
+    }
+
+    private static final class Head<T> {
+        private final T element;
+        private final Iterator<T> iterator;
+
+        private Head(T element, Iterator<T> iterator) {
+            this.element = element;
+            this.iterator = iterator;
+        }
+    }
+}
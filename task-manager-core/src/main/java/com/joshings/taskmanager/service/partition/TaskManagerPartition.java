@@ -0,0 +1,72 @@
+package com.joshings.taskmanager.service.partition;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.admission.AdmissionController;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.store.ProcessIdAllocator;
+import com.joshings.taskmanager.service.store.ProcessStore;
+import com.joshings.taskmanager.service.store.ProcessTable;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * An independent share of the task manager: its own process table, capacity, add mode and process store.
+ */
+public class TaskManagerPartition implements AutoCloseable {
+
+    @Getter
+    private final int partition;
+
+    @Getter
+    private final ProcessTable processTable;
+
+    @Getter
+    private final AdmissionController admissionController;
+
+    /**
+     * The add mode of the processes added without an explicit add mode.
+     */
+    @Getter
+    private final TaskManagerService.AddMode addMode;
+
+    private final ProcessStore processStore;
+
+    /**
+     * Instantiates a new Task manager partition and loads its processes from its store.
+     *
+     * @param partition      the partition
+     * @param partitionCount the number of partitions
+     * @param maxProcesses   the maximum number of processes running in the partition
+     * @param addMode        the add mode of the processes added without an explicit add mode
+     * @param queueTimeout   the maximum time a process added in the Queue add mode waits for a free slot
+     * @param priorityRange  the priorities the partition accepts
+     * @param processStore   the process store of the partition, which is closed with the partition
+     */
+    public TaskManagerPartition(int partition,
+                                int partitionCount,
+                                long maxProcesses,
+                                TaskManagerService.AddMode addMode,
+                                Duration queueTimeout,
+                                PriorityRange priorityRange,
+                                ProcessStore processStore
+    ) {
+        this.partition = partition;
+        this.addMode = addMode;
+        this.processStore = processStore;
+        this.processTable = new ProcessTable(
+                processStore,
+                new ProcessIdAllocator(processStore, partition, partitionCount),
+                priorityRange
+        );
+        this.admissionController = new AdmissionController(processTable, maxProcesses, queueTimeout);
+    }
+
+    /**
+     * Close the process store of the partition, after writing the pending changes.
+     */
+    @Override
+    public void close() {
+        processStore.close();
+    }
+}
@@ -0,0 +1,518 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A process store which appends every change to a memory-mapped journal file.
+ * <p>
+ * A record is framed as {@code [int length][byte type][payload][int crc32]}.  Appending only copies the record into the
+ * mapped file, then waits for the journal flusher: the flusher forces all the records appended meanwhile to disk with
+ * one sync, so concurrent writers share the cost of a sync (group commit).  At startup the journal is replayed up to
+ * the first incomplete or corrupt record, and the rest of the journal is zeroed.  When the journal grows much bigger
+ * than its live processes, it is compacted into a new journal holding one record per live process, which atomically
+ * replaces the old one.
+ */
+@Slf4j
+public class JournalProcessStore implements ProcessStore {
+
+    private static final int MAGIC = 0x544d4a31;
+    private static final int VERSION = 3;
+
+    /**
+     * The previous versions, which are rewritten in the current version when opened: the priorities were bytes, then
+     * the processes had no weight.
+     */
+    private static final int BYTE_PRIORITY_VERSION = 1;
+    private static final int UNWEIGHTED_VERSION = 2;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte DELETE_ALL = 3;
+    private static final byte PROCESS_ID_BLOCK = 4;
+
+    private static final int FRAME_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+    private static final int SAVE_PAYLOAD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    /**
+     * The journal is never compacted below this size.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private final Path path;
+    private final long initialSize;
+
+    /**
+     * Guards the mapped journal and the live processes.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer journal;
+    private final TreeMap<Long, Process> liveProcesses = new TreeMap<>();
+    private long nextProcessIdBlock = 1;
+
+    /**
+     * The number of appended records, and the number of records which are known to be on disk.
+     */
+    private volatile long appendedRecords;
+    private long durableRecords;
+    private final Object durability = new Object();
+    private boolean closed;
+
+    private final Thread flusher;
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * Open a journal, creating it if it does not exist yet, and replay it.
+     *
+     * @param path               the journal file
+     * @param initialSize        the initial size of the journal file, which is doubled whenever it is full
+     * @param compactionInterval the interval between two checks for compaction
+     */
+    public JournalProcessStore(Path path, long initialSize, Duration compactionInterval) {
+        this.path = path;
+        this.initialSize = Math.max(initialSize, MIN_COMPACTION_SIZE);
+        try {
+            this.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the process journal " + path, e);
+        }
+
+        this.flusher = new Thread(this::flushLoop, "process-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void loadAll(Consumer<Process> consumer) {
+        List<Process> processes;
+        appendLock.lock();
+        try {
+            processes = new ArrayList<>(liveProcesses.values());
+        } finally {
+            appendLock.unlock();
+        }
+        processes.forEach(consumer);
+    }
+
+    @Override
+    public long reserveProcessIdBlock() {
+        long processIdBlock;
+        long record;
+        appendLock.lock();
+        try {
+            processIdBlock = nextProcessIdBlock;
+            nextProcessIdBlock += PROCESS_ID_BLOCK_SIZE;
+            this.ensureCapacity(FRAME_SIZE + Long.BYTES);
+            int start = this.beginRecord(PROCESS_ID_BLOCK);
+            journal.putLong(nextProcessIdBlock);
+            record = this.endRecord(start);
+        } finally {
+            appendLock.unlock();
+        }
+        this.awaitDurable(record);
+        return processIdBlock;
+    }
+
+    @Override
+    public void skipProcessIdBlocks(long processIdBlock) {
+        long record;
+        appendLock.lock();
+        try {
+            if (processIdBlock <= nextProcessIdBlock) {
+                return;
+            }
+            nextProcessIdBlock = processIdBlock;
+            this.ensureCapacity(FRAME_SIZE + Long.BYTES);
+            int start = this.beginRecord(PROCESS_ID_BLOCK);
+            journal.putLong(nextProcessIdBlock);
+            record = this.endRecord(start);
+        } finally {
+            appendLock.unlock();
+        }
+        this.awaitDurable(record);
+    }
+
+    @Override
+    public void save(Process process) {
+        this.saveAll(Collections.singletonList(process));
+    }
+
+    @Override
+    public void saveAll(Collection<Process> processes) {
+        long record = 0;
+        appendLock.lock();
+        try {
+            this.ensureCapacity((long) processes.size() * (FRAME_SIZE + SAVE_PAYLOAD_SIZE));
+            for (Process process : processes) {
+                record = this.appendSave(process);
+                liveProcesses.put(process.getProcessId(), process);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        this.awaitDurable(record);
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> processIds) {
+        long record;
+        appendLock.lock();
+        try {
+            this.ensureCapacity(FRAME_SIZE + Integer.BYTES + (long) processIds.size() * Long.BYTES);
+            int start = this.beginRecord(DELETE);
+            journal.putInt(processIds.size());
+            for (Long processId : processIds) {
+                journal.putLong(processId);
+                liveProcesses.remove(processId);
+            }
+            record = this.endRecord(start);
+        } finally {
+            appendLock.unlock();
+        }
+        this.awaitDurable(record);
+    }
+
+    /**
+     * The journal has no set-based record, the processes matching the filter are recorded as one delete record.
+     *
+     * @param filter the filter
+     */
+    @Override
+    public void deleteWhere(ProcessFilter filter) {
+        List<Long> processIds = new ArrayList<>();
+        appendLock.lock();
+        try {
+            NavigableMap<Long, Process> range = liveProcesses.subMap(
+                    filter.getMinProcessId() == null ? Long.MIN_VALUE : filter.getMinProcessId(), true,
+                    filter.getMaxProcessId() == null ? Long.MAX_VALUE : filter.getMaxProcessId(), true
+            );
+            for (Process process : range.values()) {
+                if (filter.matches(process)) {
+                    processIds.add(process.getProcessId());
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        if (!processIds.isEmpty()) {
+            this.deleteAll(processIds);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        long record;
+        appendLock.lock();
+        try {
+            this.ensureCapacity(FRAME_SIZE);
+            record = this.endRecord(this.beginRecord(DELETE_ALL));
+            liveProcesses.clear();
+        } finally {
+            appendLock.unlock();
+        }
+        this.awaitDurable(record);
+    }
+
+    /**
+     * Rewrite the journal with one record per live process, if it is more than twice as big as needed.
+     */
+    public void compactIfNeeded() {
+        appendLock.lock();
+        try {
+            long liveSize = this.liveSize();
+            if (journal.position() > MIN_COMPACTION_SIZE && journal.position() > 2 * liveSize) {
+                this.compact(liveSize);
+            }
+        } catch (IOException e) {
+            log.error("Could not compact the process journal " + path, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Sync the journal, stop the background threads and close the journal file.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        appendLock.lock();
+        try {
+            synchronized (durability) {
+                journal.force();
+                durableRecords = appendedRecords;
+                closed = true;
+                durability.notifyAll();
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the process journal " + path, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        boolean exists = Files.exists(path);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), initialSize));
+
+        if (!exists || journal.getInt(0) == 0) {
+            journal.putInt(MAGIC).putInt(VERSION);
+            return;
+        }
+        int magic = journal.getInt();
+        int version = journal.getInt();
+        if (magic != MAGIC || version < BYTE_PRIORITY_VERSION || version > VERSION) {
+            throw new IOException("Not a process journal, or unsupported version");
+        }
+        this.replay(version);
+        if (version != VERSION) {
+            this.compact(this.liveSize());
+        }
+    }
+
+    /**
+     * Apply the records to the live processes, and leave the journal positioned after the last valid record.
+     */
+    private void replay(int version) {
+        CRC32 crc = new CRC32();
+        while (journal.remaining() >= FRAME_SIZE) {
+            int start = journal.position();
+            int length = journal.getInt();
+            if (length == 0) {
+                journal.position(start);
+                break;
+            }
+            if (length < 0 || length > journal.remaining() - Integer.BYTES) {
+                this.clearTail(start);
+                break;
+            }
+            crc.reset();
+            crc.update(journal.slice().limit(length));
+            journal.position(start + Integer.BYTES + length);
+            if (journal.getInt() != (int) crc.getValue()) {
+                this.clearTail(start);
+                break;
+            }
+
+            int end = journal.position();
+            journal.position(start + Integer.BYTES);
+            this.apply(journal.get(), version);
+            journal.position(end);
+        }
+    }
+
+    /**
+     * Zero the journal from the first incomplete or corrupt record on, and leave the journal positioned there.
+     * The records appended next may not cover the whole tail: a valid record left after them would be replayed again.
+     */
+    private void clearTail(int start) {
+        log.warn("Ignoring the corrupt tail of the process journal {} at offset {}", path, start);
+        byte[] zeros = new byte[64 * 1024];
+        journal.position(start);
+        while (journal.hasRemaining()) {
+            journal.put(zeros, 0, Math.min(zeros.length, journal.remaining()));
+        }
+        journal.force();
+        journal.position(start);
+    }
+
+    private void apply(byte type, int version) {
+        switch (type) {
+            case SAVE:
+                Process process = new Process(
+                        journal.getLong(),
+                        Priority.fromValue(version == BYTE_PRIORITY_VERSION ? journal.get() : journal.getInt()),
+                        new Timestamp(journal.getLong()),
+                        version <= UNWEIGHTED_VERSION ? Process.DEFAULT_WEIGHT : journal.getLong()
+                );
+                liveProcesses.put(process.getProcessId(), process);
+                break;
+            case DELETE:
+                int count = journal.getInt();
+                for (int i = 0; i < count; i++) {
+                    liveProcesses.remove(journal.getLong());
+                }
+                break;
+            case DELETE_ALL:
+                liveProcesses.clear();
+                break;
+            case PROCESS_ID_BLOCK:
+                nextProcessIdBlock = Math.max(nextProcessIdBlock, journal.getLong());
+                break;
+            default:
+                throw new IllegalStateException("Unrecognized process journal record type " + type);
+        }
+    }
+
+    /**
+     * The size of a journal holding one record per live process.
+     */
+    private long liveSize() {
+        return HEADER_SIZE + FRAME_SIZE + Long.BYTES + (long) liveProcesses.size() * (FRAME_SIZE + SAVE_PAYLOAD_SIZE);
+    }
+
+    private void compact(long liveSize) throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        long size = Math.max(initialSize, 2 * liveSize);
+        try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        ) {
+            MappedByteBuffer previous = journal;
+            journal = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            journal.putInt(MAGIC).putInt(VERSION);
+            int start = this.beginRecord(PROCESS_ID_BLOCK);
+            journal.putLong(nextProcessIdBlock);
+            this.endRecord(start);
+            for (Process process : liveProcesses.values()) {
+                this.appendSave(process);
+            }
+            journal.force();
+            previous.force();
+        }
+
+        Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        int position = journal.position();
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        journal.position(position);
+        log.info("Compacted the process journal {} to {} live processes", path, liveProcesses.size());
+
+        // Every record appended so far is represented in the compacted journal, which is on disk.
+        synchronized (durability) {
+            durableRecords = appendedRecords;
+            durability.notifyAll();
+        }
+    }
+
+    private long appendSave(Process process) {
+        int start = this.beginRecord(SAVE);
+        journal.putLong(process.getProcessId());
+        journal.putInt((int) process.getPriority().getPriorityValue());
+        journal.putLong(process.getStartTime().getTime());
+        journal.putLong(process.getWeight());
+        return this.endRecord(start);
+    }
+
+    private int beginRecord(byte type) {
+        int start = journal.position();
+        journal.position(start + Integer.BYTES);
+        journal.put(type);
+        return start;
+    }
+
+    private long endRecord(int start) {
+        int length = journal.position() - start - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(journal.duplicate().position(start + Integer.BYTES).limit(start + Integer.BYTES + length));
+        journal.putInt((int) crc.getValue());
+        journal.putInt(start, length);
+        return ++appendedRecords;
+    }
+
+    /**
+     * Grow the journal file until the given number of bytes can be appended.
+     */
+    private void ensureCapacity(long bytes) {
+        if (journal.remaining() >= bytes) {
+            return;
+        }
+        try {
+            long capacity = journal.capacity();
+            while (capacity - journal.position() < bytes) {
+                capacity *= 2;
+            }
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The process journal is full");
+            }
+            int position = journal.position();
+            journal.force();
+            journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            journal.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow the process journal " + path, e);
+        }
+    }
+
+    private void awaitDurable(long record) {
+        synchronized (durability) {
+            durability.notifyAll();
+            while (durableRecords < record && !closed) {
+                try {
+                    durability.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while syncing the process journal", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sync every batch of records appended since the previous sync, and wake up their writers.
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (durability) {
+                while (durableRecords >= appendedRecords && !closed) {
+                    try {
+                        durability.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+
+            MappedByteBuffer toSync;
+            long syncedRecords;
+            appendLock.lock();
+            try {
+                toSync = journal;
+                syncedRecords = appendedRecords;
+            } finally {
+                appendLock.unlock();
+            }
+            toSync.force();
+
+            synchronized (durability) {
+                durableRecords = Math.max(durableRecords, syncedRecords);
+                durability.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.metrics.LatencyHistogram;
+import com.joshings.taskmanager.service.metrics.TaskManagerMetrics;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * A process store which records the latency of every call to another store.
+ */
+public class MeteredProcessStore implements ProcessStore {
+
+    private final ProcessStore delegate;
+    private final LatencyHistogram loadAllLatency;
+    private final LatencyHistogram reserveProcessIdBlockLatency;
+    private final LatencyHistogram saveLatency;
+    private final LatencyHistogram saveAllLatency;
+    private final LatencyHistogram deleteAllLatency;
+    private final LatencyHistogram deleteWhereLatency;
+    private final LatencyHistogram replaceAllLatency;
+
+    /**
+     * Instantiates a new Metered process store.
+     *
+     * @param delegate           the store the calls are forwarded to
+     * @param taskManagerMetrics the task manager metrics
+     */
+    public MeteredProcessStore(ProcessStore delegate, TaskManagerMetrics taskManagerMetrics) {
+        this.delegate = delegate;
+        this.loadAllLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.LoadAll);
+        this.reserveProcessIdBlockLatency =
+                taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.ReserveProcessIdBlock);
+        this.saveLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.Save);
+        this.saveAllLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.SaveAll);
+        this.deleteAllLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.DeleteAll);
+        this.deleteWhereLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.DeleteWhere);
+        this.replaceAllLatency = taskManagerMetrics.getStoreLatency(TaskManagerMetrics.StoreOperation.ReplaceAll);
+    }
+
+    @Override
+    public void loadAll(Consumer<Process> consumer) {
+        long startNanos = System.nanoTime();
+        delegate.loadAll(consumer);
+        loadAllLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public long reserveProcessIdBlock() {
+        long startNanos = System.nanoTime();
+        long processIdBlock = delegate.reserveProcessIdBlock();
+        reserveProcessIdBlockLatency.recordSince(startNanos);
+        return processIdBlock;
+    }
+
+    @Override
+    public void skipProcessIdBlocks(long processIdBlock) {
+        long startNanos = System.nanoTime();
+        delegate.skipProcessIdBlocks(processIdBlock);
+        reserveProcessIdBlockLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void save(Process process) {
+        long startNanos = System.nanoTime();
+        delegate.save(process);
+        saveLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void saveAll(Collection<Process> processes) {
+        long startNanos = System.nanoTime();
+        delegate.saveAll(processes);
+        saveAllLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> processIds) {
+        long startNanos = System.nanoTime();
+        delegate.deleteAll(processIds);
+        deleteAllLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void deleteWhere(ProcessFilter filter) {
+        long startNanos = System.nanoTime();
+        delegate.deleteWhere(filter);
+        deleteWhereLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void deleteAll() {
+        long startNanos = System.nanoTime();
+        delegate.deleteAll();
+        deleteAllLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void replaceAll(Collection<Process> processes) {
+        long startNanos = System.nanoTime();
+        delegate.replaceAll(processes);
+        replaceAllLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
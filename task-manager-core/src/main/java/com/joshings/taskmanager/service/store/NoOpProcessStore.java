@@ -0,0 +1,50 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A process store which does not persist anything.  The process table only lives in memory.
+ */
+public class NoOpProcessStore implements ProcessStore {
+
+    private final AtomicLong nextProcessIdBlock = new AtomicLong(1);
+
+    @Override
+    public void loadAll(Consumer<Process> consumer) {
+    }
+
+    @Override
+    public long reserveProcessIdBlock() {
+        return nextProcessIdBlock.getAndAdd(PROCESS_ID_BLOCK_SIZE);
+    }
+
+    @Override
+    public void skipProcessIdBlocks(long processIdBlock) {
+        nextProcessIdBlock.accumulateAndGet(processIdBlock, Math::max);
+    }
+
+    @Override
+    public void save(Process process) {
+    }
+
+    @Override
+    public void saveAll(Collection<Process> processes) {
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> processIds) {
+    }
+
+    @Override
+    public void deleteWhere(ProcessFilter filter) {
+    }
+
+    @Override
+    public void deleteAll() {
+    }
+}
@@ -0,0 +1,81 @@
+package com.joshings.taskmanager.service.store;
+
+/**
+ * Hand out process IDs from blocks reserved in the process store, so that the store is only reached once per block.
+ * IDs are handed out in increasing order.
+ * <p>
+ * When the processes are split into partitions, every partition has its own store and the ID blocks are interleaved
+ * between the partitions: the {@code n}th block reserved in the store of partition {@code p} out of {@code N} is the
+ * {@code (n * N + p)}th block of the whole ID space.  IDs are therefore unique across the partitions, and the partition
+ * of a process is found from its ID alone.  The number of partitions must not change while processes are persisted.
+ */
+public class ProcessIdAllocator {
+
+    private final ProcessStore processStore;
+    private final int partition;
+    private final int partitionCount;
+    private long nextProcessId;
+    private long blockEnd;
+
+    /**
+     * Instantiates a new Process id allocator for an unpartitioned process table.
+     *
+     * @param processStore the process store
+     */
+    public ProcessIdAllocator(ProcessStore processStore) {
+        this(processStore, 0, 1);
+    }
+
+    /**
+     * Instantiates a new Process id allocator for a partition.
+     *
+     * @param processStore   the process store of the partition
+     * @param partition      the partition
+     * @param partitionCount the number of partitions
+     */
+    public ProcessIdAllocator(ProcessStore processStore, int partition, int partitionCount) {
+        this.processStore = processStore;
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Gets the partition a process ID was allocated by.
+     *
+     * @param processId      the process id
+     * @param partitionCount the number of partitions
+     * @return the partition
+     */
+    public static int partitionOf(long processId, int partitionCount) {
+        return Math.floorMod(Math.floorDiv(processId - 1, ProcessStore.PROCESS_ID_BLOCK_SIZE), partitionCount);
+    }
+
+    /**
+     * Allocate the next process ID.
+     *
+     * @return the process id
+     */
+    public synchronized long next() {
+        if (nextProcessId == blockEnd) {
+            long storeBlock = (processStore.reserveProcessIdBlock() - 1) / ProcessStore.PROCESS_ID_BLOCK_SIZE;
+            nextProcessId = (storeBlock * partitionCount + partition) * ProcessStore.PROCESS_ID_BLOCK_SIZE + 1;
+            blockEnd = nextProcessId + ProcessStore.PROCESS_ID_BLOCK_SIZE;
+        }
+        return nextProcessId++;
+    }
+
+    /**
+     * Make sure the IDs allocated from now on are above the given process ID, which was allocated by this partition
+     * elsewhere, e.g. by the instance a snapshot was taken from.
+     *
+     * @param processId the process id
+     */
+    public synchronized void skipPast(long processId) {
+        if (processId < nextProcessId) {
+            return;
+        }
+        long storeBlock = Math.floorDiv(processId - 1, ProcessStore.PROCESS_ID_BLOCK_SIZE) / partitionCount;
+        processStore.skipProcessIdBlocks((storeBlock + 1) * ProcessStore.PROCESS_ID_BLOCK_SIZE + 1);
+        nextProcessId = blockEnd;
+    }
+}
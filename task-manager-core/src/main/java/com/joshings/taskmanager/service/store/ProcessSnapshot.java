@@ -0,0 +1,162 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot file of the running processes.
+ * <p>
+ * The file is a header {@code [int magic][int version][long process count][int crc32]} followed by one fixed size
+ * record {@code [long process id][int priority][long start time millis][long weight]} per process.  The checksum
+ * covers all the records.  The snapshots of the previous versions, whose priorities are bytes (version 1) or whose
+ * processes have no weight (version 2), are still read.  The records are written and read through the file channel in
+ * large buffers of whole records, and a snapshot is first written to a temporary file which then atomically replaces
+ * the target file, so that a crash never leaves a partial snapshot behind.
+ */
+public final class ProcessSnapshot {
+
+    private static final int MAGIC = 0x544d5331;
+    private static final int VERSION = 3;
+    private static final int BYTE_PRIORITY_VERSION = 1;
+    private static final int UNWEIGHTED_VERSION = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final int BYTE_PRIORITY_RECORD_SIZE = Long.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int UNWEIGHTED_RECORD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 4096 * RECORD_SIZE;
+
+    private ProcessSnapshot() {
+    }
+
+    /**
+     * Write the processes to a snapshot file, replacing the file if it exists.
+     *
+     * @param path      the snapshot file
+     * @param processes the processes
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Path path, Collection<Process> processes) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+        ) {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            channel.position(HEADER_SIZE);
+            for (Process process : processes) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeRecords(channel, buffer, crc);
+                }
+                buffer.putLong(process.getProcessId());
+                buffer.putInt((int) process.getPriority().getPriorityValue());
+                buffer.putLong(process.getStartTime().getTime());
+                buffer.putLong(process.getWeight());
+            }
+            writeRecords(channel, buffer, crc);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(processes.size()).putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read the processes of a snapshot file.  Nothing is returned unless the whole file is valid.
+     *
+     * @param path the snapshot file
+     * @return the processes, in the order they were written
+     * @throws IOException if the file cannot be read, is not a snapshot, or is truncated or corrupt
+     */
+    public static List<Process> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(HEADER_SIZE);
+            readFully(channel, buffer);
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            if (magic != MAGIC || version < BYTE_PRIORITY_VERSION || version > VERSION) {
+                throw new IOException("Not a process snapshot, or unsupported version");
+            }
+            int recordSize = version == BYTE_PRIORITY_VERSION ? BYTE_PRIORITY_RECORD_SIZE :
+                    version == UNWEIGHTED_VERSION ? UNWEIGHTED_RECORD_SIZE :
+                    RECORD_SIZE;
+            long processCount = buffer.getLong();
+            int checksum = buffer.getInt();
+            if (processCount < 0 || processCount > Integer.MAX_VALUE) {
+                throw new IOException("The process snapshot " + path + " is corrupt");
+            }
+            if (channel.size() != HEADER_SIZE + processCount * recordSize) {
+                throw new IOException("The process snapshot " + path + " is truncated");
+            }
+
+            CRC32 crc = new CRC32();
+            List<Process> processes = new ArrayList<>((int) processCount);
+            long remaining = processCount * recordSize;
+            int bufferSize = BUFFER_SIZE / RECORD_SIZE * recordSize;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(bufferSize, remaining));
+                readFully(channel, buffer);
+                remaining -= buffer.limit();
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    long processId = buffer.getLong();
+                    int priorityValue = version == BYTE_PRIORITY_VERSION ? buffer.get() : buffer.getInt();
+                    long startTime = buffer.getLong();
+                    long weight = version <= UNWEIGHTED_VERSION ? Process.DEFAULT_WEIGHT : buffer.getLong();
+                    if (weight < 1) {
+                        throw new IOException("The process snapshot " + path + " is corrupt");
+                    }
+                    processes.add(new Process(
+                            processId, Priority.fromValue(priorityValue), new Timestamp(startTime), weight));
+                }
+            }
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("The process snapshot " + path + " is corrupt");
+            }
+            return processes;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The process snapshot " + path + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Write the records of the buffer and add them to the checksum, leaving the buffer empty.
+     */
+    private static void writeRecords(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Fill the buffer up to its limit, then flip it for reading.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of the process snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,93 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * The persistence backend of the process table.
+ * The {@link ProcessTable} is authoritative, a store only mirrors its changes so that they can be reloaded.
+ */
+public interface ProcessStore extends AutoCloseable {
+
+    /**
+     * The number of process IDs in a block reserved by {@link #reserveProcessIdBlock()}.
+     */
+    int PROCESS_ID_BLOCK_SIZE = 100;
+
+    /**
+     * Load all the persisted processes, without materializing them all at once.
+     *
+     * @param consumer the consumer of the processes, in start order
+     */
+    void loadAll(Consumer<Process> consumer);
+
+    /**
+     * Reserve a block of {@link #PROCESS_ID_BLOCK_SIZE} process IDs which have never been handed out before.
+     *
+     * @return the first process id of the block
+     */
+    long reserveProcessIdBlock();
+
+    /**
+     * Skip the process ID blocks below the given one, so that the blocks reserved afterwards never hold the IDs of
+     * processes restored from elsewhere, e.g. from a snapshot.  Blocks are never handed out twice, so this never goes
+     * back to a lower block.
+     *
+     * @param processIdBlock the first process id of the lowest block which may be reserved next
+     */
+    void skipProcessIdBlocks(long processIdBlock);
+
+    /**
+     * Persist a started process.
+     *
+     * @param process the process
+     */
+    void save(Process process);
+
+    /**
+     * Persist a batch of started processes.
+     *
+     * @param processes the processes
+     */
+    void saveAll(Collection<Process> processes);
+
+    /**
+     * Delete the given processes.
+     *
+     * @param processIds the process ids
+     */
+    void deleteAll(Collection<Long> processIds);
+
+    /**
+     * Delete the processes matching the filter.
+     *
+     * @param filter the filter
+     */
+    void deleteWhere(ProcessFilter filter);
+
+    /**
+     * Delete all the processes.
+     */
+    void deleteAll();
+
+    /**
+     * Replace all the processes with the given ones, e.g. restored from a snapshot.
+     * Stores which can write in bulk override this, the default deletes all the processes then saves the given ones.
+     *
+     * @param processes the processes
+     */
+    default void replaceAll(Collection<Process> processes) {
+        this.deleteAll();
+        this.saveAll(processes);
+    }
+
+    /**
+     * Release the resources of the store, after writing the pending changes.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,18 @@
+package com.joshings.taskmanager.service.store;
+
+/**
+ * Create the process store of every task manager partition.
+ */
+@FunctionalInterface
+public interface ProcessStoreFactory {
+
+    /**
+     * Create the process store of a partition.
+     * The caller owns the store and closes it.
+     *
+     * @param partition      the partition
+     * @param partitionCount the number of partitions
+     * @return the process store
+     */
+    ProcessStore create(int partition, int partitionCount);
+}
@@ -0,0 +1,875 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.PriorityRange;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessCursor;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The authoritative in-memory process table.
+ * Processes are indexed by ID and by priority, so that capacity checks, oldest process lookups and lowest priority
+ * lookups never need to reach the persistence backend.
+ * <p>
+ * The table is a bucket queue: every priority of the {@link PriorityRange} has its own start ordered bucket.  Two
+ * sorted indexes over the buckets make the eviction lookups constant time whatever the number of priorities: the
+ * occupied buckets sorted by priority, whose first one holds the lowest priority, and the first process of every
+ * occupied bucket sorted by process id, whose first one is the oldest process.  The weights of the buckets are kept in
+ * a Fenwick tree, so the weight of the processes below a priority is summed in logarithmic time, which tells whether
+ * an eviction can free enough capacity before any process is walked.
+ * <p>
+ * The buckets are lock striped: bucket i is guarded by lock i modulo the number of locks, and the changes of a bucket
+ * are written to the process store while holding its lock, so the store sees the changes of a process in the order
+ * they were applied.  The start order of the whole table is the order of the process IDs, which are allocated while
+ * holding the lock of the bucket the process is added to.  Batches are applied while holding all the locks, see
+ * {@link #lockAll(Supplier)}.
+ */
+public class ProcessTable {
+
+    /**
+     * The maximum number of locks, the buckets share them beyond.
+     */
+    private static final int MAX_LOCKS = 16;
+
+    private final ProcessStore processStore;
+
+    private final PriorityRange priorityRange;
+
+    /**
+     * All the running processes, keyed by process ID.
+     */
+    private final ConcurrentHashMap<Long, Process> processes = new ConcurrentHashMap<>();
+
+    /**
+     * One bucket per priority of the range, indexed by the position of the priority within the range.
+     */
+    private final Bucket[] buckets;
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * The Fenwick tree of the weights of the buckets, 1-based.
+     */
+    private final AtomicLongArray bucketWeights;
+
+    /**
+     * The buckets holding at least one process, by priority.
+     */
+    private final ConcurrentSkipListMap<Priority, Bucket> occupiedBuckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * The first process of every occupied bucket, by process id.
+     */
+    private final ConcurrentSkipListMap<Long, Process> bucketHeads = new ConcurrentSkipListMap<>();
+
+    private final ProcessIdAllocator processIdAllocator;
+
+    /**
+     * The processes with the same priority, sorted by process id, which is their start order.
+     * Being sorted lets a page of processes seek straight to its cursor.
+     */
+    private static final class Bucket {
+        private final int index;
+        private final Priority priority;
+        private final ReentrantLock lock;
+        private final TreeMap<Long, Process> processes = new TreeMap<>();
+        private long weight;
+
+        private Bucket(int index, Priority priority, ReentrantLock lock) {
+            this.index = index;
+            this.priority = priority;
+            this.lock = lock;
+        }
+    }
+
+    /**
+     * Instantiates a new Process table accepting the named priorities, and loads the processes of the given store.
+     *
+     * @param processStore the process store
+     */
+    public ProcessTable(ProcessStore processStore) {
+        this(processStore, new ProcessIdAllocator(processStore), PriorityRange.ofAliases());
+    }
+
+    /**
+     * Instantiates a new Process table which allocates the process IDs with the given allocator, and loads the
+     * processes of the given store.
+     *
+     * @param processStore       the process store
+     * @param processIdAllocator the process id allocator
+     * @param priorityRange      the priorities the table accepts
+     */
+    public ProcessTable(ProcessStore processStore, ProcessIdAllocator processIdAllocator, PriorityRange priorityRange) {
+        this.processStore = processStore;
+        this.processIdAllocator = processIdAllocator;
+        this.priorityRange = priorityRange;
+        this.locks = new ReentrantLock[Math.min(priorityRange.size(), MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.buckets = new Bucket[priorityRange.size()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(i, priorityRange.get(i), locks[i % locks.length]);
+        }
+        this.bucketWeights = new AtomicLongArray(buckets.length + 1);
+
+        processStore.loadAll(this::addToBucket);
+    }
+
+    /**
+     * Gets the priorities the table accepts.
+     *
+     * @return the priority range
+     */
+    public PriorityRange getPriorityRange() {
+        return priorityRange;
+    }
+
+    /**
+     * Gets the number of running processes.
+     *
+     * @return the process count
+     */
+    public long size() {
+        return processes.size();
+    }
+
+    /**
+     * Gets the total weight of the running processes.
+     *
+     * @return the weight
+     */
+    public long weight() {
+        return this.weightBelow(buckets.length);
+    }
+
+    /**
+     * Start a new process and add it to the table.
+     *
+     * @param priority the priority, within the range
+     * @param weight   the weight
+     * @return the process
+     */
+    public Process add(Priority priority, long weight) {
+        Bucket bucket = bucket(priority);
+        bucket.lock.lock();
+        try {
+            Process process = new Process(
+                    processIdAllocator.next(), priority, new Timestamp(System.currentTimeMillis()), weight);
+            processStore.save(process);
+            this.addToBucket(process);
+            return process;
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * Create a new process with a freshly allocated ID, without adding it to the table.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @param priority  the priority
+     * @param startTime the start time
+     * @return the process
+     */
+    public Process newProcess(Priority priority, Timestamp startTime) {
+        return new Process(processIdAllocator.next(), priority, startTime);
+    }
+
+    /**
+     * Remove and add processes in one batch, which is written to the process store with one call per change type.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @param removedProcessIds the ids of the processes to remove, processes which are not running are ignored
+     * @param addedProcesses    the processes to add, in start order
+     * @return the removed processes
+     */
+    public List<Process> applyBatch(Collection<Long> removedProcessIds, List<Process> addedProcesses) {
+        List<Long> removedIds = new ArrayList<>(removedProcessIds.size());
+        List<Process> removed = new ArrayList<>(removedProcessIds.size());
+        for (Long processId : removedProcessIds) {
+            Process process = processes.get(processId);
+            if (process != null) {
+                this.removeFromBucket(process);
+                removedIds.add(processId);
+                removed.add(process);
+            }
+        }
+        for (Process process : addedProcesses) {
+            this.addToBucket(process);
+        }
+
+        if (!removedIds.isEmpty()) {
+            processStore.deleteAll(removedIds);
+        }
+        if (!addedProcesses.isEmpty()) {
+            processStore.saveAll(addedProcesses);
+        }
+        return removed;
+    }
+
+    /**
+     * Replace all the processes with processes started elsewhere, e.g. restored from a snapshot, which keep their IDs.
+     * The process store replaces its processes in bulk, and the IDs allocated afterwards are above the restored ones,
+     * so that the process ID order remains the start order.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @param restoredProcesses the restored processes, whose IDs were allocated by this table's partition
+     * @return the removed processes
+     */
+    public List<Process> replaceAll(Collection<Process> restoredProcesses) {
+        for (Process process : restoredProcesses) {
+            priorityRange.check(process.getPriority());
+        }
+        List<Process> removed = new ArrayList<>(processes.size());
+        this.mergeBuckets(removed);
+        for (Bucket bucket : occupiedBuckets.values()) {
+            bucket.processes.clear();
+            this.addWeight(bucket, -bucket.weight);
+        }
+        occupiedBuckets.clear();
+        bucketHeads.clear();
+        processes.clear();
+
+        long maxProcessId = 0;
+        for (Process process : restoredProcesses) {
+            this.addToBucket(process);
+            maxProcessId = Math.max(maxProcessId, process.getProcessId());
+        }
+        if (maxProcessId > 0) {
+            processIdAllocator.skipPast(maxProcessId);
+        }
+        processStore.replaceAll(restoredProcesses);
+        return removed;
+    }
+
+    /**
+     * Run an action while holding all the locks, so that the table does not change meanwhile.
+     *
+     * @param <T>    the result type
+     * @param action the action
+     * @return the result of the action
+     */
+    public <T> T lockAll(Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the priorities of the running processes, from the lowest to the highest.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @return the priorities
+     */
+    public NavigableSet<Priority> occupiedPriorities() {
+        return Collections.unmodifiableNavigableSet(occupiedBuckets.keySet());
+    }
+
+    /**
+     * Plan the eviction of a minimal set of processes whose weight reaches the given weight, without removing them:
+     * no victim of the plan could be spared.
+     * The processes are taken in eviction order, oldest first or lowest priority then oldest first, until their weight
+     * is reached.  The victims made redundant by the last one are then spared in reverse eviction order, the newest
+     * first or the highest priority then the newest first, so a heavy process may be evicted instead of several
+     * lighter ones which come before it.  Whether enough weight can be freed is known from the bucket weights before
+     * any process is walked, so the cost is logarithmic in the number of priorities plus linear in the number of
+     * walked victims.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @param below  only evict the processes with a lower priority, or null to evict any process, oldest first
+     * @param weight the weight to free
+     * @return the victims in eviction order, or an empty list if the processes cannot free enough weight
+     */
+    public List<Process> planEviction(Priority below, long weight) {
+        if (weight <= 0 || this.weightBelow(below) < weight) {
+            return Collections.emptyList();
+        }
+
+        List<Process> victims = new ArrayList<>();
+        long freed = 0;
+        Iterator<Process> evictionOrder = below == null ? this.startOrder() : this.priorityOrder(below);
+        while (freed < weight && evictionOrder.hasNext()) {
+            Process victim = evictionOrder.next();
+            victims.add(victim);
+            freed += victim.getWeight();
+        }
+        if (freed < weight) {
+            return Collections.emptyList();
+        }
+
+        long excess = freed - weight;
+        if (excess == 0) {
+            return victims;
+        }
+        boolean[] spared = new boolean[victims.size()];
+        for (int i = victims.size() - 2; i >= 0 && excess > 0; i--) {
+            if (victims.get(i).getWeight() <= excess) {
+                excess -= victims.get(i).getWeight();
+                spared[i] = true;
+            }
+        }
+        List<Process> plan = new ArrayList<>(victims.size());
+        for (int i = 0; i < victims.size(); i++) {
+            if (!spared[i]) {
+                plan.add(victims.get(i));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Iterate over the processes with the given priority in start order.
+     * The caller must hold all the locks, see {@link #lockAll(Supplier)}.
+     *
+     * @param priority the priority
+     * @return the iterator
+     */
+    public Iterator<Process> startOrderIterator(Priority priority) {
+        if (!priorityRange.contains(priority)) {
+            return Collections.emptyIterator();
+        }
+        return Collections.unmodifiableCollection(bucket(priority).processes.values()).iterator();
+    }
+
+    /**
+     * Remove a process from the table.
+     * Only one of several concurrent callers removing the same process gets it back.
+     *
+     * @param processId the process id
+     * @return the removed process, if it was running
+     */
+    public Optional<Process> remove(long processId) {
+        Process process = processes.get(processId);
+        if (process == null) {
+            return Optional.empty();
+        }
+
+        Bucket bucket = bucket(process.getPriority());
+        bucket.lock.lock();
+        try {
+            if (!bucket.processes.containsKey(processId)) {
+                return Optional.empty();
+            }
+            this.removeFromBucket(process);
+            processStore.deleteAll(Collections.singletonList(processId));
+        } finally {
+            bucket.lock.unlock();
+        }
+        return Optional.of(process);
+    }
+
+    /**
+     * Remove the given processes in one batch.
+     *
+     * @param processIds the process ids, processes which are not running are ignored
+     * @return the removed processes
+     */
+    public List<Process> removeAllById(Collection<Long> processIds) {
+        return this.lockAll(() -> this.applyBatch(processIds, Collections.emptyList()));
+    }
+
+    /**
+     * Remove all the processes with the given priority.
+     *
+     * @param priority the priority
+     * @return the removed processes
+     */
+    public List<Process> removeAllByPriority(Priority priority) {
+        return this.removeWhere(ProcessFilter.ofPriority(priority));
+    }
+
+    /**
+     * Remove all the processes.
+     *
+     * @return the removed processes
+     */
+    public List<Process> removeAll() {
+        return this.removeWhere(ProcessFilter.all());
+    }
+
+    /**
+     * Remove all the processes matching the filter.
+     * The buckets of the filtered priorities are locked together, so the process store is sent the filter itself
+     * and can delete the very same processes with one set-based statement.
+     *
+     * @param filter the filter
+     * @return the removed processes
+     */
+    public List<Process> removeWhere(ProcessFilter filter) {
+        SortedSet<Priority> priorities = filter.getPriorities();
+        if (priorities.isEmpty()) {
+            return this.lockAll(() -> this.removeLocked(new ArrayList<>(occupiedBuckets.values()), filter));
+        }
+
+        List<Bucket> filtered = new ArrayList<>(priorities.size());
+        BitSet lockIndexes = new BitSet(locks.length);
+        for (Priority priority : priorities) {
+            if (priorityRange.contains(priority)) {
+                int index = priorityRange.indexOf(priority);
+                filtered.add(buckets[index]);
+                lockIndexes.set(index % locks.length);
+            }
+        }
+        int[] locked = lockIndexes.stream().toArray();
+        int lockCount = 0;
+        try {
+            for (int index : locked) {
+                locks[index].lock();
+                lockCount++;
+            }
+            return this.removeLocked(filtered, filter);
+        } finally {
+            for (int i = lockCount - 1; i >= 0; i--) {
+                locks[locked[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Find the oldest running process.
+     *
+     * @return the optional
+     */
+    public Optional<Process> oldest() {
+        Map.Entry<Long, Process> oldest = bucketHeads.firstEntry();
+        return oldest == null ? Optional.empty() : Optional.of(oldest.getValue());
+    }
+
+    /**
+     * Find the oldest running process with the given priority.
+     *
+     * @param priority the priority
+     * @return the optional
+     */
+    public Optional<Process> oldestWithPriority(Priority priority) {
+        if (!priorityRange.contains(priority)) {
+            return Optional.empty();
+        }
+        Bucket bucket = bucket(priority);
+        bucket.lock.lock();
+        try {
+            Map.Entry<Long, Process> first = bucket.processes.firstEntry();
+            return first == null ? Optional.empty() : Optional.of(first.getValue());
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the lowest priority of the running processes.
+     *
+     * @return the lowest priority
+     */
+    public Optional<Priority> lowestPriority() {
+        Map.Entry<Priority, Bucket> lowest = occupiedBuckets.firstEntry();
+        return lowest == null ? Optional.empty() : Optional.of(lowest.getKey());
+    }
+
+    /**
+     * Get a consistent snapshot of the running processes.
+     * The buckets are already sorted by process id, so they are merged instead of sorting the snapshot.
+     *
+     * @param sortMode the sort mode
+     * @return the processes
+     */
+    public List<Process> list(TaskManagerService.SortMode sortMode) {
+        return this.lockAll(() -> {
+            List<Process> snapshot = new ArrayList<>(processes.size());
+            switch (sortMode) {
+                case StartTime:
+                case Pid:
+                    this.mergeBuckets(snapshot);
+                    break;
+                case Prio:
+                    for (Bucket bucket : occupiedBuckets.values()) {
+                        snapshot.addAll(bucket.processes.values());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unrecognized sort mode");
+            }
+            return snapshot;
+        });
+    }
+
+    /**
+     * Get a page of the running processes, starting right after the cursor.
+     * Each bucket is only locked while its part of the page is copied, so a page is not a snapshot of the whole table.
+     *
+     * @param sortMode the sort mode
+     * @param after    the cursor, or null for the first page
+     * @param limit    the maximum number of processes
+     * @return the processes
+     */
+    public List<Process> page(TaskManagerService.SortMode sortMode, ProcessCursor after, int limit) {
+        switch (sortMode) {
+            case StartTime:
+            case Pid:
+                long afterProcessId = after == null ? Long.MIN_VALUE : after.getProcessId();
+                PriorityQueue<Process> newest = new PriorityQueue<>(
+                        limit + 1, Comparator.comparing(Process::getProcessId).reversed());
+                for (Bucket bucket : occupiedBuckets.values()) {
+                    this.copyOldest(bucket, afterProcessId, limit, newest);
+                }
+                List<Process> page = new ArrayList<>(newest);
+                page.sort(Comparator.comparing(Process::getProcessId));
+                return page;
+            case Prio:
+                List<Process> prioPage = new ArrayList<>(limit);
+                NavigableMap<Priority, Bucket> from = after == null ?
+                        occupiedBuckets :
+                        occupiedBuckets.tailMap(after.getPriority(), true);
+                for (Bucket bucket : from.values()) {
+                    if (prioPage.size() >= limit) {
+                        break;
+                    }
+                    this.copy(
+                            bucket,
+                            after != null && bucket.priority.equals(after.getPriority()) ?
+                                    after.getProcessId() :
+                                    Long.MIN_VALUE,
+                            limit - prioPage.size(),
+                            prioPage
+                    );
+                }
+                return prioPage;
+            default:
+                throw new IllegalArgumentException("Unrecognized sort mode");
+        }
+    }
+
+    /**
+     * Stream the running processes, one page at a time, so the whole table is never copied at once.
+     *
+     * @param sortMode the sort mode
+     * @param after    the cursor, or null to start with the first process
+     * @param pageSize the page size
+     * @return the processes
+     */
+    public Stream<Process> stream(TaskManagerService.SortMode sortMode, ProcessCursor after, int pageSize) {
+        Iterator<Process> iterator = new Iterator<>() {
+            private List<Process> page = page(sortMode, after, pageSize);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == page.size() && page.size() == pageSize) {
+                    page = page(sortMode, ProcessCursor.after(sortMode, page.get(next - 1)), pageSize);
+                    next = 0;
+                }
+                return next < page.size();
+            }
+
+            @Override
+            public Process next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(next++);
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false
+        );
+    }
+
+    /**
+     * Remove the processes of the buckets matching the filter.
+     * The caller must hold the locks of the buckets.
+     */
+    private List<Process> removeLocked(List<Bucket> filtered, ProcessFilter filter) {
+        List<Process> removed = new ArrayList<>();
+        for (Bucket bucket : filtered) {
+            Long head = headKey(bucket);
+            long removedWeight = 0;
+            Iterator<Process> iterator = this.range(bucket, filter).values().iterator();
+            while (iterator.hasNext()) {
+                Process process = iterator.next();
+                if (filter.matches(process)) {
+                    iterator.remove();
+                    processes.remove(process.getProcessId());
+                    removed.add(process);
+                    removedWeight += process.getWeight();
+                }
+            }
+            this.addWeight(bucket, -removedWeight);
+            this.reindex(bucket, head);
+        }
+
+        if (filter.matchesAll()) {
+            processStore.deleteAll();
+        } else if (!removed.isEmpty()) {
+            processStore.deleteWhere(filter);
+        }
+        return removed;
+    }
+
+    /**
+     * Merge the process id sorted buckets, which is cheaper than sorting the whole table.
+     * The caller must hold all the locks.
+     */
+    private void mergeBuckets(List<Process> target) {
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(
+                Math.max(1, occupiedBuckets.size()), Comparator.comparing(head -> head.next.getProcessId()));
+        for (Bucket bucket : occupiedBuckets.values()) {
+            heads.add(new PeekingIterator(bucket.processes.values().iterator()));
+        }
+        while (!heads.isEmpty()) {
+            PeekingIterator oldest = heads.poll();
+            target.add(oldest.next);
+            if (oldest.advance()) {
+                heads.add(oldest);
+            }
+        }
+    }
+
+    /**
+     * Iterate over all the processes in start order, merging the buckets lazily: a bucket only joins the merge once its
+     * first process is the oldest remaining process, so the cost does not grow with the number of occupied buckets.
+     * The caller must hold all the locks.
+     */
+    private Iterator<Process> startOrder() {
+        Iterator<Process> heads = bucketHeads.values().iterator();
+        PriorityQueue<PeekingIterator> merging = new PriorityQueue<>(
+                Comparator.comparing(merged -> merged.next.getProcessId()));
+        return new Iterator<>() {
+            private Process nextHead = heads.hasNext() ? heads.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextHead != null || !merging.isEmpty();
+            }
+
+            @Override
+            public Process next() {
+                if (!merging.isEmpty() &&
+                        (nextHead == null || merging.peek().next.getProcessId() < nextHead.getProcessId())
+                ) {
+                    PeekingIterator oldest = merging.poll();
+                    Process process = oldest.next;
+                    if (oldest.advance()) {
+                        merging.add(oldest);
+                    }
+                    return process;
+                }
+                if (nextHead == null) {
+                    throw new NoSuchElementException();
+                }
+                Process head = nextHead;
+                nextHead = heads.hasNext() ? heads.next() : null;
+                Iterator<Process> rest = bucket(head.getPriority()).processes
+                        .tailMap(head.getProcessId(), false).values().iterator();
+                if (rest.hasNext()) {
+                    merging.add(new PeekingIterator(rest));
+                }
+                return head;
+            }
+        };
+    }
+
+    /**
+     * Iterate over the processes with a priority lower than the given one, lowest priority then oldest first.
+     * The caller must hold all the locks.
+     */
+    private Iterator<Process> priorityOrder(Priority below) {
+        Iterator<Bucket> lowerBuckets = occupiedBuckets.headMap(below, false).values().iterator();
+        return new Iterator<>() {
+            private Iterator<Process> bucket = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!bucket.hasNext() && lowerBuckets.hasNext()) {
+                    bucket = lowerBuckets.next().processes.values().iterator();
+                }
+                return bucket.hasNext();
+            }
+
+            @Override
+            public Process next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return bucket.next();
+            }
+        };
+    }
+
+    /**
+     * An iterator over a non-empty bucket, exposing its next process.
+     */
+    private static final class PeekingIterator {
+        private final Iterator<Process> iterator;
+        private Process next;
+
+        private PeekingIterator(Iterator<Process> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.next();
+        }
+
+        private boolean advance() {
+            next = iterator.hasNext() ? iterator.next() : null;
+            return next != null;
+        }
+    }
+
+    /**
+     * Copy the oldest processes of the bucket after the given process id into the bounded queue, which keeps the limit
+     * oldest processes seen so far: the bucket is only scanned until its processes are newer than all of them.
+     */
+    private void copyOldest(Bucket bucket, long afterProcessId, int limit, PriorityQueue<Process> newest) {
+        bucket.lock.lock();
+        try {
+            for (Process process : bucket.processes.tailMap(afterProcessId, false).values()) {
+                if (newest.size() >= limit) {
+                    if (limit == 0 || process.getProcessId() > newest.peek().getProcessId()) {
+                        return;
+                    }
+                    newest.poll();
+                }
+                newest.add(process);
+            }
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    private void copy(Bucket bucket, long afterProcessId, int limit, List<Process> target) {
+        bucket.lock.lock();
+        try {
+            Iterator<Process> iterator = bucket.processes.tailMap(afterProcessId, false).values().iterator();
+            for (int i = 0; i < limit && iterator.hasNext(); i++) {
+                target.add(iterator.next());
+            }
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * The processes of the bucket within the process id range of the filter.
+     */
+    private NavigableMap<Long, Process> range(Bucket bucket, ProcessFilter filter) {
+        NavigableMap<Long, Process> range = bucket.processes;
+        if (filter.getMinProcessId() != null) {
+            range = range.tailMap(filter.getMinProcessId(), true);
+        }
+        if (filter.getMaxProcessId() != null) {
+            range = range.headMap(filter.getMaxProcessId(), true);
+        }
+        return range;
+    }
+
+    /**
+     * Add a process to its bucket.  The caller must hold the lock of the bucket.
+     */
+    private void addToBucket(Process process) {
+        Bucket bucket = bucket(process.getPriority());
+        Long head = headKey(bucket);
+        bucket.processes.put(process.getProcessId(), process);
+        processes.put(process.getProcessId(), process);
+        this.addWeight(bucket, process.getWeight());
+        this.reindex(bucket, head);
+    }
+
+    /**
+     * Remove a process from its bucket.  The caller must hold the lock of the bucket.
+     */
+    private void removeFromBucket(Process process) {
+        Bucket bucket = bucket(process.getPriority());
+        Long head = headKey(bucket);
+        bucket.processes.remove(process.getProcessId());
+        processes.remove(process.getProcessId());
+        this.addWeight(bucket, -process.getWeight());
+        this.reindex(bucket, head);
+    }
+
+    /**
+     * Add to the weight of a bucket.  The tree is updated with atomic additions, which commute, so the buckets
+     * guarded by different locks may be updated concurrently.  The caller must hold the lock of the bucket.
+     */
+    private void addWeight(Bucket bucket, long weight) {
+        if (weight == 0) {
+            return;
+        }
+        bucket.weight += weight;
+        for (int i = bucket.index + 1; i < bucketWeights.length(); i += i & -i) {
+            bucketWeights.addAndGet(i, weight);
+        }
+    }
+
+    /**
+     * The weight of the buckets before the given bucket index.
+     */
+    private long weightBelow(int index) {
+        long weight = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            weight += bucketWeights.get(i);
+        }
+        return weight;
+    }
+
+    /**
+     * The weight of the processes with a priority lower than the given one, or of all the processes if it is null.
+     */
+    private long weightBelow(Priority below) {
+        if (below == null || below.compareTo(priorityRange.getHighest()) > 0) {
+            return this.weightBelow(buckets.length);
+        }
+        if (below.compareTo(priorityRange.getLowest()) <= 0) {
+            return 0;
+        }
+        return this.weightBelow(priorityRange.indexOf(below));
+    }
+
+    /**
+     * Update the indexes of a bucket whose processes changed, given the process id of its first process before.
+     * The new first process is indexed before the previous one is dropped, so the oldest process is always indexed.
+     */
+    private void reindex(Bucket bucket, Long previousHead) {
+        Map.Entry<Long, Process> head = bucket.processes.firstEntry();
+        if (head != null) {
+            if (!head.getKey().equals(previousHead)) {
+                bucketHeads.put(head.getKey(), head.getValue());
+            }
+            if (previousHead == null) {
+                occupiedBuckets.put(bucket.priority, bucket);
+            }
+        }
+        if (previousHead != null && (head == null || !head.getKey().equals(previousHead))) {
+            bucketHeads.remove(previousHead);
+        }
+        if (head == null && previousHead != null) {
+            occupiedBuckets.remove(bucket.priority);
+        }
+    }
+
+    private static Long headKey(Bucket bucket) {
+        return bucket.processes.isEmpty() ? null : bucket.processes.firstKey();
+    }
+
+    private Bucket bucket(Priority priority) {
+        return buckets[priorityRange.indexOf(priorityRange.check(priority))];
+    }
+}
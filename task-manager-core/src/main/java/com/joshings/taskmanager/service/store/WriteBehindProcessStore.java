@@ -0,0 +1,110 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.model.ProcessFilter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A process store which forwards the changes of the process table to another store asynchronously.
+ * Changes are applied in order by a single writer thread, so the delegate always converges to the state of the table.
+ */
+@Slf4j
+public class WriteBehindProcessStore implements ProcessStore {
+
+    private final ProcessStore delegate;
+    private final ExecutorService writer;
+
+    /**
+     * Instantiates a new Write behind process store.
+     *
+     * @param delegate the store the changes are written to
+     */
+    public WriteBehindProcessStore(ProcessStore delegate) {
+        this.delegate = delegate;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void loadAll(Consumer<Process> consumer) {
+        delegate.loadAll(consumer);
+    }
+
+    @Override
+    public long reserveProcessIdBlock() {
+        return delegate.reserveProcessIdBlock();
+    }
+
+    @Override
+    public void skipProcessIdBlocks(long processIdBlock) {
+        delegate.skipProcessIdBlocks(processIdBlock);
+    }
+
+    @Override
+    public void save(Process process) {
+        this.submit(() -> delegate.save(process));
+    }
+
+    @Override
+    public void saveAll(Collection<Process> processes) {
+        List<Process> processList = new ArrayList<>(processes);
+        this.submit(() -> delegate.saveAll(processList));
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> processIds) {
+        List<Long> processIdList = new ArrayList<>(processIds);
+        this.submit(() -> delegate.deleteAll(processIdList));
+    }
+
+    @Override
+    public void deleteWhere(ProcessFilter filter) {
+        this.submit(() -> delegate.deleteWhere(filter));
+    }
+
+    @Override
+    public void deleteAll() {
+        this.submit(delegate::deleteAll);
+    }
+
+    @Override
+    public void replaceAll(Collection<Process> processes) {
+        List<Process> processList = new ArrayList<>(processes);
+        this.submit(() -> delegate.replaceAll(processList));
+    }
+
+    /**
+     * Flush the pending changes, stop the writer thread and close the delegate.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    private void submit(Runnable change) {
+        writer.execute(() -> {
+            try {
+                change.run();
+            } catch (RuntimeException e) {
+                log.error("Could not write a process change behind", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,220 @@
+package com.joshings.taskmanager.service.supervisor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs the operating system commands of processes and stops them when the processes are killed.
+ * <p>
+ * No thread waits for a command: the exits are observed through {@link java.lang.Process#onExit()}, and the processes
+ * whose command exited are handed to the exit handler in batches, from one background thread.  A kill asks the
+ * commands to terminate (SIGTERM), then kills the ones still running after the grace period (SIGKILL), with one timer
+ * per kill however many commands it stops.  The thread is only started with the first command.
+ */
+@Slf4j
+public class ProcessSupervisor implements AutoCloseable {
+
+    /**
+     * The clock ticks per second and the page size of the CPU times and the resident set size of
+     * {@code /proc/[pid]/stat}, which are those of Linux on all the common architectures.
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    private static final long PAGE_SIZE = 4096;
+
+    /**
+     * The positions of the user CPU time, the system CPU time and the resident set size in {@code /proc/[pid]/stat},
+     * counting from the state, the first field after the command name.
+     */
+    private static final int UTIME_FIELD = 11;
+    private static final int STIME_FIELD = 12;
+    private static final int RSS_FIELD = 21;
+
+    private final Duration killGracePeriod;
+    private final Consumer<List<Long>> exitHandler;
+    private final ConcurrentHashMap<Long, java.lang.Process> commands = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> exitedProcessIds = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Instantiates a new Process supervisor.
+     *
+     * @param killGracePeriod the time a killed command is given to terminate before it is killed forcibly
+     * @param exitHandler     the handler of the ids of the processes whose command exited on its own
+     */
+    public ProcessSupervisor(Duration killGracePeriod, Consumer<List<Long>> exitHandler) {
+        this.killGracePeriod = killGracePeriod;
+        this.exitHandler = exitHandler;
+    }
+
+    /**
+     * Run the command of a process.  Its standard input is closed and its output is discarded.
+     *
+     * @param processId the process id
+     * @param command   the program and its arguments
+     * @return the operating system process id
+     * @throws IOException if the command cannot be started
+     */
+    public long launch(long processId, List<String> command) throws IOException {
+        java.lang.Process child = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        child.getOutputStream().close();
+        commands.put(processId, child);
+        child.onExit().thenRun(() -> this.exited(processId, child));
+        return child.pid();
+    }
+
+    /**
+     * Gets the number of running commands.
+     *
+     * @return the command count
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Stop the commands of killed processes: they are sent SIGTERM at once, and SIGKILL if they are still running
+     * after the grace period.  The processes without a command are ignored.
+     *
+     * @param processIds the process ids
+     */
+    public void terminateAll(Collection<Long> processIds) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        List<java.lang.Process> terminated = new ArrayList<>();
+        for (Long processId : processIds) {
+            java.lang.Process child = commands.remove(processId);
+            if (child != null) {
+                child.destroy();
+                terminated.add(child);
+            }
+        }
+        if (!terminated.isEmpty()) {
+            this.executor().schedule(
+                    () -> this.destroyForcibly(terminated), killGracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sample the resources used by the command of a process from {@code /proc}, with one read of a small file.
+     *
+     * @param processId the process id
+     * @return the resource usage, empty if the process has no running command or if it cannot be sampled
+     */
+    public Optional<ProcessUsage> usage(long processId) {
+        java.lang.Process child = commands.get(processId);
+        if (child == null) {
+            return Optional.empty();
+        }
+        Path stat = Paths.get("/proc", Long.toString(child.pid()), "stat");
+        try {
+            String line = new String(Files.readAllBytes(stat), StandardCharsets.US_ASCII);
+            // The command name is in parentheses and may contain spaces.
+            String[] fields = line.substring(line.lastIndexOf(')') + 2).trim().split(" ");
+            long cpuTicks = Long.parseLong(fields[UTIME_FIELD]) + Long.parseLong(fields[STIME_FIELD]);
+            return Optional.of(new ProcessUsage(
+                    child.pid(),
+                    cpuTicks * 1000 / CLOCK_TICKS_PER_SECOND,
+                    Long.parseLong(fields[RSS_FIELD]) * PAGE_SIZE
+            ));
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stop all the commands, waiting up to the grace period for them to terminate before killing them forcibly.
+     */
+    @Override
+    public void close() {
+        List<java.lang.Process> children = new ArrayList<>(commands.values());
+        commands.clear();
+        children.forEach(java.lang.Process::destroy);
+        try {
+            CompletableFuture.allOf(children.stream().map(java.lang.Process::onExit).toArray(CompletableFuture[]::new))
+                    .get(killGracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Killing the commands still running after {}", killGracePeriod);
+        }
+        this.destroyForcibly(children);
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Queue a command which exited, unless it was stopped by a kill, and drain the queue unless a drain is pending.
+     * Runs on the thread which completes the exit, so it does no more than that.
+     */
+    private void exited(long processId, java.lang.Process child) {
+        if (commands.remove(processId, child)) {
+            exitedProcessIds.add(processId);
+            if (drainScheduled.compareAndSet(false, true)) {
+                this.executor().execute(this::drainExited);
+            }
+        }
+    }
+
+    private void drainExited() {
+        drainScheduled.set(false);
+        List<Long> processIds = new ArrayList<>();
+        for (Long processId = exitedProcessIds.poll(); processId != null; processId = exitedProcessIds.poll()) {
+            processIds.add(processId);
+        }
+        if (processIds.isEmpty()) {
+            return;
+        }
+        try {
+            exitHandler.accept(processIds);
+        } catch (RuntimeException e) {
+            log.error("Could not remove {} processes whose command exited", processIds.size(), e);
+        }
+    }
+
+    private void destroyForcibly(List<java.lang.Process> children) {
+        for (java.lang.Process child : children) {
+            if (child.isAlive()) {
+                child.destroyForcibly();
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "process-supervisor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
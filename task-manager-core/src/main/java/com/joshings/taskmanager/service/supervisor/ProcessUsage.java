@@ -0,0 +1,43 @@
+package com.joshings.taskmanager.service.supervisor;
+
+import lombok.Getter;
+
+/**
+ * The resources used by the operating system process running the command of a process.
+ */
+@Getter
+public class ProcessUsage {
+
+    /**
+     * The operating system process id.
+     */
+    private final long pid;
+
+    /**
+     * The CPU time used so far, user and system, in milliseconds.
+     */
+    private final long cpuMillis;
+
+    /**
+     * The resident set size in bytes.
+     */
+    private final long rssBytes;
+
+    /**
+     * Instantiates a new Process usage.
+     *
+     * @param pid       the operating system process id
+     * @param cpuMillis the CPU time in milliseconds
+     * @param rssBytes  the resident set size in bytes
+     */
+    public ProcessUsage(long pid, long cpuMillis, long rssBytes) {
+        this.pid = pid;
+        this.cpuMillis = cpuMillis;
+        this.rssBytes = rssBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pid %d - cpu %.2fs - rss %.1f MB", pid, cpuMillis / 1000.0, rssBytes / (1024.0 * 1024.0));
+    }
+}
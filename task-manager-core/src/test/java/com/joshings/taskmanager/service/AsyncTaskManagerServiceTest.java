@@ -0,0 +1,154 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hold the single thread of an asynchronous task manager service with an add waiting in the Queue add mode, queue
+ * requests behind it, then either free the thread and check that the concurrent adds are coalesced, or close the
+ * service and check that no future is left pending.  An add without an add mode to a partition in the Queue add mode
+ * waits on its own thread too.
+ */
+class AsyncTaskManagerServiceTest {
+
+    private static final int MAX_PROCESSES = 100;
+    private static final int ADDS = 50;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private TaskManagerService taskManagerService;
+    private AsyncTaskManagerService asyncTaskManagerService;
+
+    @BeforeEach
+    void start() {
+        taskManagerService = new TaskManagerService(TaskManagerConfig.builder()
+                .maxProcesses(MAX_PROCESSES)
+                .queueTimeout(Duration.ofSeconds(30))
+                .build());
+        asyncTaskManagerService = new AsyncTaskManagerService(taskManagerService, 1, 1000, 1000);
+    }
+
+    @AfterEach
+    void stop() {
+        asyncTaskManagerService.close();
+        taskManagerService.close();
+    }
+
+    @Test
+    void coalescesTheConcurrentAdds() throws Exception {
+        Process blocker = this.holdTheThread();
+        List<CompletableFuture<Process>> adds = new ArrayList<>();
+        for (int i = 0; i < ADDS; i++) {
+            adds.add(asyncTaskManagerService.addProcess(Priority.Low, TaskManagerService.AddMode.Fifo));
+        }
+        long batchesBefore = taskManagerService.getMetrics().getBatchAdmissionLatency().getCount();
+
+        taskManagerService.killProcess(blocker.getProcessId());
+        List<Long> processIds = new ArrayList<>();
+        for (CompletableFuture<Process> add : adds) {
+            processIds.add(add.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getProcessId());
+        }
+        assertEquals(1, taskManagerService.getMetrics().getBatchAdmissionLatency().getCount() - batchesBefore,
+                "The queued adds were not admitted in one batch");
+        List<Long> sorted = new ArrayList<>(processIds);
+        sorted.sort(null);
+        assertEquals(sorted, processIds, "The adds were not admitted in arrival order");
+        assertEquals(MAX_PROCESSES, taskManagerService.getProcesses().size());
+    }
+
+    @Test
+    void failsThePendingRequestsWhenClosed() throws Exception {
+        this.holdTheThread();
+        CompletableFuture<Process> queued = asyncTaskManagerService.addProcess(
+                Priority.High, TaskManagerService.AddMode.Queue);
+        CompletableFuture<List<Process>> listing = asyncTaskManagerService.getProcesses(
+                TaskManagerService.SortMode.Pid);
+        CompletableFuture<Process> coalesced = asyncTaskManagerService.addProcess(
+                Priority.Low, TaskManagerService.AddMode.Fifo);
+
+        asyncTaskManagerService.close();
+        for (CompletableFuture<?> request : List.of(queued, listing, coalesced)) {
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> request.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof RejectedExecutionException, failure.getCause().toString());
+        }
+
+        CompletableFuture<Process> late = asyncTaskManagerService.addProcess(
+                Priority.Low, TaskManagerService.AddMode.Fifo);
+        assertTrue(late.isCompletedExceptionally());
+        assertTrue(asyncTaskManagerService.killAll().isCompletedExceptionally());
+    }
+
+    @Test
+    void waitsOnItsOwnThreadForTheAddModeOfThePartition() throws Exception {
+        // A partition which waits for a free slot, and another one with room to spare.
+        TaskManagerService partitioned = new TaskManagerService(TaskManagerConfig.builder()
+                .partitions(List.of(
+                        new TaskManagerConfig.PartitionConfig(1, TaskManagerService.AddMode.Queue),
+                        new TaskManagerConfig.PartitionConfig(MAX_PROCESSES, TaskManagerService.AddMode.Default)))
+                .queueTimeout(Duration.ofSeconds(30))
+                .build());
+        AsyncTaskManagerService async = new AsyncTaskManagerService(partitioned, 2, 1000, 1000);
+        try {
+            String queueKey = keyOf(partitioned, 0);
+            Process blocker = partitioned.addProcess(queueKey, Priority.Low, null, null);
+            CompletableFuture<Process> queued = async.addProcess(queueKey, Priority.High, null);
+            awaitWaiter(partitioned);
+
+            // Coalesced, the waiting add would hold the adds to the other partition back until its timeout.
+            Process other = async.addProcess(keyOf(partitioned, 1), Priority.Low, null)
+                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals(Priority.Low, other.getPriority());
+            assertFalse(queued.isDone());
+
+            partitioned.killProcess(blocker.getProcessId());
+            assertEquals(Priority.High, queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getPriority());
+        } finally {
+            async.close();
+            partitioned.close();
+        }
+    }
+
+    /**
+     * Fill the capacity, then occupy the only thread of the service with an add waiting for a free slot.
+     *
+     * @return the process to kill to free the thread
+     */
+    private Process holdTheThread() throws Exception {
+        List<Process> running = new ArrayList<>();
+        for (int i = 0; i < MAX_PROCESSES; i++) {
+            running.add(taskManagerService.addProcess(Priority.Medium));
+        }
+        asyncTaskManagerService.addProcess(Priority.High, TaskManagerService.AddMode.Queue);
+        awaitWaiter(taskManagerService);
+        return running.get(0);
+    }
+
+    private static void awaitWaiter(TaskManagerService taskManagerService) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (taskManagerService.getQueueDepth() == 0) {
+            assertTrue(System.nanoTime() < deadline, "The queued add did not start waiting");
+            Thread.sleep(1);
+        }
+    }
+
+    private static String keyOf(TaskManagerService taskManagerService, int partition) {
+        int i = 0;
+        while (taskManagerService.partitionOf("key-" + i) != partition) {
+            i++;
+        }
+        return "key-" + i;
+    }
+}
@@ -0,0 +1,74 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Evict a process to make room for a process whose command cannot be started, then check that the add is rejected
+ * while the victim stays evicted, and that the metrics and the events say so.
+ */
+class TaskManagerCommandTest {
+
+    private static final List<String> MISSING_COMMAND = List.of("/nonexistent/task-manager-command");
+
+    private TaskManagerService taskManagerService;
+
+    @BeforeEach
+    void start() {
+        taskManagerService = new TaskManagerService(TaskManagerConfig.builder().maxProcesses(1).build());
+    }
+
+    @AfterEach
+    void stop() {
+        taskManagerService.close();
+    }
+
+    @Test
+    void rejectsAnAddWhoseCommandCannotBeStartedButKeepsItsVictimsEvicted() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        ProcessEventRing.Subscription subscription = taskManagerService.getEvents().subscribe(
+                "events", ProcessEventRing.Backpressure.Block,
+                event -> events.add(event.getType() + " " + event.getProcessId()));
+        try {
+            Process victim = taskManagerService.addProcess(Priority.Low);
+
+            assertThrows(IllegalArgumentException.class, () -> taskManagerService.addProcess(
+                    Priority.High, 1, TaskManagerService.AddMode.Fifo, null, MISSING_COMMAND));
+            assertEquals(List.of(), taskManagerService.getProcesses(TaskManagerService.SortMode.Pid));
+            assertEquals(0, taskManagerService.getMetrics().getAdmissions(TaskManagerService.AddMode.Fifo));
+            assertEquals(1, taskManagerService.getMetrics().getRejections(TaskManagerService.AddMode.Fifo));
+            assertEquals(1, taskManagerService.getMetrics().getEvictions(TaskManagerService.AddMode.Fifo));
+
+            awaitDrained(subscription);
+            assertEquals(List.of(
+                    ProcessEvent.Type.Added + " " + victim.getProcessId(),
+                    ProcessEvent.Type.EvictedByFifo + " " + victim.getProcessId()
+            ), events);
+        } finally {
+            subscription.close();
+        }
+
+        // The slot of the rejected process was given back: the next add evicts nothing.
+        taskManagerService.addProcess(Priority.Low, TaskManagerService.AddMode.Fifo);
+        assertEquals(1, taskManagerService.getMetrics().getEvictions(TaskManagerService.AddMode.Fifo));
+    }
+
+    private static void awaitDrained(ProcessEventRing.Subscription subscription) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (subscription.getLag() > 0) {
+            assertTrue(System.nanoTime() < deadline, "The event subscriber did not catch up");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.store.ProcessIdAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Add processes without a partition key from a single thread, whose own partition fills up first, and check that the
+ * other partitions take them before any is rejected or evicted.
+ */
+class TaskManagerPartitionsTest {
+
+    private static final int PARTITIONS = 3;
+    private static final int PARTITION_CAPACITY = 2;
+
+    private TaskManagerService taskManagerService;
+
+    @BeforeEach
+    void start() {
+        TaskManagerConfig.PartitionConfig partition =
+                new TaskManagerConfig.PartitionConfig(PARTITION_CAPACITY, TaskManagerService.AddMode.Default);
+        taskManagerService = new TaskManagerService(TaskManagerConfig.builder()
+                .partitions(List.of(partition, partition, partition))
+                .build());
+    }
+
+    @AfterEach
+    void stop() {
+        taskManagerService.close();
+    }
+
+    @Test
+    void fillsTheOtherPartitionsBeforeEvicting() throws InstantiationException {
+        for (int i = 0; i < PARTITIONS * PARTITION_CAPACITY; i++) {
+            taskManagerService.addProcess(Priority.Low, TaskManagerService.AddMode.Fifo);
+        }
+        assertEquals(0, taskManagerService.getMetrics().getEvictions(TaskManagerService.AddMode.Fifo));
+        this.assertEveryPartitionIsFull();
+
+        taskManagerService.addProcess(Priority.Low, TaskManagerService.AddMode.Fifo);
+        assertEquals(1, taskManagerService.getMetrics().getEvictions(TaskManagerService.AddMode.Fifo));
+    }
+
+    @Test
+    void fillsTheOtherPartitionsBeforeRejectingABatch() {
+        List<Priority> batch = List.of(Priority.Low, Priority.Medium);
+        for (int i = 0; i < PARTITIONS; i++) {
+            for (AddResult result : taskManagerService.addProcesses(batch, null)) {
+                assertEquals(AddResult.Status.Admitted, result.getStatus());
+            }
+        }
+        this.assertEveryPartitionIsFull();
+
+        for (AddResult result : taskManagerService.addProcesses(batch, null)) {
+            assertEquals(AddResult.Status.Rejected, result.getStatus());
+        }
+    }
+
+    private void assertEveryPartitionIsFull() {
+        int[] processCounts = new int[PARTITIONS];
+        for (Process process : taskManagerService.getProcesses(TaskManagerService.SortMode.Pid)) {
+            processCounts[ProcessIdAllocator.partitionOf(process.getProcessId(), PARTITIONS)]++;
+        }
+        for (int processCount : processCounts) {
+            assertEquals(PARTITION_CAPACITY, processCount);
+        }
+    }
+}
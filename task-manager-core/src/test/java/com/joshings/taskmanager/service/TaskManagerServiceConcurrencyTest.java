@@ -0,0 +1,362 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.events.ProcessEventHandler;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.model.AddResult;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import com.joshings.taskmanager.service.store.ProcessIdAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammer a task manager from many threads with every add mode, kills and listings, and check the recorded history.
+ * <p>
+ * A listing of a partition is taken while holding all its locks, so it is an atomic snapshot of the partition.  An
+ * observer thread takes snapshots one after the other: a process present in two snapshots was running during the
+ * whole time between them, so a process evicted between them by a Fifo add must be older than every process present
+ * in both, and a process evicted by a Prio add must come before all of them in priority then start order.  The
+ * eviction type of every process is read from the lifecycle events.
+ */
+class TaskManagerServiceConcurrencyTest {
+
+    /**
+     * The capacity, split between the partitions so that they all fill up and evict.
+     */
+    private static final int MAX_PROCESSES = 64;
+    private static final int THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final Duration RUN_DURATION = Duration.ofSeconds(2);
+    private static final Duration THROUGHPUT_RUN_DURATION = Duration.ofMillis(500);
+    private static final TaskManagerService.AddMode[] ADD_MODES = TaskManagerService.AddMode.values();
+
+    /**
+     * The add modes which never wait, so that the throughput does not measure the queue timeout.
+     */
+    private static final TaskManagerService.AddMode[] NON_BLOCKING_ADD_MODES = {
+            TaskManagerService.AddMode.Default, TaskManagerService.AddMode.Fifo, TaskManagerService.AddMode.Prio
+    };
+    private static final TaskManagerService.SortMode[] SORT_MODES = TaskManagerService.SortMode.values();
+
+    /**
+     * The processes evicted between two consecutive snapshots, with the first process of every partition among the
+     * processes present in both snapshots, in start order and in eviction order by priority.
+     */
+    private static final class SnapshotStep {
+        private final List<Process> removed;
+        private final long[] oldestKept;
+        private final Process[] lowestKept;
+
+        private SnapshotStep(List<Process> removed, long[] oldestKept, Process[] lowestKept) {
+            this.removed = removed;
+            this.oldestKept = oldestKept;
+            this.lowestKept = lowestKept;
+        }
+    }
+
+    /**
+     * Rebuild the running processes from the events.  The events of different threads may be published out of order,
+     * e.g. a group kill may be published before the addition of a process it killed, hence the tombstones.
+     */
+    private static final class EventReplay implements ProcessEventHandler {
+        private final Set<Long> running = new HashSet<>();
+        private final Set<Long> tombstones = new HashSet<>();
+        private final Map<Long, ProcessEvent.Type> removals = new ConcurrentHashMap<>();
+        private final Set<Long> incomplete = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void onEvent(ProcessEvent event) {
+            if (event.getPriority() == null || event.getStartTimeMillis() == 0 || event.getWeight() == 0) {
+                incomplete.add(event.getProcessId());
+            }
+            if (event.getType() == ProcessEvent.Type.Added) {
+                if (!tombstones.remove(event.getProcessId())) {
+                    running.add(event.getProcessId());
+                }
+            } else {
+                removals.put(event.getProcessId(), event.getType());
+                if (!running.remove(event.getProcessId())) {
+                    tombstones.add(event.getProcessId());
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void keepsTheCapacityAndEvictsTheRightProcessesUnderContention(int partitionCount) throws InterruptedException {
+        try (TaskManagerService taskManagerService = newTaskManager(partitionCount)) {
+            EventReplay replay = new EventReplay();
+            ProcessEventRing.Subscription subscription = taskManagerService.getEvents()
+                    .subscribe("history", ProcessEventRing.Backpressure.Block, replay);
+            Set<Long> returnedProcessIds = ConcurrentHashMap.newKeySet();
+            Queue<String> violations = new ConcurrentLinkedQueue<>();
+            List<SnapshotStep> steps = new ArrayList<>();
+
+            long deadline = System.nanoTime() + RUN_DURATION.toNanos();
+            Thread observer = new Thread(() -> {
+                List<Process> previous = taskManagerService.getProcesses(TaskManagerService.SortMode.Pid);
+                while (System.nanoTime() < deadline) {
+                    List<Process> current = taskManagerService.getProcesses(TaskManagerService.SortMode.Pid);
+                    checkSnapshot(current, partitionCount, violations);
+                    SnapshotStep step = step(previous, current, partitionCount);
+                    if (!step.removed.isEmpty()) {
+                        steps.add(step);
+                    }
+                    previous = current;
+                }
+            }, "observer");
+            observer.start();
+            long operations = runWorkers(THREADS, deadline, () -> randomOperation(
+                    taskManagerService, partitionCount, ADD_MODES, returnedProcessIds, violations));
+            observer.join();
+            awaitDrained(subscription);
+            subscription.close();
+
+            assertTrue(violations.isEmpty(), () -> violations.stream().limit(10).collect(Collectors.joining("\n")));
+            assertTrue(operations > 0);
+            long evictions = 0;
+            for (SnapshotStep step : steps) {
+                for (Process evicted : step.removed) {
+                    ProcessEvent.Type removal = replay.removals.get(evicted.getProcessId());
+                    assertNotNull(removal, "No event for the removal of " + evicted);
+                    int partition = ProcessIdAllocator.partitionOf(evicted.getProcessId(), partitionCount);
+                    if (removal == ProcessEvent.Type.EvictedByFifo) {
+                        evictions++;
+                        assertTrue(evicted.getProcessId() < step.oldestKept[partition],
+                                "Fifo evicted " + evicted + " while " + step.oldestKept[partition] + " was older");
+                    } else if (removal == ProcessEvent.Type.EvictedByPrio) {
+                        evictions++;
+                        Process lowest = step.lowestKept[partition];
+                        assertTrue(lowest == null || evictionOrder().compare(evicted, lowest) < 0,
+                                "Prio evicted " + evicted + " while " + lowest + " was running");
+                    }
+                }
+            }
+            assertTrue(evictions > 0, "No eviction was observed");
+
+            Set<Long> running = taskManagerService.getProcesses().stream()
+                    .map(Process::getProcessId)
+                    .collect(Collectors.toSet());
+            assertEquals(running, replay.running, "The events do not add up to the running processes");
+            assertTrue(replay.tombstones.isEmpty(), "Processes removed but never added " + replay.tombstones);
+            assertTrue(replay.incomplete.isEmpty(), "Events without the process details " + replay.incomplete);
+            assertTrue(running.size() <= MAX_PROCESSES);
+            assertNoSlotLeak(taskManagerService, partitionCount);
+        }
+    }
+
+    @Test
+    void reportsTheThroughputAsTheThreadCountGrows() throws InterruptedException {
+        StringBuilder report = new StringBuilder("Throughput of the mixed operations, one partition, no Queue adds:\n");
+        for (int threads = 1; threads <= THREADS; threads *= 2) {
+            try (TaskManagerService taskManagerService = newTaskManager(1)) {
+                Set<Long> returnedProcessIds = ConcurrentHashMap.newKeySet();
+                Queue<String> violations = new ConcurrentLinkedQueue<>();
+                long operations = runWorkers(threads, System.nanoTime() + THROUGHPUT_RUN_DURATION.toNanos(),
+                        () -> randomOperation(
+                                taskManagerService, 1, NON_BLOCKING_ADD_MODES, returnedProcessIds, violations));
+
+                assertTrue(violations.isEmpty(), () -> String.join("\n", violations));
+                assertTrue(operations > 0);
+                report.append(String.format("  threads %3d  %,12d ops/s%n",
+                        threads, operations * 1000 / THROUGHPUT_RUN_DURATION.toMillis()));
+            }
+        }
+        System.out.print(report);
+    }
+
+    private static TaskManagerService newTaskManager(int partitionCount) {
+        TaskManagerConfig.TaskManagerConfigBuilder config = TaskManagerConfig.builder()
+                .maxProcesses(MAX_PROCESSES)
+                .queueTimeout(Duration.ofMillis(20));
+        if (partitionCount > 1) {
+            for (int i = 0; i < partitionCount; i++) {
+                config.partition(new TaskManagerConfig.PartitionConfig(
+                        capacity(partitionCount), TaskManagerService.AddMode.Default));
+            }
+        }
+        return new TaskManagerService(config.build());
+    }
+
+    /**
+     * Run the operation in a loop on every thread until the deadline.
+     *
+     * @return the number of operations run
+     */
+    private static long runWorkers(int threads, long deadline, Runnable operation) throws InterruptedException {
+        AtomicLong operations = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    long count = 0;
+                    while (System.nanoTime() < deadline) {
+                        operation.run();
+                        count++;
+                    }
+                    operations.addAndGet(count);
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    done.countDown();
+                }
+            }, "worker-" + i);
+            worker.start();
+        }
+        done.await();
+        if (!failures.isEmpty()) {
+            fail(failures.get(0));
+        }
+        return operations.get();
+    }
+
+    /**
+     * Run one operation picked at random, and record what it returned.
+     */
+    private static void randomOperation(TaskManagerService taskManagerService,
+                                        int partitionCount,
+                                        TaskManagerService.AddMode[] addModes,
+                                        Set<Long> returnedProcessIds,
+                                        Queue<String> violations
+    ) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Priority priority = Priority.aliases().get(random.nextInt(Priority.aliases().size()));
+        TaskManagerService.AddMode addMode = addModes[random.nextInt(addModes.length)];
+        int operation = random.nextInt(100);
+        if (operation < 35) {
+            try {
+                Process process = taskManagerService.addProcess(priority, addMode);
+                if (!returnedProcessIds.add(process.getProcessId())) {
+                    violations.add("Process ID returned twice: " + process.getProcessId());
+                }
+            } catch (InstantiationException e) {
+                // Rejected: the capacity is reached.
+            }
+        } else if (operation < 45) {
+            List<Priority> priorities = new ArrayList<>();
+            for (int i = random.nextInt(1, 5); i > 0; i--) {
+                priorities.add(Priority.aliases().get(random.nextInt(Priority.aliases().size())));
+            }
+            for (AddResult result : taskManagerService.addProcesses(priorities, addMode)) {
+                if (result.getStatus() == AddResult.Status.Admitted
+                        && !returnedProcessIds.add(result.getProcess().orElseThrow().getProcessId())) {
+                    violations.add("Process ID returned twice: " + result.getProcess().get().getProcessId());
+                }
+            }
+        } else if (operation < 65) {
+            List<Process> processes = taskManagerService.getProcesses(SORT_MODES[random.nextInt(SORT_MODES.length)]);
+            if (!processes.isEmpty()) {
+                try {
+                    taskManagerService.killProcess(processes.get(random.nextInt(processes.size())).getProcessId());
+                } catch (IllegalArgumentException e) {
+                    // Killed or evicted meanwhile.
+                }
+            }
+        } else if (operation < 68) {
+            taskManagerService.killGroup(priority);
+        } else {
+            TaskManagerService.SortMode sortMode = SORT_MODES[random.nextInt(SORT_MODES.length)];
+            List<Process> processes = taskManagerService.getProcesses(sortMode);
+            checkSnapshot(processes, partitionCount, violations);
+            if (sortMode == TaskManagerService.SortMode.Pid) {
+                checkSorted(processes, Comparator.comparing(Process::getProcessId), violations);
+            }
+        }
+    }
+
+    /**
+     * Check that no partition of a snapshot exceeds its capacity, and that no process is listed twice.
+     */
+    private static void checkSnapshot(List<Process> processes, int partitionCount, Queue<String> violations) {
+        int[] sizes = new int[partitionCount];
+        Set<Long> processIds = new HashSet<>();
+        for (Process process : processes) {
+            if (!processIds.add(process.getProcessId())) {
+                violations.add("Process listed twice: " + process);
+            }
+            int partition = ProcessIdAllocator.partitionOf(process.getProcessId(), partitionCount);
+            if (++sizes[partition] > capacity(partitionCount)) {
+                violations.add("Partition " + partition + " exceeds its capacity of " + capacity(partitionCount));
+            }
+        }
+    }
+
+    private static void checkSorted(List<Process> processes, Comparator<Process> order, Queue<String> violations) {
+        for (int i = 1; i < processes.size(); i++) {
+            if (order.compare(processes.get(i - 1), processes.get(i)) > 0) {
+                violations.add("Not sorted: " + processes.get(i - 1) + " before " + processes.get(i));
+            }
+        }
+    }
+
+    private static int capacity(int partitionCount) {
+        return MAX_PROCESSES / partitionCount;
+    }
+
+    private static SnapshotStep step(List<Process> previous, List<Process> current, int partitionCount) {
+        Set<Long> currentIds = new HashSet<>();
+        current.forEach(process -> currentIds.add(process.getProcessId()));
+        List<Process> removed = new ArrayList<>();
+        long[] oldestKept = new long[partitionCount];
+        Arrays.fill(oldestKept, Long.MAX_VALUE);
+        Process[] lowestKept = new Process[partitionCount];
+        for (Process process : previous) {
+            if (!currentIds.contains(process.getProcessId())) {
+                removed.add(process);
+                continue;
+            }
+            int partition = ProcessIdAllocator.partitionOf(process.getProcessId(), partitionCount);
+            oldestKept[partition] = Math.min(oldestKept[partition], process.getProcessId());
+            if (lowestKept[partition] == null || evictionOrder().compare(process, lowestKept[partition]) < 0) {
+                lowestKept[partition] = process;
+            }
+        }
+        return new SnapshotStep(removed, oldestKept, lowestKept);
+    }
+
+    /**
+     * The order in which the Prio add mode evicts the processes: lowest priority first, then oldest first.
+     */
+    private static Comparator<Process> evictionOrder() {
+        return Comparator.comparing(Process::getPriority).thenComparing(Process::getProcessId);
+    }
+
+    private static void awaitDrained(ProcessEventRing.Subscription subscription) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (subscription.getLag() > 0) {
+            assertTrue(System.nanoTime() < deadline, "The event subscriber did not catch up");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Check that every slot was given back: once all the processes are killed, every partition admits exactly its
+     * capacity again.
+     */
+    private static void assertNoSlotLeak(TaskManagerService taskManagerService, int partitionCount) {
+        taskManagerService.killAll();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            String partitionKey = Integer.toString(partition);
+            for (int i = 0; i < capacity(partitionCount); i++) {
+                assertDoesNotThrow(() -> taskManagerService.addProcess(
+                        partitionKey, Priority.Low, TaskManagerService.AddMode.Default, null));
+            }
+            assertThrows(InstantiationException.class, () -> taskManagerService.addProcess(
+                    partitionKey, Priority.Low, TaskManagerService.AddMode.Default, null));
+        }
+    }
+}
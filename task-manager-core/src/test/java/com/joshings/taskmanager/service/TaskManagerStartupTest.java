@@ -0,0 +1,48 @@
+package com.joshings.taskmanager.service;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the core starts without Spring or JPA, and that an embedded task manager with the in-memory store is
+ * ready to admit processes quickly.  The budget is that of a cold start: it includes the class loading of the core.
+ */
+class TaskManagerStartupTest {
+
+    private static final Duration STARTUP_BUDGET = Duration.ofMillis(500);
+
+    @Test
+    void startsWithoutSpring() {
+        assertThrows(ClassNotFoundException.class,
+                () -> Class.forName("org.springframework.context.ApplicationContext"));
+        assertThrows(ClassNotFoundException.class, () -> Class.forName("javax.persistence.EntityManager"));
+    }
+
+    @Test
+    void startsAndAdmitsTheFirstProcessWithinBudget() throws InstantiationException {
+        long start = System.nanoTime();
+        try (TaskManagerService taskManagerService = new TaskManagerService(
+                TaskManagerConfig.builder().maxProcesses(3).build()
+        )) {
+            Process process = taskManagerService.addProcess(Priority.Medium);
+            Duration startup = Duration.ofNanos(System.nanoTime() - start);
+
+            assertTrue(startup.compareTo(STARTUP_BUDGET) < 0, "Started in " + startup.toMillis() + " ms");
+            List<Process> processes = taskManagerService.getProcesses(TaskManagerService.SortMode.Pid);
+            assertEquals(1, processes.size());
+            assertEquals(process.getProcessId(), processes.get(0).getProcessId());
+        }
+    }
+
+    @Test
+    void rejectsAMissingCapacity() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TaskManagerService(TaskManagerConfig.builder().build()));
+    }
+}
@@ -0,0 +1,189 @@
+package com.joshings.taskmanager.service.admission;
+
+import com.joshings.taskmanager.service.model.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Race the releases of slots against the waiters joining the queue, and check that every freed slot is handed over
+ * long before the queue timeout, in priority then arrival order.
+ */
+class AdmissionQueueTest {
+
+    private static final int ROUNDS = 1_000;
+    private static final int WAITERS = 4;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration MAX_HANDOVER = Duration.ofSeconds(1);
+
+    @Test
+    void handsEveryFreedSlotOverToAWaiter() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * WAITERS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                AtomicLong freeSlots = new AtomicLong();
+                AdmissionQueue queue = new AdmissionQueue(slots -> reserve(freeSlots, slots));
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Long>> waiters = new ArrayList<>();
+                for (int i = 0; i < WAITERS; i++) {
+                    waiters.add(executor.submit(() -> {
+                        start.await();
+                        long startNanos = System.nanoTime();
+                        queue.await(Priority.Medium, 1, TIMEOUT.toNanos());
+                        return System.nanoTime() - startNanos;
+                    }));
+                    executor.submit(() -> {
+                        start.await();
+                        freeSlots.incrementAndGet();
+                        queue.signal();
+                        return null;
+                    });
+                }
+                start.countDown();
+
+                for (Future<Long> waiter : waiters) {
+                    long waitedNanos = waiter.get();
+                    assertTrue(waitedNanos < MAX_HANDOVER.toNanos(),
+                            "A waiter missed a freed slot for " + waitedNanos / 1_000_000 + "ms in round " + round);
+                }
+                assertEquals(0, queue.getDepth());
+                assertEquals(0, freeSlots.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void handsOverASlotFreedWhileTheWaiterJoins() throws Exception {
+        AtomicLong freeSlots = new AtomicLong();
+        AtomicReference<AdmissionQueue> queue = new AtomicReference<>();
+        CountDownLatch released = new CountDownLatch(1);
+        Thread releaser = new Thread(() -> {
+            freeSlots.incrementAndGet();
+            queue.get().signal();
+            released.countDown();
+        });
+        queue.set(new AdmissionQueue(slots -> {
+            if (reserve(freeSlots, slots)) {
+                return true;
+            }
+            if (releaser.getState() == Thread.State.NEW) {
+                // Free a slot right after the waiter failed to reserve one, before it sleeps.  A releaser which sees
+                // the waiter blocks on the queue lock, so it is only given a bounded time to return.
+                releaser.start();
+                try {
+                    released.await(50, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return false;
+        }));
+
+        long startNanos = System.nanoTime();
+        queue.get().await(Priority.Medium, 1, TIMEOUT.toNanos());
+        assertTrue(System.nanoTime() - startNanos < MAX_HANDOVER.toNanos(), "The waiter missed the freed slot");
+        releaser.join();
+    }
+
+    @Test
+    void handsTheSlotsOverByPriorityThenArrival() throws Exception {
+        AtomicLong freeSlots = new AtomicLong();
+        AdmissionQueue queue = new AdmissionQueue(slots -> reserve(freeSlots, slots));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<String> admitted = new ArrayList<>();
+            Future<?> firstLow = this.enqueue(executor, queue, Priority.Low, "first low", admitted);
+            Future<?> secondLow = this.enqueue(executor, queue, Priority.Low, "second low", admitted);
+            Future<?> high = this.enqueue(executor, queue, Priority.High, "high", admitted);
+
+            for (Future<?> waiter : List.of(high, firstLow, secondLow)) {
+                freeSlots.incrementAndGet();
+                queue.signal();
+                waiter.get();
+            }
+            assertEquals(List.of("high", "first low", "second low"), admitted);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void handsTheSlotsOfAHeavyHeadWhichGivesUpOverToTheWaitersBehindIt() throws Exception {
+        AtomicLong freeSlots = new AtomicLong(1);
+        AdmissionQueue queue = new AdmissionQueue(slots -> reserve(freeSlots, slots));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> heavy = executor.submit(() -> {
+                queue.await(Priority.High, 2, Duration.ofMillis(200).toNanos());
+                return null;
+            });
+            while (queue.getDepth() == 0) {
+                Thread.sleep(1);
+            }
+            List<String> admitted = new ArrayList<>();
+            Future<?> light = this.enqueue(executor, queue, Priority.Low, "light", admitted);
+
+            // No slot is freed: the free slot the heavy head did not fit in is handed over when it leaves.
+            ExecutionException timeout = assertThrows(ExecutionException.class, heavy::get);
+            assertTrue(timeout.getCause() instanceof InstantiationException, timeout.getCause().toString());
+            light.get(MAX_HANDOVER.toMillis(), TimeUnit.MILLISECONDS);
+            assertEquals(List.of("light"), admitted);
+            assertEquals(0, queue.getDepth());
+            assertEquals(0, freeSlots.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void timesOutWithoutAFreeSlot() {
+        AdmissionQueue queue = new AdmissionQueue(slots -> false);
+        assertThrows(InstantiationException.class,
+                () -> queue.await(Priority.High, 1, Duration.ofMillis(20).toNanos()));
+        assertEquals(0, queue.getDepth());
+    }
+
+    /**
+     * Start a waiter, and wait until it is queued.
+     */
+    private Future<?> enqueue(ExecutorService executor, AdmissionQueue queue, Priority priority, String name,
+                              List<String> admitted) throws InterruptedException {
+        int depth = queue.getDepth();
+        Future<?> waiter = executor.submit(() -> {
+            queue.await(priority, 1, TIMEOUT.toNanos());
+            synchronized (admitted) {
+                admitted.add(name);
+            }
+            return null;
+        });
+        while (queue.getDepth() == depth) {
+            Thread.sleep(1);
+        }
+        return waiter;
+    }
+
+    private static boolean reserve(AtomicLong freeSlots, long slots) {
+        long free = freeSlots.get();
+        while (free >= slots) {
+            if (freeSlots.compareAndSet(free, free - slots)) {
+                return true;
+            }
+            free = freeSlots.get();
+        }
+        return false;
+    }
+}
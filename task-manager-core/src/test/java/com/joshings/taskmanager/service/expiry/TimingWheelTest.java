@@ -0,0 +1,124 @@
+package com.joshings.taskmanager.service.expiry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the timers expire on their deadline tick exactly, whichever levels they are cascaded through.
+ */
+class TimingWheelTest {
+
+    private static final long LEVEL_1 = TimingWheel.WHEEL_SIZE;
+    private static final long LEVEL_2 = LEVEL_1 * TimingWheel.WHEEL_SIZE;
+    private static final long LEVEL_3 = LEVEL_2 * TimingWheel.WHEEL_SIZE;
+    private static final long SPAN = LEVEL_3 * TimingWheel.WHEEL_SIZE;
+
+    @Test
+    void expiresOnTheDeadlineAcrossTheLevelBoundaries() {
+        long start = 5;
+        TimingWheel timingWheel = new TimingWheel(start);
+        // The boundaries of the slots, and the deltas which just need the next level.
+        long[] deadlines = {
+                LEVEL_1 - 1, LEVEL_1, LEVEL_1 + 1, start + LEVEL_1,
+                LEVEL_2 - 1, LEVEL_2, LEVEL_2 + 1, start + LEVEL_2,
+                LEVEL_3 - 1, LEVEL_3, LEVEL_3 + 1, start + LEVEL_3,
+                start + LEVEL_3 + LEVEL_2 + LEVEL_1 + 1
+        };
+        for (int i = 0; i < deadlines.length; i++) {
+            timingWheel.schedule(i, deadlines[i]);
+        }
+
+        for (int i = 0; i < deadlines.length; i++) {
+            assertEquals(List.of(), timingWheel.advance(deadlines[i] - 1), "Expired before tick " + deadlines[i]);
+            assertEquals(List.of((long) i), timingWheel.advance(deadlines[i]));
+        }
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    void expiresADeadlineBeyondTheSpan() {
+        TimingWheel timingWheel = new TimingWheel(7);
+        long deadline = 7 + 3 * SPAN + LEVEL_2 + 3;
+        timingWheel.schedule(1, deadline);
+        timingWheel.schedule(2, 7 + SPAN - 1);
+
+        assertEquals(List.of(), timingWheel.advance(7 + SPAN - 2));
+        assertEquals(List.of(2L), timingWheel.advance(7 + SPAN - 1));
+        assertEquals(List.of(), timingWheel.advance(deadline - 1));
+        assertEquals(List.of(1L), timingWheel.advance(deadline));
+    }
+
+    @Test
+    void cancelsATimerAfterItWasCascaded() {
+        TimingWheel timingWheel = new TimingWheel(0);
+        long deadline = LEVEL_2 + LEVEL_1 + 10;
+        timingWheel.schedule(1, deadline);
+        timingWheel.schedule(2, deadline);
+
+        // Cascaded from level 2 to level 1, then from level 1 to level 0.
+        assertEquals(List.of(), timingWheel.advance(deadline - 1));
+        assertTrue(timingWheel.cancel(1));
+        assertFalse(timingWheel.cancel(1));
+        assertEquals(List.of(2L), timingWheel.advance(deadline + LEVEL_2));
+        assertFalse(timingWheel.cancel(2));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    void reschedulingReplacesTheTimer() {
+        TimingWheel timingWheel = new TimingWheel(0);
+        timingWheel.schedule(1, LEVEL_2);
+        timingWheel.schedule(1, 10);
+        timingWheel.schedule(2, -1);
+
+        assertEquals(List.of(2L), timingWheel.advance(1));
+        assertEquals(List.of(1L), timingWheel.advance(LEVEL_2 * 2));
+    }
+
+    @Test
+    void matchesAPlainMapOfDeadlines() {
+        Random random = new Random(42);
+        long tick = random.nextInt(1 << 20);
+        TimingWheel timingWheel = new TimingWheel(tick);
+        Map<Long, Long> deadlines = new HashMap<>();
+
+        for (int round = 0; round < 20_000; round++) {
+            long processId = random.nextInt(500);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                long deadline = tick + (random.nextBoolean() ? 1L << random.nextInt(20) : 1 + random.nextInt(1 << 20));
+                timingWheel.schedule(processId, deadline);
+                deadlines.put(processId, deadline);
+            } else if (operation < 7) {
+                assertEquals(deadlines.remove(processId) != null, timingWheel.cancel(processId));
+            } else {
+                tick += random.nextInt((int) LEVEL_2);
+                List<Long> expired = timingWheel.advance(tick);
+                long previousDeadline = Long.MIN_VALUE;
+                for (Long expiredProcessId : expired) {
+                    Long deadline = deadlines.remove(expiredProcessId);
+                    assertNotNull(deadline, "Expired an unknown timer " + expiredProcessId);
+                    assertTrue(deadline <= tick && deadline >= previousDeadline, "Expired out of order");
+                    previousDeadline = deadline;
+                }
+                List<Long> late = new ArrayList<>();
+                for (Map.Entry<Long, Long> timer : deadlines.entrySet()) {
+                    if (timer.getValue() <= tick) {
+                        late.add(timer.getKey());
+                    }
+                }
+                assertEquals(List.of(), late, "Missed timers");
+                assertEquals(new HashSet<>(expired).size(), expired.size());
+            }
+            assertEquals(deadlines.size(), timingWheel.size());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.joshings.taskmanager.service.history;
+
+import com.joshings.taskmanager.service.TaskManagerConfig;
+import com.joshings.taskmanager.service.TaskManagerService;
+import com.joshings.taskmanager.service.events.ProcessEvent;
+import com.joshings.taskmanager.service.events.ProcessEventRing;
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Record the ends of processes in the history, count them, reopen the history from its files and drop the partitions
+ * past the retention.
+ */
+class ProcessHistoryTest {
+
+    private static final Instant FAR_FUTURE = Instant.now().plus(Duration.ofDays(1));
+
+    @TempDir
+    Path directory;
+
+    private TaskManagerService taskManagerService;
+
+    @BeforeEach
+    void start() {
+        taskManagerService = new TaskManagerService(TaskManagerConfig.builder().maxProcesses(2).build());
+    }
+
+    @AfterEach
+    void stop() {
+        taskManagerService.close();
+    }
+
+    @Test
+    void recordsAndCountsTheEndedProcesses() throws Exception {
+        Process low;
+        Process medium;
+        Process high;
+        try (ProcessHistory history = this.open(Duration.ofHours(1), Duration.ofDays(1))) {
+            low = taskManagerService.addProcess(Priority.Low);
+            medium = taskManagerService.addProcess(Priority.Medium);
+            high = taskManagerService.addProcess(Priority.High, TaskManagerService.AddMode.Fifo);
+            Process secondHigh = taskManagerService.addProcess(Priority.High, TaskManagerService.AddMode.Prio);
+            taskManagerService.killProcess(secondHigh.getProcessId());
+            taskManagerService.killGroup(Priority.High);
+            awaitDrained(history);
+
+            Map<Long, ProcessHistoryRecord> records = history.getRecords(Instant.EPOCH, FAR_FUTURE, 10).stream()
+                    .collect(Collectors.toMap(ProcessHistoryRecord::getProcessId, record -> record));
+            assertEquals(4, records.size());
+            assertEquals(ProcessEvent.Type.EvictedByFifo, records.get(low.getProcessId()).getEndReason());
+            assertEquals(ProcessEvent.Type.EvictedByPrio, records.get(medium.getProcessId()).getEndReason());
+            assertEquals(ProcessEvent.Type.Killed, records.get(secondHigh.getProcessId()).getEndReason());
+            assertEquals(ProcessEvent.Type.GroupKilled, records.get(high.getProcessId()).getEndReason());
+            ProcessHistoryRecord lowRecord = records.get(low.getProcessId());
+            assertEquals(Priority.Low, lowRecord.getPriority());
+            assertEquals(low.getStartTime().getTime(), lowRecord.getStartTimeMillis());
+            assertTrue(lowRecord.getEndTimeMillis() >= lowRecord.getStartTimeMillis());
+
+            assertEquals(1, history.getRecords(Instant.EPOCH, FAR_FUTURE, 1).size());
+            assertTrue(history.getRecords(FAR_FUTURE, FAR_FUTURE.plusSeconds(1), 10).isEmpty());
+            assertEquals(4, countAll(history.countEnds(Instant.EPOCH, FAR_FUTURE)));
+            assertEquals(1, history.countEnds(Instant.EPOCH, FAR_FUTURE).stream()
+                    .filter(count -> count.getPriority().equals(Priority.High) &&
+                            count.getEndReason() == ProcessEvent.Type.GroupKilled)
+                    .mapToLong(HistoryCount::getCount)
+                    .sum());
+
+            long lastEnd = records.values().stream()
+                    .mapToLong(ProcessHistoryRecord::getEndTimeMillis)
+                    .max()
+                    .orElseThrow();
+            List<HistoryCount> partialCounts = history.countEnds(Instant.ofEpochMilli(lastEnd), FAR_FUTURE);
+            assertEquals(records.values().stream().filter(record -> record.getEndTimeMillis() >= lastEnd).count(),
+                    countAll(partialCounts));
+        }
+
+        try (ProcessHistory reopened = this.open(Duration.ofHours(1), Duration.ofDays(1))) {
+            assertEquals(4, reopened.size());
+            assertEquals(4, countAll(reopened.countEnds(Instant.EPOCH, FAR_FUTURE)));
+        }
+    }
+
+    @Test
+    void recordsTheProcessesStartedBeforeItSubscribed() throws Exception {
+        Process early = taskManagerService.addProcess(Priority.High, 2, TaskManagerService.AddMode.Default, null);
+        try (ProcessHistory history = this.open(Duration.ofHours(1), Duration.ofDays(1))) {
+            taskManagerService.killAll();
+            awaitDrained(history);
+
+            List<ProcessHistoryRecord> records = history.getRecords(Instant.EPOCH, FAR_FUTURE, 10);
+            assertEquals(1, records.size());
+            ProcessHistoryRecord record = records.get(0);
+            assertEquals(early.getProcessId(), record.getProcessId());
+            assertEquals(Priority.High, record.getPriority());
+            assertEquals(early.getStartTime().getTime(), record.getStartTimeMillis());
+            assertEquals(2, record.getWeight());
+            assertEquals(ProcessEvent.Type.AllKilled, record.getEndReason());
+        }
+    }
+
+    @Test
+    void dropsThePartitionsPastTheRetention() throws Exception {
+        Duration partitionDuration = Duration.ofMillis(10);
+        Duration retention = Duration.ofMillis(50);
+        try (ProcessHistory history = this.open(partitionDuration, retention)) {
+            for (int i = 0; i < 30; i++) {
+                taskManagerService.killProcess(taskManagerService.addProcess(Priority.Low).getProcessId());
+                Thread.sleep(partitionDuration.toMillis());
+            }
+            awaitDrained(history);
+
+            List<ProcessHistoryRecord> records = history.getRecords(Instant.EPOCH, FAR_FUTURE, Integer.MAX_VALUE);
+            long lastEnd = records.get(records.size() - 1).getEndTimeMillis();
+            long oldestKept = lastEnd - retention.toMillis() - partitionDuration.toMillis();
+            assertTrue(records.size() < 30, "Nothing was dropped");
+            assertTrue(records.stream().allMatch(record -> record.getEndTimeMillis() >= oldestKept));
+            assertTrue(history.getPartitionCount() <= retention.dividedBy(partitionDuration) + 1);
+        }
+    }
+
+    private ProcessHistory open(Duration partitionDuration, Duration retention) {
+        return new ProcessHistory(
+                taskManagerService, directory, partitionDuration, retention, ProcessEventRing.Backpressure.Block);
+    }
+
+    private static long countAll(List<HistoryCount> counts) {
+        return counts.stream().mapToLong(HistoryCount::getCount).sum();
+    }
+
+    private static void awaitDrained(ProcessHistory history) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (history.getSubscription().getLag() > 0) {
+            assertTrue(System.nanoTime() < deadline, "The history did not catch up");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.joshings.taskmanager.service.http;
+
+import com.joshings.taskmanager.service.AsyncTaskManagerService;
+import com.joshings.taskmanager.service.TaskManagerConfig;
+import com.joshings.taskmanager.service.TaskManagerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Call every endpoint of the HTTP API, then load it with pipelined requests over several keep-alive connections.
+ */
+class TaskManagerHttpServerTest {
+
+    private static final int MAX_PROCESSES = 10;
+    private static final int CONNECTIONS = 8;
+    private static final int REQUESTS_PER_CONNECTION = 1_000;
+    private static final int BATCH_SIZE = 100;
+    private static final Pattern PID = Pattern.compile("\"pid\":(\\d+)");
+
+    private TaskManagerService taskManagerService;
+    private AsyncTaskManagerService asyncTaskManagerService;
+    private TaskManagerHttpServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        taskManagerService = new TaskManagerService(TaskManagerConfig.builder().maxProcesses(MAX_PROCESSES).build());
+        asyncTaskManagerService = new AsyncTaskManagerService(taskManagerService, 4, 100_000, 1000);
+        server = new TaskManagerHttpServer(
+                asyncTaskManagerService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0, 2);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+        asyncTaskManagerService.close();
+        taskManagerService.close();
+    }
+
+    @Test
+    void addsListsAndKillsProcesses() throws Exception {
+        HttpResponse<String> added = this.send("POST", "/processes?prio=high", null);
+        assertEquals(201, added.statusCode());
+        assertTrue(added.body().matches("\\{\"pid\":\\d+,\"prio\":\"high\",\"start\":\\d+,\"weight\":1}"),
+                added.body());
+        long pid = pidOf(added.body());
+
+        HttpResponse<String> batch = this.send("POST", "/processes/batch?mode=dflt", "[\"low\", 2, \"medium\"]");
+        assertEquals(200, batch.statusCode());
+        assertEquals(3, countPids(batch.body()));
+
+        HttpResponse<String> fill = this.send("POST", "/processes/batch", "[1, 1, 1, 1, 1, 1, 1]");
+        assertTrue(fill.body().contains("{\"error\":"), fill.body());
+        assertEquals(409, this.send("POST", "/processes?prio=low", null).statusCode());
+
+        HttpResponse<String> evicting = this.send("POST", "/processes/batch?mode=fifo", "[\"high\"]");
+        assertTrue(evicting.body().contains("\"evicted\":" + pid), evicting.body());
+        assertEquals(404, this.send("DELETE", "/processes/" + pid, null).statusCode());
+
+        HttpResponse<String> firstPage = this.send("GET", "/processes?sort=prio&limit=4", null);
+        assertEquals(200, firstPage.statusCode());
+        assertEquals(4, countPids(firstPage.body()));
+        Matcher next = Pattern.compile("\"next\":\"([^\"]+)\"").matcher(firstPage.body());
+        assertTrue(next.find(), firstPage.body());
+        HttpResponse<String> lastPage = this.send("GET", "/processes?sort=prio&limit=100&after=" + next.group(1), null);
+        assertEquals(MAX_PROCESSES - 4, countPids(lastPage.body()));
+        assertTrue(lastPage.body().endsWith("\"next\":null}"), lastPage.body());
+
+        HttpResponse<byte[]> records = client.send(
+                HttpRequest.newBuilder(this.uri("/processes?limit=3"))
+                        .header("Accept", "application/octet-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray()
+        );
+        assertEquals(3 * ProcessJson.RECORD_SIZE, records.body().length);
+        assertTrue(records.headers().firstValue(TaskManagerHttpServer.NEXT_CURSOR_HEADER).isPresent());
+        long firstPid = ByteBuffer.wrap(records.body()).getLong();
+        assertEquals(taskManagerService.getProcesses(TaskManagerService.SortMode.Pid).get(0).getProcessId(), firstPid);
+
+        assertEquals(204, this.send("DELETE", "/processes/" + firstPid, null).statusCode());
+        assertEquals(204, this.send("DELETE", "/processes?prio=high", null).statusCode());
+        assertTrue(taskManagerService.getProcesses().stream().noneMatch(p -> p.getPriority().getPriorityValue() == 3));
+
+        List<Long> pids = new ArrayList<>();
+        taskManagerService.getProcesses().forEach(process -> pids.add(process.getProcessId()));
+        HttpResponse<String> killed = this.send("POST", "/processes/kill", pids.subList(0, 2) + "");
+        assertEquals("{\"killed\":2}", killed.body());
+        assertEquals(204, this.send("DELETE", "/processes", null).statusCode());
+        assertTrue(taskManagerService.getProcesses().isEmpty());
+
+        assertEquals(400, this.send("POST", "/processes?prio=urgent", null).statusCode());
+        assertEquals(400, this.send("POST", "/processes/kill", "[1, ").statusCode());
+        assertEquals(400, this.send("GET", "/processes?limit=0", null).statusCode());
+        assertEquals(404, this.send("GET", "/tasks", null).statusCode());
+        assertEquals(405, this.send("PUT", "/processes", null).statusCode());
+    }
+
+    @Test
+    void servesOtherRequestsWhileAnUploadStalls() throws Exception {
+        String body = "[\"low\", \"high\"]";
+        try (Socket upload = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = upload.getOutputStream();
+            out.write(("POST /processes/batch HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length() +
+                    "\r\n\r\n" + body.substring(0, 5)).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(100);
+
+            long startNanos = System.nanoTime();
+            HttpResponse<String> listed = client.send(
+                    HttpRequest.newBuilder(this.uri("/processes")).timeout(Duration.ofSeconds(5)).build(),
+                    HttpResponse.BodyHandlers.ofString()
+            );
+            assertEquals(200, listed.statusCode());
+            assertTrue(System.nanoTime() - startNanos < Duration.ofSeconds(1).toNanos(),
+                    "The listing waited for the stalled upload");
+
+            out.write(body.substring(5).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertEquals(200, readResponse(new BufferedInputStream(upload.getInputStream())));
+            assertEquals(2, taskManagerService.getProcesses().size());
+        }
+    }
+
+    @Test
+    void servesPipelinedRequestsOnKeepAliveConnections() throws Exception {
+        String host = "Host: localhost\r\n";
+        byte[] add = ("POST /processes?prio=medium&mode=fifo HTTP/1.1\r\n" + host + "Content-Length: 0\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] list = ("GET /processes?limit=10 HTTP/1.1\r\n" + host + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        StringBuilder priorities = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            priorities.append(i == 0 ? "" : ",").append(1 + i % 3);
+        }
+        String batchBody = priorities.append(']').toString();
+        byte[] batch = ("POST /processes/batch?mode=prio HTTP/1.1\r\n" + host + "Content-Length: " +
+                batchBody.length() + "\r\n\r\n" + batchBody).getBytes(StandardCharsets.US_ASCII);
+
+        // Warm up the server and the task manager before measuring.
+        this.pipeline(list);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-8s %12s %14s%n", "request", "requests/s", "processes/s"));
+        for (byte[] request : List.of(add, list, batch)) {
+            int processesPerRequest = request == batch ? BATCH_SIZE : request == add ? 1 : 0;
+            long startNanos = System.nanoTime();
+            int[] statuses = this.pipeline(request);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            for (int status : statuses) {
+                assertEquals(request == add ? 201 : 200, status);
+            }
+            double requestsPerSecond = CONNECTIONS * REQUESTS_PER_CONNECTION / seconds;
+            report.append(String.format("%-8s %,12.0f %,14.0f%n",
+                    request == add ? "add" : request == list ? "list" : "batch",
+                    requestsPerSecond,
+                    requestsPerSecond * processesPerRequest));
+        }
+        System.out.print(report);
+        assertEquals(MAX_PROCESSES, taskManagerService.getProcesses().size());
+    }
+
+    /**
+     * Send the same request many times over every connection without waiting for the responses, and read the
+     * responses meanwhile.
+     *
+     * @return the number of responses of every status
+     */
+    private int[] pipeline(byte[] request) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * CONNECTIONS);
+        try {
+            List<Future<int[]>> readers = new ArrayList<>();
+            for (int c = 0; c < CONNECTIONS; c++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                socket.setTcpNoDelay(true);
+                executor.submit((Callable<Void>) () -> {
+                    OutputStream out = socket.getOutputStream();
+                    for (int i = 0; i < REQUESTS_PER_CONNECTION; i++) {
+                        out.write(request);
+                    }
+                    out.flush();
+                    return null;
+                });
+                readers.add(executor.submit(() -> {
+                    try (socket) {
+                        InputStream in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+                        int[] statuses = new int[REQUESTS_PER_CONNECTION];
+                        for (int i = 0; i < REQUESTS_PER_CONNECTION; i++) {
+                            statuses[i] = readResponse(in);
+                        }
+                        return statuses;
+                    }
+                }));
+            }
+            List<Integer> statuses = new ArrayList<>();
+            for (Future<int[]> reader : readers) {
+                for (int status : reader.get()) {
+                    statuses.add(status);
+                }
+            }
+            return statuses.stream().mapToInt(Integer::intValue).toArray();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read a response with a Content-Length, or without a body.
+     *
+     * @return the status
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int status = Integer.parseInt(statusLine.split(" ")[1]);
+        int contentLength = 0;
+        for (String header = readLine(in); !header.isEmpty(); header = readLine(in)) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        if (in.readNBytes(contentLength).length != contentLength) {
+            throw new IOException("Truncated response");
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(this.uri(path))
+                .method(method, body == null ?
+                        HttpRequest.BodyPublishers.noBody() :
+                        HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        return URI.create("http://" + host + ":" + server.getPort() + path);
+    }
+
+    private static long pidOf(String json) {
+        Matcher pid = PID.matcher(json);
+        assertTrue(pid.find(), json);
+        return Long.parseLong(pid.group(1));
+    }
+
+    private static int countPids(String json) {
+        Matcher pid = PID.matcher(json);
+        int count = 0;
+        while (pid.find()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,242 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write a journal, reopen it, and check the live processes and process ID blocks which are replayed from it, including
+ * from a journal with a torn or corrupt tail, a compacted journal and the journals of the previous versions.
+ */
+class JournalProcessStoreTest {
+
+    private static final int MAGIC = 0x544d4a31;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int SAVE_RECORD_SIZE = 4 + 1 + 8 + 4 + 8 + 8 + 4;
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final long INITIAL_SIZE = 1 << 20;
+    private static final Duration COMPACTION_INTERVAL = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheChangesAfterReopening() {
+        Path path = directory.resolve("processes.journal");
+        List<Process> processes = List.of(
+                process(1, Priority.Low, 1),
+                process(2, Priority.High, 3),
+                process(3, Priority.fromValue(7), 1)
+        );
+        try (JournalProcessStore store = open(path)) {
+            store.saveAll(processes);
+            store.save(process(4, Priority.Medium, 1));
+            store.deleteAll(List.of(2L, 4L));
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(List.of(processes.get(0), processes.get(2)), store);
+            store.deleteAll();
+            store.save(process(5, Priority.Medium, 2));
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(List.of(process(5, Priority.Medium, 2)), store);
+        }
+    }
+
+    @Test
+    void dropsATornTailRecord() throws IOException {
+        Path path = directory.resolve("processes.journal");
+        try (JournalProcessStore store = open(path)) {
+            store.save(process(1, Priority.Low, 1));
+            store.save(process(2, Priority.Low, 1));
+        }
+        // The checksum of the second record never reached the disk.
+        overwrite(path, HEADER_SIZE + 2 * SAVE_RECORD_SIZE - Integer.BYTES, new byte[Integer.BYTES]);
+
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(List.of(process(1, Priority.Low, 1)), store);
+        }
+    }
+
+    @Test
+    void dropsACorruptTailRecordAndAppendsOverIt() throws IOException {
+        Path path = directory.resolve("processes.journal");
+        try (JournalProcessStore store = open(path)) {
+            store.save(process(1, Priority.Low, 1));
+            store.save(process(2, Priority.Low, 1));
+            store.save(process(3, Priority.Low, 1));
+        }
+        // Flip a bit of the priority of the second record: the third one, valid but after it, is dropped too.
+        int priorityOffset = HEADER_SIZE + SAVE_RECORD_SIZE + Integer.BYTES + Byte.BYTES + Long.BYTES;
+        overwrite(path, priorityOffset, new byte[]{0, 0, 0, 3});
+
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(List.of(process(1, Priority.Low, 1)), store);
+            store.save(process(4, Priority.High, 1));
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(List.of(process(1, Priority.Low, 1), process(4, Priority.High, 1)), store);
+        }
+    }
+
+    @Test
+    void reopensACompactedJournal() throws IOException {
+        Path path = directory.resolve("processes.journal");
+        List<Process> survivors = new ArrayList<>();
+        long firstBlock;
+        try (JournalProcessStore store = open(path)) {
+            firstBlock = store.reserveProcessIdBlock();
+            // Enough records to outgrow the minimum compaction size, almost all of them deleted.
+            int saves = (int) (2 * INITIAL_SIZE / SAVE_RECORD_SIZE);
+            List<Process> batch = new ArrayList<>();
+            for (long processId = 1; processId <= saves; processId++) {
+                Process process = process(processId, Priority.Medium, 1);
+                batch.add(process);
+                if (processId % 100 == 0) {
+                    survivors.add(process);
+                }
+                if (batch.size() == 1000 || processId == saves) {
+                    store.saveAll(batch);
+                    store.deleteAll(batch.stream()
+                            .map(Process::getProcessId)
+                            .filter(id -> id % 100 != 0)
+                            .collect(Collectors.toList()));
+                    batch.clear();
+                }
+            }
+            long journalSize = Files.size(path);
+            assertTrue(journalSize > INITIAL_SIZE);
+
+            store.compactIfNeeded();
+            assertTrue(Files.size(path) < journalSize, "The journal was not compacted");
+            assertFalse(Files.exists(path.resolveSibling("processes.journal.compact")));
+            assertProcesses(survivors, store);
+            store.save(process(1_000_000, Priority.High, 1));
+        }
+        survivors.add(process(1_000_000, Priority.High, 1));
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(survivors, store);
+            assertEquals(firstBlock + ProcessStore.PROCESS_ID_BLOCK_SIZE, store.reserveProcessIdBlock());
+        }
+    }
+
+    @Test
+    void upgradesAJournalWithBytePriorities() throws IOException {
+        Path path = directory.resolve("processes.journal");
+        ByteBuffer journal = header(1);
+        appendRecord(journal, SAVE, ByteBuffer.allocate(17).putLong(1).put((byte) 3).putLong(1000));
+        appendRecord(journal, SAVE, ByteBuffer.allocate(17).putLong(2).put((byte) 1).putLong(2000));
+        appendRecord(journal, DELETE, ByteBuffer.allocate(12).putInt(1).putLong(1));
+        write(path, journal);
+
+        this.assertUpgraded(path, List.of(new Process(2L, Priority.Low, new Timestamp(2000))));
+    }
+
+    @Test
+    void upgradesAJournalWithoutWeights() throws IOException {
+        Path path = directory.resolve("processes.journal");
+        ByteBuffer journal = header(2);
+        appendRecord(journal, SAVE, ByteBuffer.allocate(20).putLong(1).putInt(3).putLong(1000));
+        appendRecord(journal, SAVE, ByteBuffer.allocate(20).putLong(2).putInt(1000).putLong(2000));
+        write(path, journal);
+
+        this.assertUpgraded(path, List.of(
+                new Process(1L, Priority.High, new Timestamp(1000)),
+                new Process(2L, Priority.fromValue(1000), new Timestamp(2000))
+        ));
+    }
+
+    @Test
+    void keepsTheProcessIdBlocksAcrossRestarts() {
+        Path path = directory.resolve("processes.journal");
+        try (JournalProcessStore store = open(path)) {
+            assertEquals(1, store.reserveProcessIdBlock());
+            assertEquals(1 + ProcessStore.PROCESS_ID_BLOCK_SIZE, store.reserveProcessIdBlock());
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertEquals(1 + 2 * ProcessStore.PROCESS_ID_BLOCK_SIZE, store.reserveProcessIdBlock());
+            store.skipProcessIdBlocks(1 + 10 * ProcessStore.PROCESS_ID_BLOCK_SIZE);
+            store.skipProcessIdBlocks(1 + 5 * ProcessStore.PROCESS_ID_BLOCK_SIZE);
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertEquals(1 + 10 * ProcessStore.PROCESS_ID_BLOCK_SIZE, store.reserveProcessIdBlock());
+        }
+    }
+
+    /**
+     * The journal is replayed once in its old version, then rewritten in the current one and replayed as such.
+     */
+    private void assertUpgraded(Path path, List<Process> expected) throws IOException {
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(expected, store);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            assertEquals(MAGIC, header.getInt(0));
+            assertEquals(3, header.getInt(Integer.BYTES));
+        }
+        try (JournalProcessStore store = open(path)) {
+            assertProcesses(expected, store);
+        }
+    }
+
+    private static JournalProcessStore open(Path path) {
+        return new JournalProcessStore(path, INITIAL_SIZE, COMPACTION_INTERVAL);
+    }
+
+    private static Process process(long processId, Priority priority, long weight) {
+        return new Process(processId, priority, new Timestamp(1_600_000_000_000L + processId), weight);
+    }
+
+    /**
+     * Process has no equality, the processes are compared by their descriptions, which show every field.
+     */
+    private static void assertProcesses(List<Process> expected, JournalProcessStore store) {
+        List<String> loaded = new ArrayList<>();
+        store.loadAll(process -> loaded.add(process.toString()));
+        assertEquals(expected.stream().map(Process::toString).collect(Collectors.toList()), loaded);
+    }
+
+    private static ByteBuffer header(int version) {
+        return ByteBuffer.allocate(4096).putInt(MAGIC).putInt(version);
+    }
+
+    private static void appendRecord(ByteBuffer journal, byte type, ByteBuffer payload) {
+        payload.flip();
+        ByteBuffer record = ByteBuffer.allocate(Byte.BYTES + payload.remaining()).put(type).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array());
+        journal.putInt(record.capacity()).put(record.array()).putInt((int) crc.getValue());
+    }
+
+    private static void write(Path path, ByteBuffer journal) throws IOException {
+        journal.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(journal);
+        }
+    }
+
+    private static void overwrite(Path path, long offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+}
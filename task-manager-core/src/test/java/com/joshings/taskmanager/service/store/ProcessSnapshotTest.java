@@ -0,0 +1,155 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write and read snapshots, read the snapshots of the previous versions, and check that a snapshot which is truncated,
+ * corrupt or not a snapshot at all is rejected as a whole.
+ */
+class ProcessSnapshotTest {
+
+    private static final int MAGIC = 0x544d5331;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTheProcessesItWrote() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        // More processes than one buffer holds, so that the records are read across buffer boundaries.
+        List<Process> processes = new ArrayList<>();
+        for (long processId = 1; processId <= 10_000; processId++) {
+            Priority priority = Priority.fromValue(1 + processId % 5);
+            processes.add(new Process(processId, priority, new Timestamp(1000 + processId), 1 + processId % 3));
+        }
+        ProcessSnapshot.write(path, processes);
+
+        assertEquals(descriptions(processes), descriptions(ProcessSnapshot.read(path)));
+        assertFalse(Files.exists(directory.resolve("processes.snapshot.tmp")));
+    }
+
+    @Test
+    void replacesAnExistingSnapshot() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        ProcessSnapshot.write(path, List.of(new Process(1L, Priority.Low, new Timestamp(1000))));
+        ProcessSnapshot.write(path, List.of());
+
+        assertEquals(List.of(), ProcessSnapshot.read(path));
+        assertEquals(HEADER_SIZE, Files.size(path));
+    }
+
+    @Test
+    void readsASnapshotWithBytePriorities() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        ByteBuffer records = ByteBuffer.allocate(2 * 17)
+                .putLong(1).put((byte) 3).putLong(1000)
+                .putLong(2).put((byte) 1).putLong(2000);
+        write(path, 1, 2, records);
+
+        assertEquals(descriptions(List.of(
+                new Process(1L, Priority.High, new Timestamp(1000)),
+                new Process(2L, Priority.Low, new Timestamp(2000))
+        )), descriptions(ProcessSnapshot.read(path)));
+    }
+
+    @Test
+    void readsASnapshotWithoutWeights() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        ByteBuffer records = ByteBuffer.allocate(2 * 20)
+                .putLong(1).putInt(1000).putLong(1000)
+                .putLong(2).putInt(2).putLong(2000);
+        write(path, 2, 2, records);
+
+        assertEquals(descriptions(List.of(
+                new Process(1L, Priority.fromValue(1000), new Timestamp(1000)),
+                new Process(2L, Priority.Medium, new Timestamp(2000))
+        )), descriptions(ProcessSnapshot.read(path)));
+    }
+
+    @Test
+    void rejectsACorruptRecord() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        ProcessSnapshot.write(path, List.of(
+                new Process(1L, Priority.Low, new Timestamp(1000)),
+                new Process(2L, Priority.Low, new Timestamp(2000))
+        ));
+        // The start time of the second process.
+        overwrite(path, HEADER_SIZE + 28 + 8 + 4 + 7, (byte) 0x55);
+
+        IOException failure = assertThrows(IOException.class, () -> ProcessSnapshot.read(path));
+        assertTrue(failure.getMessage().contains("corrupt"), failure.getMessage());
+    }
+
+    @Test
+    void rejectsATruncatedSnapshot() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        ProcessSnapshot.write(path, List.of(
+                new Process(1L, Priority.Low, new Timestamp(1000)),
+                new Process(2L, Priority.Low, new Timestamp(2000))
+        ));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 1);
+        }
+
+        IOException failure = assertThrows(IOException.class, () -> ProcessSnapshot.read(path));
+        assertTrue(failure.getMessage().contains("truncated"), failure.getMessage());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER_SIZE - 1);
+        }
+        assertThrows(IOException.class, () -> ProcessSnapshot.read(path));
+    }
+
+    @Test
+    void rejectsWhatIsNotASnapshot() throws IOException {
+        Path path = directory.resolve("processes.snapshot");
+        write(path, 4, 0, ByteBuffer.allocate(0));
+        assertThrows(IOException.class, () -> ProcessSnapshot.read(path));
+
+        Files.write(path, new byte[HEADER_SIZE]);
+        assertThrows(IOException.class, () -> ProcessSnapshot.read(path));
+    }
+
+    private static List<String> descriptions(List<Process> processes) {
+        return processes.stream().map(Process::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Write a snapshot file of the given version, with a valid checksum of the records.
+     */
+    private static void write(Path path, int version, long processCount, ByteBuffer records) throws IOException {
+        records.flip();
+        CRC32 crc = new CRC32();
+        crc.update(records.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).putInt(version).putLong(processCount).putInt((int) crc.getValue())
+                .flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            channel.write(records);
+        }
+    }
+
+    private static void overwrite(Path path, long offset, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), offset);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.joshings.taskmanager.service.store;
+
+import com.joshings.taskmanager.service.model.Priority;
+import com.joshings.taskmanager.service.model.Process;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the eviction plans of the process table: which processes are taken, in which order, and which are spared.
+ */
+class ProcessTableTest {
+
+    private final ProcessTable processTable = new ProcessTable(new NoOpProcessStore());
+
+    @Test
+    void plansTheOldestProcessesFirst() {
+        Process first = processTable.add(Priority.High, 1);
+        Process second = processTable.add(Priority.Low, 1);
+        processTable.add(Priority.Medium, 1);
+
+        assertEquals(ids(first, second), this.plan(null, 2));
+    }
+
+    @Test
+    void plansTheLowestPriorityThenTheOldestFirst() {
+        Process medium = processTable.add(Priority.Medium, 1);
+        Process firstLow = processTable.add(Priority.Low, 1);
+        Process secondLow = processTable.add(Priority.Low, 1);
+        processTable.add(Priority.High, 1);
+
+        assertEquals(ids(firstLow, secondLow), this.plan(Priority.High, 2));
+        assertEquals(ids(firstLow, secondLow, medium), this.plan(Priority.High, 3));
+        assertEquals(ids(firstLow), this.plan(Priority.Medium, 1));
+    }
+
+    @Test
+    void plansNothingWithoutEnoughWeightToFree() {
+        processTable.add(Priority.Low, 2);
+        processTable.add(Priority.High, 5);
+
+        assertEquals(List.of(), this.plan(Priority.Medium, 3));
+        assertEquals(List.of(), this.plan(null, 8));
+        assertEquals(List.of(), this.plan(null, 0));
+        assertEquals(List.of(), this.plan(Priority.Low, 1));
+    }
+
+    @Test
+    void sparesTheVictimsMadeRedundantByTheLastOne() {
+        Process light = processTable.add(Priority.Low, 1);
+        processTable.add(Priority.Low, 1);
+        Process heavy = processTable.add(Priority.Low, 5);
+
+        // The heavy process alone frees the weight: the two lighter and older ones are spared.
+        assertEquals(ids(heavy), this.plan(null, 5));
+        // The excess is 1: the newest victim light enough is spared, the older one is kept.
+        assertEquals(ids(light, heavy), this.plan(null, 6));
+        // Exactly the weight of the first victims: nothing to spare.
+        assertEquals(ids(light), this.plan(null, 1));
+    }
+
+    @Test
+    void sparesTheNewestRedundantVictimFirst() {
+        Process first = processTable.add(Priority.Low, 2);
+        processTable.add(Priority.Low, 1);
+        Process third = processTable.add(Priority.Low, 3);
+
+        // Freed 6 for 4: the second victim is spared, which leaves no excess for the first one.
+        assertEquals(ids(first, third), this.plan(null, 4));
+    }
+
+    @Test
+    void sparesTheHighestPriorityRedundantVictimFirst() {
+        processTable.add(Priority.Medium, 1);
+        Process newerLow = processTable.add(Priority.Low, 1);
+        Process heavyMedium = processTable.add(Priority.Medium, 3);
+
+        // Freed 5 for 4: the older medium victim is spared rather than the newer low one, in reverse eviction order.
+        assertEquals(ids(newerLow, heavyMedium), this.plan(Priority.High, 4));
+    }
+
+    @Test
+    void plansAMinimalSetInEvictionOrder() {
+        Random random = new Random(42);
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            processes.add(processTable.add(Priority.aliases().get(random.nextInt(3)), 1 + random.nextInt(8)));
+        }
+
+        for (int round = 0; round < 1000; round++) {
+            Priority below = random.nextBoolean() ? null : Priority.aliases().get(random.nextInt(3));
+            long weight = 1 + random.nextInt(100);
+            List<Process> evictionOrder = processes.stream()
+                    .filter(process -> below == null || process.getPriority().compareTo(below) < 0)
+                    .sorted((a, b) -> below == null ?
+                            Long.compare(a.getProcessId(), b.getProcessId()) :
+                            a.getPriority().compareTo(b.getPriority()) != 0 ?
+                                    a.getPriority().compareTo(b.getPriority()) :
+                                    Long.compare(a.getProcessId(), b.getProcessId()))
+                    .collect(Collectors.toList());
+            long available = evictionOrder.stream().mapToLong(Process::getWeight).sum();
+
+            List<Process> plan = processTable.lockAll(() -> processTable.planEviction(below, weight));
+            if (available < weight) {
+                assertEquals(List.of(), plan);
+                continue;
+            }
+            long freed = plan.stream().mapToLong(Process::getWeight).sum();
+            assertTrue(freed >= weight, "Does not free enough weight");
+            for (Process victim : plan) {
+                assertTrue(freed - victim.getWeight() < weight, "Evicts a redundant victim " + victim);
+            }
+            List<Process> inOrder = new ArrayList<>(evictionOrder);
+            inOrder.retainAll(plan);
+            assertEquals(inOrder, plan, "Not in eviction order");
+        }
+    }
+
+    private List<Long> plan(Priority below, long weight) {
+        return ids(processTable.lockAll(() -> processTable.planEviction(below, weight)).toArray(new Process[0]));
+    }
+
+    private static List<Long> ids(Process... processes) {
+        List<Long> processIds = new ArrayList<>();
+        for (Process process : processes) {
+            processIds.add(process.getProcessId());
+        }
+        return processIds;
+    }
+}